@@ -0,0 +1,137 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+
+import io.shulie.takin.cloud.data.entity.SlaEntity;
+import io.shulie.takin.cloud.constant.enums.FormulaSymbol;
+import io.shulie.takin.cloud.constant.enums.FormulaTarget;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * SLA规则判断的基准测试
+ * <p>对比原有的逐条过滤(流式过滤 + 枚举解析 + 装箱比较)与编译后的规则索引,不含数据库查询</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SlaRuleBenchmark {
+    /**
+     * 关键词数量(每个关键词两条规则,另有两条通配规则)
+     */
+    @Param({"10", "100"})
+    int transactions;
+
+    List<SlaEntity> slaEntityList;
+    SlaRuleIndex index;
+    List<MetricsInfo> metricsList;
+
+    @Setup
+    public void setup() {
+        slaEntityList = new ArrayList<>();
+        long id = 0;
+        for (int i = 0; i < transactions; i++) {
+            slaEntityList.add(rule(++id, "ref" + i, FormulaTarget.RT, FormulaSymbol.GREATER_THAN, 500));
+            slaEntityList.add(rule(++id, "ref" + i, FormulaTarget.SUCCESS_RATE, FormulaSymbol.LESS_THAN, 90));
+        }
+        slaEntityList.add(rule(++id, "", FormulaTarget.TPS, FormulaSymbol.LESS_THAN, 1));
+        slaEntityList.add(rule(++id, "", FormulaTarget.SA, FormulaSymbol.LESS_THAN_OR_EQUAL_TO, 50));
+        index = SlaRuleIndex.of(slaEntityList);
+        metricsList = new ArrayList<>(transactions);
+        for (int i = 0; i < transactions; i++) {
+            MetricsInfo metrics = new MetricsInfo();
+            metrics.setTransaction("ref" + i);
+            metrics.setCount(100);
+            metrics.setFailCount(1);
+            metrics.setSaCount(98);
+            metrics.setRt(i % 10 == 0 ? 800D : 12.5D);
+            metricsList.add(metrics);
+        }
+    }
+
+    @Benchmark
+    public int legacy() {
+        int triggered = 0;
+        for (MetricsInfo metricsInfo : metricsList) {
+            List<SlaEntity> conditionList = slaEntityList.stream()
+                .filter(t -> "".equals(t.getRef()) || t.getRef().equals(metricsInfo.getTransaction()))
+                .collect(Collectors.toList());
+            for (SlaEntity condition : conditionList) {
+                FormulaSymbol formulaSymbol = FormulaSymbol.of(condition.getFormulaSymbol());
+                FormulaTarget formulaTarget = FormulaTarget.of(condition.getFormulaTarget());
+                if (legacyCompare(metricsInfo, formulaTarget, formulaSymbol, condition.getFormulaNumber()) != null) {triggered++;}
+            }
+        }
+        return triggered;
+    }
+
+    @Benchmark
+    public int compiled() {
+        int triggered = 0;
+        for (MetricsInfo metricsInfo : metricsList) {
+            for (SlaRule rule : index.get(metricsInfo.getTransaction())) {
+                if (!Double.isNaN(rule.test(metricsInfo))) {triggered++;}
+            }
+            for (SlaRule rule : index.wildcard()) {
+                if (!Double.isNaN(rule.test(metricsInfo))) {triggered++;}
+            }
+        }
+        return triggered;
+    }
+
+    private static SlaEntity rule(long id, String ref, FormulaTarget target, FormulaSymbol symbol, double number) {
+        return new SlaEntity().setId(id).setRef(ref).setFormulaTarget(target.getCode())
+            .setFormulaSymbol(symbol.getCode()).setFormulaNumber(number);
+    }
+
+    /**
+     * 原有的算式判断
+     */
+    private static Double legacyCompare(MetricsInfo info, FormulaTarget target, FormulaSymbol symbol, double value) {
+        Double targetValue;
+        switch (target) {
+            case RT:
+                targetValue = info.getRt();
+                break;
+            case SA:
+                targetValue = ((info.getSaCount() * 1.0) / info.getCount()) * 100;
+                break;
+            case TPS:
+                targetValue = (info.getCount() * 1.0) / 5;
+                break;
+            case SUCCESS_RATE:
+                targetValue = 100 - ((info.getFailCount() * 1.0) / info.getCount());
+                break;
+            default:
+                return null;
+        }
+        int compareResult = targetValue.compareTo(value);
+        switch (symbol) {
+            case EQUAL:
+                return compareResult == 0 ? targetValue : null;
+            case GREATER_THAN:
+                return compareResult > 0 ? targetValue : null;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return compareResult >= 0 ? targetValue : null;
+            case LESS_THAN:
+                return compareResult < 0 ? targetValue : null;
+            case LESS_THAN_OR_EQUAL_TO:
+                return compareResult <= 0 ? targetValue : null;
+            default:
+                return null;
+        }
+    }
+}
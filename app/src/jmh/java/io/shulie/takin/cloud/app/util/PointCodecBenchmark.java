@@ -0,0 +1,140 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.ArrayList;
+import java.lang.reflect.Field;
+import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.Point;
+import org.influxdb.annotation.Column;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+
+import io.shulie.takin.cloud.constant.PressureEngineConstants;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 指标数据编码的基准测试
+ * <p>对比原有的反射路径(三次遍历 + addFieldsFromPOJO + 父类字段反射)与预编译的编解码器</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PointCodecBenchmark {
+    private static final String MEASUREMENT = "metrics_1";
+
+    @Param({"10", "200"})
+    int size;
+
+    List<MetricsInfo> metricsList;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        long now = System.currentTimeMillis();
+        metricsList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            MetricsInfo metrics = new MetricsInfo();
+            metrics.setTransaction("业务活动" + i + PressureEngineConstants.TRANSACTION_SPLIT_STR + "5f4dcc3b5aa765d61d8327deb882cf99");
+            metrics.setCount(100 + i);
+            metrics.setFailCount(i % 3);
+            metrics.setSentBytes(1024);
+            metrics.setReceivedBytes(4096);
+            metrics.setRt(12.5D);
+            metrics.setSumRt(1250D);
+            metrics.setSaCount(98);
+            metrics.setMaxRt(80D);
+            metrics.setMinRt(1D);
+            metrics.setTime(now * 1000000);
+            metrics.setTimestamp(now * 1000000);
+            metrics.setActiveThreads(20);
+            metrics.setPercentData("99,30|95,20|90,15");
+            metrics.setPodNo("1");
+            metrics.setType("response");
+            metricsList.add(metrics);
+        }
+    }
+
+    @Benchmark
+    public List<Point> reflection() {
+        return legacyEncode(metricsList);
+    }
+
+    @Benchmark
+    public List<Point> codec() {
+        return MetricsCodec.encode(MEASUREMENT, metricsList, true);
+    }
+
+    @Benchmark
+    public StringBuilder codecLineProtocol() {
+        StringBuilder out = new StringBuilder(size * 256);
+        MetricsCodec.encode(out, MEASUREMENT, metricsList, true);
+        return out;
+    }
+
+    /**
+     * 原有的编码路径
+     */
+    private static List<Point> legacyEncode(List<MetricsInfo> metricsList) {
+        List<MetricsInfo> list = metricsList.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        list.forEach(metrics -> {
+            String transaction = metrics.getTransaction();
+            int strPosition = transaction.lastIndexOf(PressureEngineConstants.TRANSACTION_SPLIT_STR);
+            if (strPosition > 0) {
+                metrics.setTransaction(transaction.substring(strPosition + PressureEngineConstants.TRANSACTION_SPLIT_STR.length()));
+                metrics.setTestName((transaction.substring(0, strPosition)));
+            } else {
+                metrics.setTestName(transaction);
+            }
+            if (Objects.nonNull(metrics.getTime()) && metrics.getTime() > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
+                metrics.setTime(metrics.getTime() / 1000000);
+            }
+            if (Objects.nonNull(metrics.getTimestamp()) && metrics.getTimestamp() > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
+                metrics.setTimestamp(metrics.getTimestamp() / 1000000);
+            }
+        });
+        return list.stream().map(metrics -> legacyToPoint(metrics.getTimestamp(), metrics)).collect(Collectors.toList());
+    }
+
+    private static Point legacyToPoint(long time, Object pojo) {
+        Point.Builder builder = Point.measurement(MEASUREMENT)
+            .time(time, TimeUnit.MILLISECONDS)
+            .addFieldsFromPOJO(pojo)
+            .addField("create_time", System.currentTimeMillis());
+        legacySuperClassFields(builder, pojo, pojo.getClass().getSuperclass());
+        return builder.build();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void legacySuperClassFields(Point.Builder builder, Object pojo, Class<?> clazz) {
+        for (Field field : clazz.getDeclaredFields()) {
+            Column column = field.getAnnotation(Column.class);
+            if (column == null) {continue;}
+            field.setAccessible(true);
+            try {
+                Object fieldValue = field.get(pojo);
+                if (column.tag()) {
+                    builder.tag(column.name(), (String)fieldValue);
+                } else {
+                    builder.field(column.name(), fieldValue);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (clazz != Object.class) {
+            legacySuperClassFields(builder, pojo, clazz.getSuperclass());
+        }
+    }
+}
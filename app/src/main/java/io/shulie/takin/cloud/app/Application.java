@@ -4,6 +4,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.mybatis.spring.annotation.MapperScan;
 
+import io.shulie.takin.cloud.app.util.InfluxSpool;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -19,6 +21,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @MapperScan("io.shulie.takin.cloud.data.mapper")
 @SpringBootApplication(scanBasePackages = "io.shulie.takin.cloud")
 public class Application implements DisposableBean {
+    @javax.annotation.Resource
+    InfluxSpool influxSpool;
+
     public static void main(String[] args) {
         System.setProperty("pagehelper.banner", Boolean.FALSE.toString());
         SpringApplication.run(Application.class, args);
@@ -27,6 +32,8 @@ public class Application implements DisposableBean {
     @Override
     public void destroy() {
         log.warn("程序停止.");
+        // 预写日志刷盘后再退出
+        influxSpool.flush();
         Runtime.getRuntime().halt(0);
     }
 }
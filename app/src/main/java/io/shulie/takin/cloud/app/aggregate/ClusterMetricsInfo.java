@@ -0,0 +1,24 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import org.influxdb.annotation.Column;
+
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 集群维度的指标信息
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ClusterMetricsInfo extends MetricsInfo {
+    /**
+     * 响应时间直方图
+     * <p>{@link LatencyHistogram#encode()}的Base64编码</p>
+     */
+    @Column(name = "histogram")
+    private String histogram;
+}
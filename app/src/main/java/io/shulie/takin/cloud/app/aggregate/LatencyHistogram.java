@@ -0,0 +1,302 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import java.util.Arrays;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 可合并的响应时间直方图
+ * <p>对数分桶,桶的上下界之比固定为{@link #GAMMA},分位值的相对误差不超过1%</p>
+ * <p>计数只在[{@link #offset}, {@link #offset} + counts.length)范围内按需扩展,合并即逐桶相加</p>
+ * <p>非线程安全</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public class LatencyHistogram {
+    /**
+     * 相对误差
+     */
+    private static final double ACCURACY = 0.01;
+    private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    /**
+     * 编码格式版本
+     */
+    private static final int VERSION = 1;
+    /**
+     * 可记录的最小响应时间(更小的正数按该值记录)
+     */
+    private static final double MIN_VALUE = 1e-3;
+    /**
+     * 可记录的最大响应时间(一天,更大的值按该值记录)
+     */
+    private static final double MAX_VALUE = 86_400_000D;
+    private static final int MIN_INDEX = index(MIN_VALUE);
+    private static final int MAX_INDEX = index(MAX_VALUE);
+
+    /**
+     * 小于等于0的数据
+     */
+    private long zeroCount;
+    private long totalCount;
+    private int offset;
+    private long[] counts = new long[0];
+
+    /**
+     * 记录
+     * <p>非有限值(NaN、Infinity)不记录,超出可记录范围的值按边界记录</p>
+     *
+     * @param value 响应时间
+     * @param count 次数
+     * @return false - 非有限值(不记录)
+     */
+    public boolean add(double value, long count) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {return false;}
+        if (count <= 0) {return true;}
+        totalCount += count;
+        if (value <= 0) {
+            zeroCount += count;
+            return true;
+        }
+        int index = index(Math.min(Math.max(value, MIN_VALUE), MAX_VALUE));
+        ensure(index, index);
+        counts[index - offset] += count;
+        return true;
+    }
+
+    /**
+     * 记录施压实例上报的百分位数据
+     * <p>格式:百分位,响应时间|百分位,响应时间...(百分位不要求有序)</p>
+     * <p>相邻两个百分位之间的请求都按较大百分位的响应时间记录,按累计值取整保证总数不变</p>
+     * <p>最高百分位之上的请求按最大响应时间记录(没有或非有限值时按最高百分位的响应时间)</p>
+     *
+     * @param percentData 百分位数据
+     * @param count       请求总数
+     * @param maxRt       最大响应时间(可为空)
+     * @return false - 格式不正确(不记录)
+     */
+    public boolean addPercentiles(String percentData, long count, Double maxRt) {
+        if (percentData == null || count <= 0) {return true;}
+        int length = percentData.length();
+        if (length == 0) {return true;}
+        int size = 1;
+        for (int i = 0; i < length; i++) {
+            if (percentData.charAt(i) == '|') {size++;}
+        }
+        double[] percents = new double[size];
+        double[] values = new double[size];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            int comma = percentData.indexOf(',', position);
+            int end = percentData.indexOf('|', position);
+            if (end < 0) {end = length;}
+            if (comma < 0 || comma > end) {return false;}
+            try {
+                percents[i] = Double.parseDouble(percentData.substring(position, comma).trim());
+                values[i] = Double.parseDouble(percentData.substring(comma + 1, end).trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (!finite(percents[i]) || !finite(values[i])) {return false;}
+            position = end + 1;
+        }
+        sort(percents, values);
+        double lastPercent = 0;
+        double top = 0;
+        long assigned = 0;
+        for (int i = 0; i < size; i++) {
+            double percent = Math.min(percents[i], 100);
+            if (percent <= lastPercent) {continue;}
+            long cumulative = Math.round(count * percent / 100);
+            add(values[i], cumulative - assigned);
+            assigned = cumulative;
+            lastPercent = percent;
+            top = Math.max(top, values[i]);
+        }
+        // 最高百分位之上的请求
+        if (assigned < count) {
+            add(maxRt != null && finite(maxRt) && maxRt > top ? maxRt : top, count - assigned);
+        }
+        return true;
+    }
+
+    private static boolean finite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * 按百分位升序排列(数据量很小,插入排序)
+     */
+    private static void sort(double[] percents, double[] values) {
+        for (int i = 1; i < percents.length; i++) {
+            double percent = percents[i];
+            double value = values[i];
+            int j = i - 1;
+            for (; j >= 0 && percents[j] > percent; j--) {
+                percents[j + 1] = percents[j];
+                values[j + 1] = values[j];
+            }
+            percents[j + 1] = percent;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * 合并
+     *
+     * @param other 另一个直方图
+     */
+    public void merge(LatencyHistogram other) {
+        if (other == null || other.totalCount == 0) {return;}
+        zeroCount += other.zeroCount;
+        totalCount += other.totalCount;
+        if (other.counts.length == 0) {return;}
+        ensure(other.offset, other.offset + other.counts.length - 1);
+        int shift = other.offset - offset;
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[shift + i] += other.counts[i];
+        }
+    }
+
+    /**
+     * 分位值
+     *
+     * @param quantile 分位(0-1)
+     * @return 响应时间<br/>没有数据时返回null
+     */
+    public Double quantile(double quantile) {
+        if (totalCount == 0) {return null;}
+        // 排名从1开始
+        long rank = Math.max(1, (long)Math.ceil(quantile * totalCount));
+        long seen = zeroCount;
+        if (seen >= rank) {return 0D;}
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {return value(offset + i);}
+        }
+        return value(offset + counts.length - 1);
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    /**
+     * 清空
+     */
+    public void reset() {
+        zeroCount = 0;
+        totalCount = 0;
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * 编码
+     * <p>版本、0值次数、非空桶数,之后每个非空桶为(下标差值, 次数),均为varint</p>
+     *
+     * @return 二进制数据
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + counts.length);
+        out.write(VERSION);
+        writeVarint(out, zeroCount);
+        int buckets = 0;
+        for (long count : counts) {
+            if (count != 0) {buckets++;}
+        }
+        writeVarint(out, buckets);
+        int last = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {continue;}
+            int index = offset + i;
+            writeVarint(out, zigzag(index - last));
+            writeVarint(out, counts[i]);
+            last = index;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码
+     *
+     * @param data 二进制数据
+     * @return 直方图
+     * @throws IllegalArgumentException 格式不正确
+     */
+    public static LatencyHistogram decode(byte[] data) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int[] position = {0};
+        if (data.length == 0 || data[position[0]++] != VERSION) {throw new IllegalArgumentException("不支持的直方图格式");}
+        histogram.zeroCount = readVarint(data, position);
+        histogram.totalCount = histogram.zeroCount;
+        long buckets = readVarint(data, position);
+        int index = 0;
+        for (long i = 0; i < buckets; i++) {
+            long delta = readVarint(data, position);
+            index += (int)((delta >>> 1) ^ -(delta & 1));
+            // 避免按异常的下标扩展计数数组
+            if (index < MIN_INDEX || index > MAX_INDEX) {throw new IllegalArgumentException("直方图下标超出范围:" + index);}
+            long count = readVarint(data, position);
+            histogram.ensure(index, index);
+            histogram.counts[index - histogram.offset] += count;
+            histogram.totalCount += count;
+        }
+        return histogram;
+    }
+
+    private static int index(double value) {
+        return (int)Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    /**
+     * 桶的代表值(与上下界的相对误差相等)
+     */
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * 扩展计数数组使其覆盖[from, to]
+     */
+    private void ensure(int from, int to) {
+        if (counts.length == 0) {
+            offset = from;
+            counts = new long[Math.max(16, to - from + 1)];
+            return;
+        }
+        int last = offset + counts.length - 1;
+        if (from >= offset && to <= last) {return;}
+        int start = Math.min(offset, from);
+        int end = Math.max(last, to);
+        // 向扩展的方向预留空间,减少连续扩展
+        int slack = (end - start + 1) / 4;
+        if (start < offset) {start -= slack;}
+        if (end > last) {end += slack;}
+        long[] expanded = new long[end - start + 1];
+        System.arraycopy(counts, 0, expanded, offset - start, counts.length);
+        counts = expanded;
+        offset = start;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (position[0] >= data.length) {throw new IllegalArgumentException("直方图数据不完整");}
+            int b = data[position[0]++];
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {return value;}
+        }
+        throw new IllegalArgumentException("直方图数据格式不正确");
+    }
+}
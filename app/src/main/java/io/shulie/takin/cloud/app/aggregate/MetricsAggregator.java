@@ -0,0 +1,295 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.function.BiConsumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.text.CharSequenceUtil;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.app.util.InfluxUtil;
+import io.shulie.takin.cloud.app.util.PointCodec;
+import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.constant.CollectorConstants;
+import io.shulie.takin.cloud.model.response.MetricsWindow;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 集群维度的指标滚动聚合
+ * <p>按(施压任务, 关键词, 时间窗口)合并所有施压实例上报的指标和响应时间直方图,窗口关闭后写入一条集群维度的数据</p>
+ * <p>最近的窗口直接从内存中查询</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "METRICS")
+@Component
+public class MetricsAggregator {
+    /**
+     * 窗口大小(毫秒)
+     */
+    static final long WINDOW_MILLIS = CollectorConstants.SEND_TIME * 1000L;
+    private static final PointCodec<ClusterMetricsInfo> CODEC = PointCodec.of(ClusterMetricsInfo.class);
+
+    /**
+     * 内存中保留的窗口数
+     */
+    @Value("${metrics.aggregate.windows:120}")
+    Integer windows;
+    /**
+     * 窗口结束后等待迟到数据的时长(毫秒)
+     */
+    @Value("${metrics.aggregate.close-delay:10000}")
+    Long closeDelay;
+    /**
+     * 分段锁数量
+     */
+    @Value("${metrics.aggregate.stripes:64}")
+    Integer stripes;
+
+    /**
+     * 施压任务主键 → 关键词 → 滚动窗口
+     */
+    private final Map<Long, Map<String, WindowRow>> taskMap = new ConcurrentHashMap<>(16);
+    private Object[] locks;
+    /**
+     * 格式不正确的百分位数据(未计入直方图)
+     */
+    private final LongAdder malformedPercentiles = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new Object[size];
+        for (int i = 0; i < size; i++) {locks[i] = new Object();}
+    }
+
+    /**
+     * 合并
+     *
+     * @param pressureId  施压任务主键
+     * @param metricsList 已规整的指标数据
+     */
+    public void merge(Long pressureId, List<MetricsInfo> metricsList) {
+        for (MetricsInfo metrics : metricsList) {
+            String transaction = metrics.getTransaction();
+            if (transaction == null || metrics.getTimestamp() == null) {continue;}
+            long windowTime = CollectorUtil.getTimeWindowTime(metrics.getTimestamp());
+            int slot;
+            synchronized (lock(pressureId, transaction)) {
+                // 查找和合并在同一把锁内,不会合并到已被清理的窗口
+                slot = row(pressureId, transaction).merge(windowTime, metrics);
+            }
+            if (slot < 0) {
+                log.warn("Metrics-Aggregate({}):窗口{}已超出保留范围,丢弃关键词{}的数据", pressureId, windowTime, transaction);
+            }
+        }
+    }
+
+    /**
+     * 获取滚动窗口(调用方持有分段锁)
+     * <p>未关闭的窗口一定还在施压任务中;创建窗口与清理空的施压任务互斥</p>
+     */
+    private WindowRow row(Long pressureId, String transaction) {
+        Map<String, WindowRow> rowMap = taskMap.get(pressureId);
+        WindowRow row = rowMap == null ? null : rowMap.get(transaction);
+        if (row != null && !row.closed) {return row;}
+        WindowRow[] created = new WindowRow[1];
+        taskMap.compute(pressureId, (k, v) -> {
+            Map<String, WindowRow> map = v == null ? new ConcurrentHashMap<>(16) : v;
+            created[0] = map.compute(transaction, (t, old) -> old == null || old.closed ? new WindowRow(windows, malformedPercentiles) : old);
+            return map;
+        });
+        return created[0];
+    }
+
+    /**
+     * 写入已关闭的窗口,并清理长时间没有数据的施压任务
+     *
+     * @param writer 写入InfluxDB(表名, 行协议)
+     * @return 写入的窗口数
+     */
+    public int flush(BiConsumer<String, CharSequence> writer) {
+        long now = System.currentTimeMillis();
+        long closeBefore = now - WINDOW_MILLIS - closeDelay;
+        long expireBefore = now - windows * WINDOW_MILLIS;
+        ClusterMetricsInfo point = new ClusterMetricsInfo();
+        int total = 0;
+        for (Map.Entry<Long, Map<String, WindowRow>> task : taskMap.entrySet()) {
+            Long pressureId = task.getKey();
+            String measurement = InfluxUtil.getClusterMetricsMeasurement(pressureId);
+            String escaped = PointCodec.escapeMeasurement(measurement);
+            StringBuilder lines = new StringBuilder();
+            for (Map.Entry<String, WindowRow> entry : task.getValue().entrySet()) {
+                String transaction = entry.getKey();
+                WindowRow row = entry.getValue();
+                synchronized (lock(pressureId, transaction)) {
+                    for (int i = 0; i < windows; i++) {
+                        if (row.time[i] < 0 || row.flushed[i] || row.time[i] > closeBefore) {continue;}
+                        fill(point, transaction, row, i);
+                        CODEC.encode(lines, escaped, row.time[i], now, point);
+                        row.flushed[i] = true;
+                        total++;
+                    }
+                    if (row.lastUpdate < expireBefore && !row.pending()) {
+                        // 标记后移除,持有该窗口的合并方会重新创建
+                        row.closed = true;
+                        task.getValue().remove(transaction, row);
+                    }
+                }
+            }
+            if (lines.length() > 0) {
+                try {
+                    writer.accept(measurement, lines);
+                } catch (RuntimeException e) {
+                    log.error("Metrics-Aggregate({}):写入集群维度数据失败.\n", pressureId, e);
+                }
+            }
+            // 与创建窗口互斥,不会移除刚加入窗口的施压任务
+            taskMap.computeIfPresent(pressureId, (k, v) -> v.isEmpty() ? null : v);
+        }
+        return total;
+    }
+
+    /**
+     * 查询最近的窗口
+     *
+     * @param pressureId  施压任务主键
+     * @param transaction 关键词(为空时查询全部)
+     * @param size        窗口数
+     * @return 按窗口时间、关键词排序的窗口
+     */
+    public List<MetricsWindow> realtime(Long pressureId, String transaction, int size) {
+        Map<String, WindowRow> rowMap = taskMap.get(pressureId);
+        if (rowMap == null) {return new ArrayList<>(0);}
+        size = Math.max(1, Math.min(size, windows));
+        long closeBefore = System.currentTimeMillis() - WINDOW_MILLIS - closeDelay;
+        List<MetricsWindow> result = new ArrayList<>();
+        long newest = -1;
+        for (Map.Entry<String, WindowRow> entry : rowMap.entrySet()) {
+            if (CharSequenceUtil.isNotBlank(transaction) && !transaction.equals(entry.getKey())) {continue;}
+            WindowRow row = entry.getValue();
+            synchronized (lock(pressureId, entry.getKey())) {
+                for (int i = 0; i < windows; i++) {
+                    if (row.time[i] < 0) {continue;}
+                    newest = Math.max(newest, row.time[i]);
+                    result.add(toWindow(entry.getKey(), row, i, closeBefore));
+                }
+            }
+        }
+        long oldest = newest - (size - 1) * WINDOW_MILLIS;
+        result.removeIf(t -> t.getTime() < oldest);
+        result.sort(Comparator.comparing(MetricsWindow::getTime).thenComparing(MetricsWindow::getTransaction));
+        return result;
+    }
+
+    /**
+     * 合并内存中的响应时间直方图
+     *
+     * @param pressureId  施压任务主键
+     * @param transaction 关键词(为空时合并全部)
+     * @param startTime   开始时间(包含)
+     * @param endTime     结束时间(包含)
+     * @param into        合并到的直方图
+     * @param covered     已合并的窗口(关键词@窗口时间),这些窗口应以内存为准
+     */
+    public void histogram(Long pressureId, String transaction, long startTime, long endTime, LatencyHistogram into, Set<String> covered) {
+        Map<String, WindowRow> rowMap = taskMap.get(pressureId);
+        if (rowMap == null) {return;}
+        for (Map.Entry<String, WindowRow> entry : rowMap.entrySet()) {
+            if (CharSequenceUtil.isNotBlank(transaction) && !transaction.equals(entry.getKey())) {continue;}
+            WindowRow row = entry.getValue();
+            synchronized (lock(pressureId, entry.getKey())) {
+                for (int i = 0; i < windows; i++) {
+                    if (row.time[i] < startTime || row.time[i] > endTime) {continue;}
+                    into.merge(row.histogram[i]);
+                    covered.add(windowKey(entry.getKey(), row.time[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * 窗口标识
+     *
+     * @param transaction 关键词
+     * @param time        窗口时间
+     * @return 关键词@窗口时间
+     */
+    public static String windowKey(String transaction, long time) {
+        return transaction + "@" + time;
+    }
+
+    /**
+     * 统计信息
+     *
+     * @return 施压任务数、关键词数和格式不正确的百分位数据数
+     */
+    public Map<String, Object> statistics() {
+        Map<String, Object> result = new HashMap<>(4);
+        result.put("malformedPercentiles", malformedPercentiles.sum());
+        result.put("tasks", taskMap.size());
+        result.put("transactions", taskMap.values().stream().mapToInt(Map::size).sum());
+        return result;
+    }
+
+    private Object lock(Long pressureId, String transaction) {
+        int hash = pressureId.hashCode() * 31 + transaction.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    private static void fill(ClusterMetricsInfo point, String transaction, WindowRow row, int i) {
+        long count = row.count[i];
+        point.setTime(row.time[i]);
+        point.setTimestamp(row.time[i]);
+        point.setTransaction(transaction);
+        point.setTestName(row.testName);
+        point.setCount(clamp(count));
+        point.setFailCount(clamp(row.failCount[i]));
+        point.setSaCount(clamp(row.saCount[i]));
+        point.setSentBytes(clamp(row.sentBytes[i]));
+        point.setReceivedBytes(clamp(row.receivedBytes[i]));
+        point.setActiveThreads(clamp(row.activeThreads[i]));
+        point.setSumRt(row.sumRt[i]);
+        point.setRt(count == 0 ? 0 : row.sumRt[i] / count);
+        point.setMaxRt(row.maxRt[i]);
+        point.setMinRt(row.minRt[i]);
+        LatencyHistogram histogram = row.histogram[i];
+        point.setHistogram(histogram == null || histogram.count() == 0 ? null : Base64.getEncoder().encodeToString(histogram.encode()));
+    }
+
+    private static MetricsWindow toWindow(String transaction, WindowRow row, int i, long closeBefore) {
+        long count = row.count[i];
+        return new MetricsWindow()
+            .setTime(row.time[i])
+            .setTransaction(transaction)
+            .setTestName(row.testName)
+            .setCount(count)
+            .setFailCount(row.failCount[i])
+            .setSaCount(row.saCount[i])
+            .setTps(count * 1000D / WINDOW_MILLIS)
+            .setAvgRt(count == 0 ? 0 : row.sumRt[i] / count)
+            .setMaxRt(row.maxRt[i])
+            .setMinRt(row.minRt[i])
+            .setSentBytes(row.sentBytes[i])
+            .setReceivedBytes(row.receivedBytes[i])
+            .setActiveThreads(row.activeThreads[i])
+            .setSamples(row.samples[i])
+            .setClosed(row.time[i] <= closeBefore);
+    }
+
+    private static int clamp(long value) {
+        return (int)Math.min(value, Integer.MAX_VALUE);
+    }
+}
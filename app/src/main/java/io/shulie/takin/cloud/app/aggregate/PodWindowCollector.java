@@ -0,0 +1,201 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Component;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.StringRedisConnection;
+
+import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.app.service.JsonService;
+import io.shulie.takin.cloud.model.response.PodCount;
+
+/**
+ * 每个时间窗口上报数据的施压实例统计
+ * <p>上报时只记录到本地集合,按窗口批量写入Redis集合,多个cloud节点写入同一集合后计数仍然准确</p>
+ * <p>Redis格式:每个窗口一个集合{@code COLLECTOR:TASK:{施压任务主键}:windowsTime:{窗口时间}},成员为IP</p>
+ * <p>兼容旧格式:同时写入哈希{@code COLLECTOR:TASK:{施压任务主键}:windowsTime},字段为窗口时间,值为IP列表的JSON</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+@Component
+public class PodWindowCollector {
+    @javax.annotation.Resource
+    JsonService jsonService;
+    @javax.annotation.Resource
+    StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Redis中保留的时长(秒)
+     */
+    @Value("${metrics.pod-window.expire:86400}")
+    Long expire;
+    /**
+     * 单次查询的最大窗口数
+     */
+    @Value("${metrics.pod-window.max-query-windows:720}")
+    Integer maxQueryWindows;
+    /**
+     * 是否同时写入旧格式的哈希(供仍读取旧格式的外部系统使用)
+     */
+    @Value("${metrics.pod-window.legacy-hash:true}")
+    boolean legacyHash;
+
+    /**
+     * Redis的Key → 待写入的IP
+     * <p>集合只在{@link Map#compute}中修改,移出后不会再被修改</p>
+     */
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>(16);
+
+    /**
+     * 记录
+     *
+     * @param pressureId 施压任务主键
+     * @param time       时间
+     * @param ip         IP地址
+     */
+    public void add(Long pressureId, long time, String ip) {
+        if (ip == null) {return;}
+        pending.compute(getKey(pressureId, CollectorUtil.getTimeWindowTime(time)), (k, v) -> {
+            if (v == null) {v = new HashSet<>(4);}
+            v.add(ip);
+            return v;
+        });
+    }
+
+    /**
+     * 批量写入Redis
+     *
+     * @return 写入的窗口数
+     */
+    public int flush() {
+        return flush(null);
+    }
+
+    /**
+     * 批量写入Redis
+     *
+     * @param keyPrefix 只写入指定前缀的Key(为空时写入全部)
+     * @return 写入的窗口数
+     */
+    private int flush(String keyPrefix) {
+        Map<String, Set<String>> batch = new HashMap<>(pending.size());
+        for (String key : pending.keySet()) {
+            if (keyPrefix != null && !key.startsWith(keyPrefix)) {continue;}
+            Set<String> ipSet = pending.remove(key);
+            if (ipSet != null) {batch.put(key, ipSet);}
+        }
+        if (batch.isEmpty()) {return 0;}
+        List<String> keyList = new ArrayList<>(batch.keySet());
+        List<Object> resultList;
+        try {
+            resultList = stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection)connection;
+                keyList.forEach(key -> {
+                    stringConnection.sAdd(key, batch.get(key).toArray(new String[0]));
+                    stringConnection.expire(key, expire);
+                    if (legacyHash) {stringConnection.sMembers(key);}
+                });
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 放回,下次重试
+            batch.forEach((key, ipSet) -> pending.merge(key, ipSet, (o, n) -> {
+                Set<String> merged = new HashSet<>(o);
+                merged.addAll(n);
+                return merged;
+            }));
+            throw e;
+        }
+        if (legacyHash) {writeLegacyHash(keyList, resultList);}
+        return batch.size();
+    }
+
+    /**
+     * 写入旧格式的哈希
+     * <p>集合已写入,失败时不重试,下次写入同一窗口时会覆盖</p>
+     *
+     * @param keyList    窗口集合的Key
+     * @param resultList 写入集合的管道结果(每个Key依次为SADD、EXPIRE、SMEMBERS的结果)
+     */
+    private void writeLegacyHash(List<String> keyList, List<Object> resultList) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection)connection;
+                for (int i = 0; i < keyList.size(); i++) {
+                    Object members = resultList.get(i * 3 + 2);
+                    if (!(members instanceof Set)) {continue;}
+                    String key = keyList.get(i);
+                    int separator = key.lastIndexOf(':');
+                    String hashKey = key.substring(0, separator);
+                    stringConnection.hSet(hashKey, key.substring(separator + 1), jsonService.writeValueAsString(members));
+                    stringConnection.expire(hashKey, expire);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("写入旧格式的施压实例统计失败:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查询每个时间窗口的施压实例数
+     *
+     * @param pressureId 施压任务主键
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 每个窗口的施压实例数(超出最大窗口数时只返回最近的窗口)
+     */
+    public List<PodCount> count(Long pressureId, long startTime, long endTime) {
+        // 先写入本地尚未写入的数据
+        flush(getKeyPrefix(pressureId));
+        long windowMillis = MetricsAggregator.WINDOW_MILLIS;
+        long end = CollectorUtil.getTimeWindowTime(endTime);
+        long start = Math.max(CollectorUtil.getTimeWindowTime(startTime), end - (maxQueryWindows - 1) * windowMillis);
+        List<Long> windowList = new ArrayList<>();
+        for (long time = start; time <= end; time += windowMillis) {windowList.add(time);}
+        List<Object> countList = stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection)connection;
+            windowList.forEach(t -> stringConnection.sCard(getKey(pressureId, t)));
+            return null;
+        });
+        List<PodCount> result = new ArrayList<>(windowList.size());
+        for (int i = 0; i < windowList.size(); i++) {
+            Object count = countList.get(i);
+            result.add(new PodCount().setTime(windowList.get(i)).setCount(count instanceof Number ? ((Number)count).longValue() : 0L));
+        }
+        return result;
+    }
+
+    /**
+     * 窗口对应的Redis的Key
+     *
+     * @param pressureId 施压任务主键
+     * @param windowTime 窗口时间
+     * @return Redis的Key
+     */
+    private static String getKey(Long pressureId, long windowTime) {
+        return getKeyPrefix(pressureId) + windowTime;
+    }
+
+    /**
+     * 施压任务对应的Redis的Key前缀
+     *
+     * @param pressureId 施压任务主键
+     * @return Redis的Key前缀
+     */
+    private static String getKeyPrefix(Long pressureId) {
+        return String.format("COLLECTOR:TASK:%s:windowsTime:", pressureId);
+    }
+}
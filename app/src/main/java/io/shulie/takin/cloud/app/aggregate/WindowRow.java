@@ -0,0 +1,158 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 单个业务活动的滚动窗口
+ * <p>按窗口序号取模定位槽位,每个指标一个基本类型数组,不为每个窗口创建对象</p>
+ * <p>非线程安全,由{@link MetricsAggregator}的分段锁保护</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class WindowRow {
+    final long[] time;
+    final long[] count;
+    final long[] failCount;
+    final long[] saCount;
+    final long[] sentBytes;
+    final long[] receivedBytes;
+    final long[] activeThreads;
+    final double[] sumRt;
+    final double[] maxRt;
+    final double[] minRt;
+    /**
+     * 合并的上报次数
+     */
+    final int[] samples;
+    /**
+     * 响应时间直方图(按需创建)
+     */
+    final LatencyHistogram[] histogram;
+    /**
+     * 是否已写入InfluxDB
+     */
+    final boolean[] flushed;
+    /**
+     * 格式不正确的百分位数据计数(所有窗口共享)
+     */
+    private final LongAdder malformedPercentiles;
+    /**
+     * 业务活动名称
+     */
+    String testName;
+    /**
+     * 最后一次合并的时间
+     */
+    long lastUpdate;
+    /**
+     * 是否已从聚合中移除(移除后不再合并,由合并方重新创建)
+     */
+    boolean closed;
+
+    WindowRow(int windows, LongAdder malformedPercentiles) {
+        this.malformedPercentiles = malformedPercentiles;
+        time = new long[windows];
+        count = new long[windows];
+        failCount = new long[windows];
+        saCount = new long[windows];
+        sentBytes = new long[windows];
+        receivedBytes = new long[windows];
+        activeThreads = new long[windows];
+        sumRt = new double[windows];
+        maxRt = new double[windows];
+        minRt = new double[windows];
+        samples = new int[windows];
+        flushed = new boolean[windows];
+        histogram = new LatencyHistogram[windows];
+        Arrays.fill(time, -1);
+    }
+
+    /**
+     * 窗口对应的槽位
+     *
+     * @param windowTime 窗口时间
+     * @return 槽位下标
+     */
+    int slot(long windowTime) {
+        return (int)((windowTime / MetricsAggregator.WINDOW_MILLIS) % time.length);
+    }
+
+    /**
+     * 合并
+     *
+     * @param windowTime 窗口时间
+     * @param metrics    单个施压实例的指标
+     * @return 槽位下标<br/>窗口已超出保留范围时返回-1
+     */
+    int merge(long windowTime, MetricsInfo metrics) {
+        int slot = slot(windowTime);
+        if (time[slot] != windowTime) {
+            // 槽位中是更新的窗口,数据过旧
+            if (time[slot] > windowTime) {return -1;}
+            reset(slot, windowTime);
+        }
+        count[slot] += value(metrics.getCount());
+        failCount[slot] += value(metrics.getFailCount());
+        saCount[slot] += value(metrics.getSaCount());
+        sentBytes[slot] += value(metrics.getSentBytes());
+        receivedBytes[slot] += value(metrics.getReceivedBytes());
+        activeThreads[slot] += value(metrics.getActiveThreads());
+        sumRt[slot] += value(metrics.getSumRt());
+        if (metrics.getMaxRt() != null) {
+            maxRt[slot] = samples[slot] == 0 ? metrics.getMaxRt() : Math.max(maxRt[slot], metrics.getMaxRt());
+        }
+        if (metrics.getMinRt() != null) {
+            minRt[slot] = samples[slot] == 0 ? metrics.getMinRt() : Math.min(minRt[slot], metrics.getMinRt());
+        }
+        if (metrics.getPercentData() != null) {
+            if (histogram[slot] == null) {histogram[slot] = new LatencyHistogram();}
+            if (!histogram[slot].addPercentiles(metrics.getPercentData(), value(metrics.getCount()), metrics.getMaxRt())) {
+                malformedPercentiles.increment();
+            }
+        }
+        samples[slot]++;
+        flushed[slot] = false;
+        if (metrics.getTestName() != null) {testName = metrics.getTestName();}
+        lastUpdate = System.currentTimeMillis();
+        return slot;
+    }
+
+    private void reset(int slot, long windowTime) {
+        time[slot] = windowTime;
+        count[slot] = 0;
+        failCount[slot] = 0;
+        saCount[slot] = 0;
+        sentBytes[slot] = 0;
+        receivedBytes[slot] = 0;
+        activeThreads[slot] = 0;
+        sumRt[slot] = 0;
+        maxRt[slot] = 0;
+        minRt[slot] = 0;
+        samples[slot] = 0;
+        flushed[slot] = false;
+        if (histogram[slot] != null) {histogram[slot].reset();}
+    }
+
+    /**
+     * 是否还有未写入的窗口
+     *
+     * @return true/false
+     */
+    boolean pending() {
+        for (int i = 0; i < time.length; i++) {
+            if (time[i] >= 0 && !flushed[i]) {return true;}
+        }
+        return false;
+    }
+
+    private static long value(Number number) {
+        return number == null ? 0 : number.longValue();
+    }
+
+    private static double value(Double number) {
+        return number == null ? 0 : number;
+    }
+}
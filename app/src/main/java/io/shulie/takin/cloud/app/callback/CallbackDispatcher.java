@@ -0,0 +1,704 @@
+package io.shulie.takin.cloud.app.callback;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Date;
+import java.util.Set;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.http.HttpUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.exceptions.ExceptionUtil;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+
+import org.springframework.stereotype.Component;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.data.entity.CallbackEntity;
+import io.shulie.takin.cloud.app.aggregate.LatencyHistogram;
+import io.shulie.takin.cloud.app.service.CallbackService;
+import io.shulie.takin.cloud.app.service.CallbackLogService;
+
+/**
+ * 回调分发
+ * <p>新建的回调直接放入进程内队列,通过连接池复用的异步HTTP客户端发送,每个目标主机的并发数有上限</p>
+ * <p>超出目标主机并发数的回调在该主机的队列中等待,发送结束后依次发送</p>
+ * <p>数据库仍是唯一的持久化来源,主机队列或处理队列已满的回调由定时任务重新放入</p>
+ * <p>留给定时任务的回调会释放租约,由任意节点重新认领</p>
+ * <p>开启批量回调后,同一地址的回调合并为一次请求,请求体为数组,每一项带回调主键</p>
+ * <p>每个目标主机有独立的熔断器,熔断打开期间该主机的回调推迟到熔断结束后发送,不影响其他主机</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "CALLBACK")
+@Component
+public class CallbackDispatcher {
+    @javax.annotation.Resource
+    CallbackLogService callbackLogService;
+    @Lazy
+    @javax.annotation.Resource
+    CallbackService callbackService;
+
+    /**
+     * 最大连接数
+     */
+    @Value("${callback.dispatch.max-total:200}")
+    Integer maxTotal;
+    /**
+     * 每个目标主机的最大并发数
+     */
+    @Value("${callback.dispatch.max-per-host:8}")
+    Integer maxPerHost;
+    /**
+     * 每个目标主机排队等待的最大请求数
+     */
+    @Value("${callback.dispatch.max-pending-per-host:1000}")
+    Integer maxPendingPerHost;
+    /**
+     * 在目标主机队列中的最长等待时间(毫秒)
+     * <p>需要小于租约时长,超时的回调留给定时任务,避免租约过期后被其他节点重复发送</p>
+     */
+    @Value("${callback.dispatch.max-queue-wait:30000}")
+    Long maxQueueWait;
+    /**
+     * 连接超时(毫秒)
+     */
+    @Value("${callback.dispatch.connect-timeout:3000}")
+    Integer connectTimeout;
+    /**
+     * 读取超时(毫秒)
+     */
+    @Value("${callback.dispatch.socket-timeout:10000}")
+    Integer socketTimeout;
+    /**
+     * 处理线程数(记录日志、更新状态)
+     */
+    @Value("${callback.dispatch.workers:4}")
+    Integer workerSize;
+    /**
+     * 队列容量
+     */
+    @Value("${callback.dispatch.queue-size:10000}")
+    Integer queueSize;
+    /**
+     * 是否开启批量回调
+     * <p>需要控制台支持批量回调协议</p>
+     */
+    @Value("${callback.batch.enabled:false}")
+    Boolean batchEnabled;
+    /**
+     * 单次批量回调的最大数量
+     */
+    @Value("${callback.batch.max-size:50}")
+    Integer batchMaxSize;
+    /**
+     * 批量回调的最长等待时间(毫秒)
+     */
+    @Value("${callback.batch.linger:200}")
+    Long batchLinger;
+    /**
+     * 打开熔断的连续失败次数
+     */
+    @Value("${callback.breaker.failure-threshold:5}")
+    Integer breakerFailureThreshold;
+    /**
+     * 熔断打开时长(毫秒)
+     */
+    @Value("${callback.breaker.open-duration:30000}")
+    Long breakerOpenDuration;
+    /**
+     * 半开状态的探测请求数
+     */
+    @Value("${callback.breaker.probes:1}")
+    Integer breakerProbes;
+
+    private CloseableHttpAsyncClient client;
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService batcher;
+    /**
+     * 回调地址 → 等待合并的回调
+     */
+    private final Map<String, Batch> batchMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 已放入队列或正在发送的回调主键
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * 目标主机 → 并发名额和排队的请求
+     */
+    private final Map<String, HostQueue> hostMap = new ConcurrentHashMap<>(16);
+    /**
+     * 目标主机 → 熔断器
+     */
+    private final Map<String, CircuitBreaker> breakerMap = new ConcurrentHashMap<>(16);
+    /**
+     * 合并键 → 最新的回调主键
+     * <p>队列中已被取代的回调在发送前丢弃</p>
+     */
+    private final Map<String, Long> latestMap = new ConcurrentHashMap<>(16);
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    /**
+     * 最近60秒每秒的送达数(下标为秒数取模)
+     */
+    private final AtomicLongArray secondCount = new AtomicLongArray(60);
+    private final AtomicLongArray secondTime = new AtomicLongArray(60);
+    /**
+     * 发送耗时(毫秒)
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    @PostConstruct
+    public void init() throws IOException {
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        client = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build())
+            .build();
+        client.start();
+        workers = new ThreadPoolExecutor(workerSize, workerSize, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory("CallbackDispatcher-", false));
+        if (batchEnabled) {
+            batcher = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("CallbackBatcher-", true));
+            batcher.scheduleWithFixedDelay(this::linger, batchLinger, batchLinger, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 放入队列
+     *
+     * @param callback 回调
+     * @return false - 已在队列中或队列已满
+     */
+    public boolean submit(CallbackEntity callback) {
+        if (callback.getId() == null || !inFlight.add(callback.getId())) {return false;}
+        if (callback.getCoalesceKey() != null) {latestMap.merge(callback.getCoalesceKey(), callback.getId(), Math::max);}
+        if (batchEnabled) {
+            submitted.incrementAndGet();
+            List<CallbackEntity> full = batchMap.computeIfAbsent(callback.getUrl(), t -> new Batch()).add(callback, batchMaxSize);
+            if (full != null) {execute(callback.getUrl(), full);}
+            return true;
+        }
+        try {
+            workers.execute(() -> send(callback));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            giveBack(Collections.singletonList(callback));
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * 发送等待时间已到的批量回调
+     */
+    private void linger() {
+        long now = System.currentTimeMillis();
+        batchMap.forEach((url, batch) -> {
+            List<CallbackEntity> list = batch.drain(now - batchLinger);
+            if (list != null) {execute(url, list);}
+        });
+    }
+
+    /**
+     * 放入处理线程发送批量回调
+     */
+    private void execute(String url, List<CallbackEntity> callbackList) {
+        try {
+            workers.execute(() -> send(url, callbackList));
+        } catch (RejectedExecutionException e) {
+            giveBack(callbackList);
+            rejected.addAndGet(callbackList.size());
+        }
+    }
+
+    /**
+     * 发送单个回调
+     */
+    private void send(CallbackEntity callback) {
+        if (isSuperseded(callback)) {return;}
+        Map<String, Object> query = new HashMap<>(2);
+        query.put("id", callback.getId());
+        query.put("type", callback.getType());
+        String requestUrl = HttpUtil.urlWithForm(callback.getUrl(), query, StandardCharsets.UTF_8, true);
+        Map<Long, CallbackEntity> callbackMap = new LinkedHashMap<>(2);
+        callbackMap.put(callback.getId(), callback);
+        post(callback.getUrl(), requestUrl, callbackMap, callback.getContext(), false);
+    }
+
+    /**
+     * 发送批量回调
+     * <p>请求体: [{"id":回调主键,"type":回调类型,"data":回调内容}]</p>
+     */
+    private void send(String url, List<CallbackEntity> callbackList) {
+        callbackList.removeIf(this::isSuperseded);
+        if (callbackList.isEmpty()) {return;}
+        Map<String, Object> query = new HashMap<>(2);
+        query.put("batch", true);
+        String requestUrl = HttpUtil.urlWithForm(url, query, StandardCharsets.UTF_8, true);
+        Map<Long, CallbackEntity> callbackMap = new LinkedHashMap<>(callbackList.size() * 2);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (CallbackEntity callback : callbackList) {
+            if (!callbackMap.isEmpty()) {body.write(',');}
+            callbackMap.put(callback.getId(), callback);
+            byte[] head = ("{\"id\":" + callback.getId() + ",\"type\":" + callback.getType() + ",\"data\":").getBytes(StandardCharsets.UTF_8);
+            body.write(head, 0, head.length);
+            body.write(callback.getContext(), 0, callback.getContext().length);
+            body.write('}');
+        }
+        body.write(']');
+        post(url, requestUrl, callbackMap, body.toByteArray(), true);
+    }
+
+    /**
+     * 释放(发送结束或留给定时任务)
+     */
+    private void release(CallbackEntity callback) {
+        inFlight.remove(callback.getId());
+        if (callback.getCoalesceKey() != null) {latestMap.remove(callback.getCoalesceKey(), callback.getId());}
+    }
+
+    /**
+     * 释放并留给定时任务
+     * <p>释放租约,任意节点都可以立即认领</p>
+     */
+    private void giveBack(Collection<CallbackEntity> callbackList) {
+        callbackList.forEach(this::release);
+        try {
+            callbackService.releaseLease(callbackList.stream().map(CallbackEntity::getId).collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            log.warn("释放回调租约失败,等待租约过期:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 推迟到熔断结束后发送
+     */
+    private void postpone(Collection<CallbackEntity> callbackList, long retryAt) {
+        callbackList.forEach(this::release);
+        try {
+            callbackService.postpone(callbackList.stream().map(CallbackEntity::getId).collect(Collectors.toList()), new Date(retryAt));
+        } catch (RuntimeException e) {
+            log.warn("推迟回调失败,等待租约过期:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 是否已被取代
+     * <p>已被取代的回调直接释放,不再发送</p>
+     */
+    private boolean isSuperseded(CallbackEntity callback) {
+        String key = callback.getCoalesceKey();
+        if (key == null) {return false;}
+        Long latest = latestMap.get(key);
+        if (latest == null || latest <= callback.getId()) {return false;}
+        release(callback);
+        superseded.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 发送请求
+     * <p>目标主机并发已满时排队,排队也满时留给定时任务</p>
+     *
+     * @param url         回调地址(用于限制并发)
+     * @param requestUrl  请求地址
+     * @param callbackMap 回调主键 → 回调
+     * @param body        请求体
+     * @param batch       是否为批量回调
+     */
+    private void post(String url, String requestUrl, Map<Long, CallbackEntity> callbackMap, byte[] body, boolean batch) {
+        Request request = new Request(host(url), requestUrl, callbackMap, body, batch);
+        HostQueue queue = hostMap.computeIfAbsent(request.host, t -> new HostQueue());
+        switch (queue.offer(request, maxPerHost, maxPendingPerHost)) {
+            case HostQueue.ACQUIRED:
+                dispatch(queue, request);
+                break;
+            case HostQueue.QUEUED:
+                queued.addAndGet(callbackMap.size());
+                break;
+            default:
+                giveBack(callbackMap.values());
+                deferred.addAndGet(callbackMap.size());
+        }
+    }
+
+    /**
+     * 持有并发名额时发送
+     * <p>没有发出请求时立即交出名额,否则在请求结束后交出</p>
+     */
+    private void dispatch(HostQueue queue, Request request) {
+        boolean sent = false;
+        try {
+            sent = execute(queue, request);
+        } finally {
+            if (!sent) {next(queue);}
+        }
+    }
+
+    /**
+     * 交出并发名额
+     * <p>有排队的请求时名额直接转交,在处理线程中发送</p>
+     */
+    private void next(HostQueue queue) {
+        for (Request request = queue.next(); request != null; request = queue.next()) {
+            Request next = request;
+            if (System.currentTimeMillis() - next.createTime > maxQueueWait) {
+                giveBack(next.callbackMap.values());
+                deferred.addAndGet(next.callbackMap.size());
+                continue;
+            }
+            try {
+                workers.execute(() -> dispatch(queue, next));
+                return;
+            } catch (RejectedExecutionException e) {
+                giveBack(request.callbackMap.values());
+                rejected.addAndGet(request.callbackMap.size());
+            }
+        }
+    }
+
+    /**
+     * 发出请求
+     *
+     * @return false - 没有发出(已被取代、熔断打开或发送异常)
+     */
+    private boolean execute(HostQueue queue, Request request) {
+        Map<Long, CallbackEntity> callbackMap = request.callbackMap;
+        String host = request.host;
+        // 排队期间可能已被取代
+        if (!request.batch && callbackMap.values().stream().anyMatch(this::isSuperseded)) {return false;}
+        long now = System.currentTimeMillis();
+        CircuitBreaker breaker = breakerMap.computeIfAbsent(host, t -> new CircuitBreaker(breakerFailureThreshold, breakerOpenDuration, breakerProbes));
+        // 熔断打开,推迟到熔断结束后
+        if (!breaker.tryAcquire(now)) {
+            postpone(callbackMap.values(), Math.max(breaker.retryAt(), now));
+            shortCircuited.addAndGet(callbackMap.size());
+            return false;
+        }
+        // 回调主键 → 回调日志主键
+        Map<Long, Long> logIdMap = new LinkedHashMap<>(callbackMap.size() * 2);
+        try {
+            // 记录请求
+            callbackMap.forEach((id, callback) -> logIdMap.put(id, callbackLogService.create(id, callback.getType(), request.requestUrl)));
+            HttpPost post = new HttpPost(request.requestUrl);
+            post.setEntity(new ByteArrayEntity(request.body, ContentType.APPLICATION_JSON));
+            long start = System.currentTimeMillis();
+            client.execute(post, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    byte[] result;
+                    try {
+                        result = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+                    } catch (IOException e) {
+                        failed(e);
+                        return;
+                    }
+                    // 服务端错误计入熔断
+                    if (response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                        trip(breaker, host);
+                    } else {
+                        breaker.onSuccess();
+                    }
+                    delivered.addAndGet(callbackMap.size());
+                    complete(queue, callbackMap, logIdMap, result, request.batch, start);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    trip(breaker, host);
+                    CallbackDispatcher.this.failed.addAndGet(callbackMap.size());
+                    complete(queue, callbackMap, logIdMap, ExceptionUtil.stacktraceToOneLineString(ex, 500).getBytes(StandardCharsets.UTF_8), request.batch, start);
+                }
+
+                @Override
+                public void cancelled() {
+                    failed(new IllegalStateException("请求已取消"));
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            failed.addAndGet(callbackMap.size());
+            log.error("回调{}发送失败.\n", callbackMap.keySet(), e);
+            logIdMap.forEach((id, logId) -> callbackLogService.fill(id, logId, ExceptionUtil.stacktraceToOneLineString(e, 500)));
+            breaker.onCancel();
+            callbackMap.values().forEach(this::release);
+            return false;
+        }
+    }
+
+    /**
+     * 目标主机
+     *
+     * @param url 回调地址
+     * @return 主机:端口<br/>无法解析时返回回调地址
+     */
+    private static String host(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getHost() + ":" + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * 记录目标主机的失败
+     */
+    private void trip(CircuitBreaker breaker, String host) {
+        if (breaker.onFailure(System.currentTimeMillis())) {
+            log.warn("回调目标{}熔断,{}毫秒内不再发送", host, breakerOpenDuration);
+        }
+    }
+
+    /**
+     * 发送结束
+     * <p>在处理线程中记录响应,不占用IO线程</p>
+     */
+    private void complete(HostQueue queue, Map<Long, CallbackEntity> callbackMap, Map<Long, Long> logIdMap, byte[] result, boolean batch, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        synchronized (latency) {latency.add(Math.max(elapsed, 1), 1);}
+        count(System.currentTimeMillis() / 1000, logIdMap.size());
+        next(queue);
+        Runnable fill = () -> {
+            try {
+                if (batch) {
+                    callbackLogService.fillBatch(logIdMap, result);
+                } else {
+                    logIdMap.forEach((id, logId) -> callbackLogService.fill(id, logId, result));
+                }
+            } catch (RuntimeException e) {
+                log.error("回调{}记录响应失败.\n", logIdMap.keySet(), e);
+            } finally {
+                callbackMap.values().forEach(CallbackDispatcher.this::release);
+            }
+        };
+        try {
+            workers.execute(fill);
+        } catch (RejectedExecutionException e) {
+            fill.run();
+        }
+    }
+
+    private void count(long second, int delta) {
+        int slot = (int)(second % 60);
+        long previous = secondTime.get(slot);
+        if (previous != second && secondTime.compareAndSet(slot, previous, second)) {secondCount.set(slot, 0);}
+        secondCount.addAndGet(slot, delta);
+    }
+
+    /**
+     * 统计信息
+     *
+     * @return 吞吐量、耗时分位数、队列和各主机的并发数、排队数
+     */
+    public Map<String, Object> statistics() {
+        long now = System.currentTimeMillis() / 1000;
+        long recent = 0;
+        for (int i = 0; i < 60; i++) {
+            if (now - secondTime.get(i) < 60) {recent += secondCount.get(i);}
+        }
+        Map<String, Object> result = new HashMap<>(16);
+        result.put("submitted", submitted.get());
+        result.put("delivered", delivered.get());
+        result.put("failed", failed.get());
+        result.put("deferred", deferred.get());
+        result.put("queued", queued.get());
+        result.put("rejected", rejected.get());
+        result.put("superseded", superseded.get());
+        result.put("shortCircuited", shortCircuited.get());
+        result.put("inFlight", inFlight.size());
+        result.put("queue", workers.getQueue().size());
+        result.put("batching", batchMap.values().stream().mapToInt(Batch::size).sum());
+        result.put("throughput", recent / 60D);
+        synchronized (latency) {
+            result.put("p50", latency.quantile(0.5));
+            result.put("p90", latency.quantile(0.9));
+            result.put("p99", latency.quantile(0.99));
+        }
+        Map<String, Integer> hosts = new HashMap<>(hostMap.size());
+        Map<String, Integer> pending = new HashMap<>(hostMap.size());
+        hostMap.forEach((k, v) -> {
+            if (v.active() > 0) {hosts.put(k, v.active());}
+            if (v.pending() > 0) {pending.put(k, v.pending());}
+        });
+        result.put("hosts", hosts);
+        result.put("pending", pending);
+        Map<String, String> breakers = new HashMap<>(breakerMap.size());
+        breakerMap.forEach((k, v) -> {
+            CircuitBreaker.State state = v.state();
+            if (state != CircuitBreaker.State.CLOSED) {breakers.put(k, state.name());}
+        });
+        result.put("breakers", breakers);
+        return result;
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (batcher != null) {batcher.shutdownNow();}
+        // 未发送的批量回调留在数据库中,由定时任务补发
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {log.warn("回调分发未能在限定时间内处理完队列:{}条", workers.getQueue().size());}
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        client.close();
+    }
+
+    /**
+     * 待发送的请求
+     */
+    private static final class Request {
+        private final String host;
+        private final String requestUrl;
+        private final Map<Long, CallbackEntity> callbackMap;
+        private final byte[] body;
+        private final boolean batch;
+        private final long createTime = System.currentTimeMillis();
+
+        private Request(String host, String requestUrl, Map<Long, CallbackEntity> callbackMap, byte[] body, boolean batch) {
+            this.host = host;
+            this.requestUrl = requestUrl;
+            this.callbackMap = callbackMap;
+            this.body = body;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * 目标主机的并发名额和排队的请求
+     */
+    private static class HostQueue {
+        private static final int ACQUIRED = 0;
+        private static final int QUEUED = 1;
+        private static final int FULL = 2;
+
+        private final ArrayDeque<Request> pending = new ArrayDeque<>();
+        private int active;
+
+        /**
+         * 申请并发名额
+         *
+         * @return {@link #ACQUIRED} - 获得名额<br/>{@link #QUEUED} - 已排队<br/>{@link #FULL} - 排队已满
+         */
+        private synchronized int offer(Request request, int maxActive, int maxPending) {
+            if (active < maxActive) {
+                active++;
+                return ACQUIRED;
+            }
+            if (pending.size() >= maxPending) {return FULL;}
+            pending.addLast(request);
+            return QUEUED;
+        }
+
+        /**
+         * 交出名额
+         *
+         * @return 有排队的请求时返回该请求(名额转交给它)<br/>否则释放名额并返回null
+         */
+        private synchronized Request next() {
+            Request request = pending.pollFirst();
+            if (request == null) {active--;}
+            return request;
+        }
+
+        private synchronized int active() {
+            return active;
+        }
+
+        private synchronized int pending() {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 同一地址等待合并的回调
+     */
+    private static class Batch {
+        private final List<CallbackEntity> list = new ArrayList<>();
+        private long firstTime;
+
+        /**
+         * 加入
+         *
+         * @return 达到最大数量时返回取出的回调<br/>否则返回null
+         */
+        private synchronized List<CallbackEntity> add(CallbackEntity callback, int maxSize) {
+            if (list.isEmpty()) {firstTime = System.currentTimeMillis();}
+            list.add(callback);
+            return list.size() >= maxSize ? drain() : null;
+        }
+
+        /**
+         * 取出等待时间已到的回调
+         *
+         * @param before 第一个回调的加入时间早于该时间时取出
+         * @return 没有需要发送的回调时返回null
+         */
+        private synchronized List<CallbackEntity> drain(long before) {
+            return list.isEmpty() || firstTime > before ? null : drain();
+        }
+
+        private List<CallbackEntity> drain() {
+            List<CallbackEntity> result = new ArrayList<>(list);
+            list.clear();
+            return result;
+        }
+
+        private synchronized int size() {
+            return list.size();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.shulie.takin.cloud.app.callback;
+
+/**
+ * 目标主机的熔断器
+ * <p>连续失败达到阈值后打开,打开期间不再向该主机发送</p>
+ * <p>打开时长结束后进入半开状态,只放行有限数量的探测请求,探测成功后关闭,失败后重新打开</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class CircuitBreaker {
+    /**
+     * 状态
+     */
+    enum State {
+        /**
+         * 关闭(正常发送)
+         */
+        CLOSED,
+        /**
+         * 打开(不发送)
+         */
+        OPEN,
+        /**
+         * 半开(只发送探测请求)
+         */
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int probes;
+
+    private State state = State.CLOSED;
+    /**
+     * 连续失败次数
+     */
+    private int failures;
+    /**
+     * 正在进行的探测请求数
+     */
+    private int probing;
+    /**
+     * 打开状态的结束时间
+     */
+    private long openUntil;
+
+    /**
+     * @param failureThreshold 打开熔断的连续失败次数
+     * @param openDuration     打开时长(毫秒)
+     * @param probes           半开状态的探测请求数
+     */
+    CircuitBreaker(int failureThreshold, long openDuration, int probes) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = Math.max(0, openDuration);
+        this.probes = Math.max(1, probes);
+    }
+
+    /**
+     * 申请发送
+     *
+     * @param now 当前时间
+     * @return true - 可以发送,发送结束后必须调用{@link #onSuccess}、{@link #onFailure}或{@link #onCancel}
+     */
+    synchronized boolean tryAcquire(long now) {
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+            probing = 0;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probing >= probes) {return false;}
+                probing++;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 发送成功
+     */
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {probing = Math.max(0, probing - 1);}
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * 发送失败(连接失败、超时、服务端错误)
+     *
+     * @param now 当前时间
+     * @return true - 本次失败打开了熔断
+     */
+    synchronized boolean onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            probing = Math.max(0, probing - 1);
+            open(now);
+            return true;
+        }
+        if (state == State.CLOSED && ++failures >= failureThreshold) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 未发送(不计入结果)
+     */
+    synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {probing = Math.max(0, probing - 1);}
+    }
+
+    /**
+     * 下次可以尝试的时间
+     *
+     * @return 打开状态的结束时间
+     */
+    synchronized long retryAt() {
+        return openUntil;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        failures = 0;
+        openUntil = now + openDuration;
+    }
+}
@@ -0,0 +1,255 @@
+package io.shulie.takin.cloud.app.command;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.text.StrPool;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import io.shulie.takin.cloud.data.entity.CommandEntity;
+import io.shulie.takin.cloud.model.response.ApiResult;
+import io.shulie.takin.cloud.constant.enums.CommandType;
+
+/**
+ * 命令长轮询
+ * <p>没有命令时挂起请求,直到该调度器有同类型的新命令或超时</p>
+ * <p>本节点创建的命令直接唤醒,其他节点创建的命令通过Redis发布订阅唤醒</p>
+ * <p>其他节点创建和确认的命令同时同步到本节点的未确认命令索引</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "NOTIFY")
+@Component
+public class CommandNotifier {
+    @javax.annotation.Resource
+    StringRedisTemplate stringRedisTemplate;
+    @javax.annotation.Resource
+    RedisConnectionFactory redisConnectionFactory;
+    @javax.annotation.Resource
+    PendingCommandIndex pendingCommandIndex;
+
+    /**
+     * 默认挂起时长(毫秒)
+     */
+    @Value("${command.long-poll.timeout:30000}")
+    Long defaultTimeout;
+    /**
+     * 最大挂起时长(毫秒)
+     */
+    @Value("${command.long-poll.max-timeout:60000}")
+    Long maxTimeout;
+    /**
+     * 唤醒后弹出命令的线程数
+     */
+    @Value("${command.long-poll.workers:4}")
+    Integer workerSize;
+    /**
+     * Redis频道
+     */
+    @Value("${command.long-poll.channel:takin:cloud:command}")
+    String channel;
+
+    private static final String CREATED = "C";
+    private static final String ACKED = "A";
+
+    /**
+     * 节点标识
+     * <p>忽略本节点发布的消息</p>
+     */
+    private final String node = IdUtil.fastSimpleUUID();
+    /**
+     * 调度器主键 → 等待中的请求
+     */
+    private final Map<Long, Set<Waiter>> waiterMap = new ConcurrentHashMap<>(16);
+    private ThreadPoolExecutor workers;
+    private RedisMessageListenerContainer container;
+
+    @PostConstruct
+    public void init() {
+        workers = new ThreadPoolExecutor(workerSize, workerSize, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(10000), new NamedThreadFactory("CommandNotifier-", true));
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(this::onMessage, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    /**
+     * 挂起请求
+     *
+     * @param watchmanId 调度器主键
+     * @param type       命令类型
+     * @param timeout    挂起时长(毫秒,为空时使用默认值)
+     * @param popper     弹出命令(没有命令时返回null)
+     * @return 有命令或超时后返回
+     */
+    public DeferredResult<ApiResult<Object>> await(long watchmanId, CommandType type, Long timeout, Supplier<Object> popper) {
+        long wait = timeout == null || timeout <= 0 ? defaultTimeout : Math.min(timeout, maxTimeout);
+        DeferredResult<ApiResult<Object>> result = new DeferredResult<>(wait);
+        Waiter waiter = new Waiter(type, result, popper);
+        // 先登记再检查,检查后创建的命令一定能唤醒
+        Set<Waiter> waiterSet = waiterMap.computeIfAbsent(watchmanId, t -> ConcurrentHashMap.newKeySet());
+        waiterSet.add(waiter);
+        result.onTimeout(() -> waiter.complete(ApiResult.success()));
+        result.onCompletion(() -> waiterMap.computeIfPresent(watchmanId, (k, v) -> {
+            v.remove(waiter);
+            return v.isEmpty() ? null : v;
+        }));
+        waiter.poll();
+        return result;
+    }
+
+    /**
+     * 发布新命令
+     * <p>追加到本节点的索引并唤醒,其他节点加载后唤醒</p>
+     *
+     * @param command 命令
+     */
+    public void publish(CommandEntity command) {
+        pendingCommandIndex.add(command);
+        wake(command.getWatchmanId(), command.getType());
+        send(CharSequenceUtil.join(StrPool.COMMA, CREATED, node, command.getWatchmanId(), command.getType(), command.getId()));
+    }
+
+    /**
+     * 发布命令确认
+     * <p>从本节点和其他节点的索引中移除</p>
+     *
+     * @param idList 命令主键
+     */
+    public void publishAck(Collection<Long> idList) {
+        if (idList.isEmpty()) {return;}
+        pendingCommandIndex.remove(idList);
+        send(CharSequenceUtil.join(StrPool.COMMA, ACKED, node, CharSequenceUtil.join(StrPool.COMMA, idList)));
+    }
+
+    private void send(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(channel, message);
+        } catch (RuntimeException e) {
+            log.warn("命令消息发布失败,其他节点将在定时核对后同步:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 等待中的请求数
+     *
+     * @return 请求数
+     */
+    public int waiting() {
+        return waiterMap.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * 其他节点的消息
+     * <p>创建: C,节点,调度器主键,命令类型,命令主键</p>
+     * <p>确认: A,节点,命令主键...</p>
+     */
+    private void onMessage(Message message, byte[] pattern) {
+        String[] body = new String(message.getBody(), StandardCharsets.UTF_8).split(StrPool.COMMA);
+        if (body.length < 3 || node.equals(body[1])) {return;}
+        try {
+            if (CREATED.equals(body[0]) && body.length == 5) {
+                long watchmanId = Long.parseLong(body[2]);
+                int type = Integer.parseInt(body[3]);
+                long id = Long.parseLong(body[4]);
+                workers.execute(() -> {
+                    try {
+                        pendingCommandIndex.load(id);
+                    } catch (RuntimeException e) {
+                        log.warn("加载命令{}失败,等待定时核对后同步:{}", id, e.getMessage());
+                        return;
+                    }
+                    wake(watchmanId, type);
+                });
+            } else if (ACKED.equals(body[0])) {
+                List<Long> idList = new ArrayList<>(body.length - 2);
+                for (int i = 2; i < body.length; i++) {idList.add(Long.parseLong(body[i]));}
+                pendingCommandIndex.remove(idList);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的命令消息:{}", String.join(StrPool.COMMA, body));
+        } catch (RejectedExecutionException e) {
+            log.warn("长轮询唤醒队列已满,等待定时核对后同步");
+        }
+    }
+
+    /**
+     * 唤醒同类型的请求
+     */
+    private void wake(long watchmanId, int type) {
+        Set<Waiter> waiterSet = waiterMap.get(watchmanId);
+        if (waiterSet == null) {return;}
+        for (Waiter waiter : waiterSet) {
+            if (waiter.type.getValue() != type) {continue;}
+            try {
+                workers.execute(waiter::poll);
+            } catch (RejectedExecutionException e) {
+                log.warn("长轮询唤醒队列已满,等待超时后由调度器重新请求");
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        container.destroy();
+        workers.shutdownNow();
+    }
+
+    /**
+     * 等待中的请求
+     * <p>弹出命令和超时互斥,弹出的命令不会因为超时而丢失</p>
+     */
+    private static class Waiter {
+        private final CommandType type;
+        private final DeferredResult<ApiResult<Object>> result;
+        private final Supplier<Object> popper;
+
+        private Waiter(CommandType type, DeferredResult<ApiResult<Object>> result, Supplier<Object> popper) {
+            this.type = type;
+            this.result = result;
+            this.popper = popper;
+        }
+
+        private synchronized void poll() {
+            if (result.isSetOrExpired()) {return;}
+            try {
+                Object command = popper.get();
+                if (command != null) {result.setResult(ApiResult.success(command));}
+            } catch (RuntimeException e) {
+                log.error("长轮询弹出命令失败.\n", e);
+                result.setResult(ApiResult.fail(e.getMessage()));
+            }
+        }
+
+        private synchronized void complete(ApiResult<Object> value) {
+            result.setResult(value);
+        }
+    }
+}
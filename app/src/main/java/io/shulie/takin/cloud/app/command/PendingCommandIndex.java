@@ -0,0 +1,181 @@
+package io.shulie.takin.cloud.app.command;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Component;
+
+import io.shulie.takin.cloud.data.entity.CommandEntity;
+import io.shulie.takin.cloud.constant.enums.CommandType;
+import io.shulie.takin.cloud.data.service.CommandMapperService;
+
+/**
+ * 未确认命令的内存索引
+ * <p>按(调度器, 命令类型)保存未确认的命令,弹出时只读内存,不查询数据库</p>
+ * <p>数据库仍是唯一的持久化来源:启动时加载未确认的命令,创建时追加,确认时移除,定时与数据库核对</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "NOTIFY")
+@Component
+public class PendingCommandIndex {
+    @javax.annotation.Resource(name = "commandMapperServiceImpl")
+    CommandMapperService commandMapper;
+
+    /**
+     * 调度器主键 → 命令类型 → 命令主键 → 命令
+     */
+    private final Map<Long, Map<Integer, ConcurrentSkipListMap<Long, CommandEntity>>> watchmanMap = new ConcurrentHashMap<>(16);
+    /**
+     * 命令主键 → 命令
+     * <p>确认时只有命令主键</p>
+     */
+    private final Map<Long, CommandEntity> idMap = new ConcurrentHashMap<>(16);
+    /**
+     * 核对期间移除的命令主键
+     * <p>核对查询之后才移除的命令仍在查询结果中,不能再追加回来</p>
+     */
+    private final Set<Long> removedIdSet = ConcurrentHashMap.newKeySet();
+    /**
+     * 是否正在核对
+     */
+    private volatile boolean resyncing = false;
+
+    @PostConstruct
+    public void init() {
+        int count = resync();
+        log.info("加载未确认的命令:{}", count);
+    }
+
+    /**
+     * 追加
+     *
+     * @param command 命令(需要主键、调度主键、类型、内容、创建时间)
+     */
+    public void add(CommandEntity command) {
+        if (command.getId() == null || command.getWatchmanId() == null || command.getType() == null) {return;}
+        if (idMap.putIfAbsent(command.getId(), command) != null) {return;}
+        watchmanMap.computeIfAbsent(command.getWatchmanId(), t -> new ConcurrentHashMap<>(8))
+            .computeIfAbsent(command.getType(), t -> new ConcurrentSkipListMap<>())
+            .put(command.getId(), command);
+    }
+
+    /**
+     * 按主键从数据库加载并追加
+     * <p>用于其他节点创建的命令</p>
+     *
+     * @param id 命令主键
+     */
+    public void load(long id) {
+        CommandEntity command = commandMapper.lambdaQuery()
+            .select(CommandEntity::getId, CommandEntity::getWatchmanId, CommandEntity::getType, CommandEntity::getContent, CommandEntity::getCreateTime)
+            .eq(CommandEntity::getId, id)
+            .isNull(CommandEntity::getAckTime)
+            .one();
+        if (command != null) {add(command);}
+    }
+
+    /**
+     * 移除
+     *
+     * @param idList 命令主键
+     */
+    public void remove(Collection<Long> idList) {
+        for (Long id : idList) {
+            if (resyncing) {removedIdSet.add(id);}
+            CommandEntity command = idMap.remove(id);
+            if (command == null) {continue;}
+            Map<Integer, ConcurrentSkipListMap<Long, CommandEntity>> typeMap = watchmanMap.get(command.getWatchmanId());
+            if (typeMap == null) {continue;}
+            ConcurrentSkipListMap<Long, CommandEntity> queue = typeMap.get(command.getType());
+            if (queue != null) {queue.remove(id);}
+        }
+    }
+
+    /**
+     * 按创建顺序查看未确认的命令
+     *
+     * @param watchmanId 调度主键
+     * @param typeList   命令类型(为空时不限类型)
+     * @param number     最大数量
+     * @return 命令集合(不移除)
+     */
+    public List<CommandEntity> peek(long watchmanId, Collection<CommandType> typeList, int number) {
+        Map<Integer, ConcurrentSkipListMap<Long, CommandEntity>> typeMap = watchmanMap.get(watchmanId);
+        if (typeMap == null) {return new ArrayList<>(0);}
+        List<CommandEntity> result = new ArrayList<>(Math.min(number, 16));
+        if (typeList == null || typeList.isEmpty()) {
+            typeMap.values().forEach(t -> head(t, number, result));
+        } else {
+            typeList.forEach(t -> {
+                ConcurrentSkipListMap<Long, CommandEntity> queue = typeMap.get(t.getValue());
+                if (queue != null) {head(queue, number, result);}
+            });
+        }
+        if (result.size() <= 1) {return result;}
+        // 多种类型时合并后按主键(创建顺序)截取
+        result.sort(Comparator.comparing(CommandEntity::getId));
+        return result.size() > number ? new ArrayList<>(result.subList(0, number)) : result;
+    }
+
+    /**
+     * 与数据库核对
+     * <p>补充缺失的命令,移除已在其他地方确认的命令,核对期间新建的命令不受影响</p>
+     *
+     * @return 未确认的命令数
+     */
+    public synchronized int resync() {
+        removedIdSet.clear();
+        resyncing = true;
+        try {
+            // 核对开始前已在内存中的命令一定已写入数据库
+            Set<Long> knownIdSet = new HashSet<>(idMap.keySet());
+            List<CommandEntity> pendingList = commandMapper.lambdaQuery()
+                .select(CommandEntity::getId, CommandEntity::getWatchmanId, CommandEntity::getType, CommandEntity::getContent, CommandEntity::getCreateTime)
+                .isNull(CommandEntity::getAckTime)
+                .list();
+            for (CommandEntity command : pendingList) {
+                knownIdSet.remove(command.getId());
+                // 查询之后已被弹出或确认的命令不再追加,追加的同时被移除的再移除一次
+                if (removedIdSet.contains(command.getId())) {continue;}
+                add(command);
+                if (removedIdSet.contains(command.getId())) {remove(Collections.singletonList(command.getId()));}
+            }
+            // 剩余的已被确认
+            remove(knownIdSet);
+            return pendingList.size();
+        } finally {
+            resyncing = false;
+            removedIdSet.clear();
+        }
+    }
+
+    /**
+     * 未确认的命令数
+     *
+     * @return 命令数
+     */
+    public int size() {
+        return idMap.size();
+    }
+
+    private static void head(ConcurrentSkipListMap<Long, CommandEntity> queue, int number, List<CommandEntity> into) {
+        int count = 0;
+        for (CommandEntity command : queue.values()) {
+            if (count++ >= number) {break;}
+            into.add(command);
+        }
+    }
+}
@@ -8,11 +8,26 @@ import java.util.concurrent.TimeUnit;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import io.shulie.takin.cloud.app.util.InfluxSpool;
+import io.shulie.takin.cloud.app.util.InfluxWriter;
 import io.shulie.takin.cloud.app.service.CallbackService;
+import io.shulie.takin.cloud.app.service.CallbackLogService;
+import io.shulie.takin.cloud.app.aggregate.MetricsAggregator;
+import io.shulie.takin.cloud.app.aggregate.PodWindowCollector;
+import io.shulie.takin.cloud.app.control.TpsController;
+import io.shulie.takin.cloud.app.command.PendingCommandIndex;
+import io.shulie.takin.cloud.app.service.PressureMetricsService;
 import io.shulie.takin.cloud.app.executor.GlobalExecutor;
 import io.shulie.takin.cloud.app.schedule.CallbackSchedule;
+import io.shulie.takin.cloud.app.callback.CallbackDispatcher;
 import io.shulie.takin.cloud.app.service.CalibrationService;
 import io.shulie.takin.cloud.app.schedule.CalibrationSchedule;
+import io.shulie.takin.cloud.app.schedule.InfluxSpoolSchedule;
+import io.shulie.takin.cloud.app.schedule.PodWindowSchedule;
+import io.shulie.takin.cloud.app.schedule.TpsControlSchedule;
+import io.shulie.takin.cloud.app.schedule.CommandIndexSchedule;
+import io.shulie.takin.cloud.app.schedule.CallbackRetentionSchedule;
+import io.shulie.takin.cloud.app.schedule.MetricsAggregateSchedule;
 
 /**
  * 调度配置
@@ -26,7 +41,25 @@ public class ScheduleConfig {
     @Resource
     private CallbackService callbackService;
     @Resource
+    private CallbackLogService callbackLogService;
+    @Resource
+    private CallbackDispatcher callbackDispatcher;
+    @Resource
     private CalibrationService calibrationService;
+    @Resource
+    private InfluxSpool influxSpool;
+    @Resource
+    private InfluxWriter influxWriter;
+    @Resource
+    private MetricsAggregator metricsAggregator;
+    @Resource
+    private PressureMetricsService pressureMetricsService;
+    @Resource
+    private PodWindowCollector podWindowCollector;
+    @Resource
+    private TpsController tpsController;
+    @Resource
+    private PendingCommandIndex pendingCommandIndex;
 
     @Value("${schedule.delay.initial:0}")
     Integer initialDelay;
@@ -34,10 +67,47 @@ public class ScheduleConfig {
     @Value("${schedule.delay.size:5000}")
     Integer delay;
 
+    @Value("${schedule.delay.spool:1000}")
+    Integer spoolDelay;
+
+    @Value("${schedule.delay.aggregate:1000}")
+    Integer aggregateDelay;
+
+    @Value("${schedule.delay.pod-window:5000}")
+    Integer podWindowDelay;
+
+    @Value("${schedule.delay.tps-control:15000}")
+    Integer tpsControlDelay;
+
+    @Value("${schedule.delay.command-index:60000}")
+    Integer commandIndexDelay;
+
+    @Value("${schedule.delay.callback-retention:60000}")
+    Integer callbackRetentionDelay;
+
+    /**
+     * 已完成的回调的保留时长(毫秒),小于等于0时不清理
+     */
+    @Value("${callback.retention.duration:604800000}")
+    Long callbackRetention;
+
+    @Value("${callback.retention.batch-size:500}")
+    Integer callbackRetentionBatchSize;
+
+    @Value("${callback.retention.max-batches:20}")
+    Integer callbackRetentionMaxBatches;
+
     @PostConstruct
     public void init() {
         TimeUnit unit = TimeUnit.MILLISECONDS;
-        globalExecutor.getExecutor().scheduleWithFixedDelay(new CallbackSchedule(callbackService), initialDelay, delay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new CallbackSchedule(callbackService, callbackDispatcher), initialDelay, delay, unit);
         globalExecutor.getExecutor().scheduleWithFixedDelay(new CalibrationSchedule(calibrationService), initialDelay, delay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new InfluxSpoolSchedule(influxSpool, influxWriter), initialDelay, spoolDelay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new MetricsAggregateSchedule(metricsAggregator, pressureMetricsService), initialDelay, aggregateDelay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new PodWindowSchedule(podWindowCollector), initialDelay, podWindowDelay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new TpsControlSchedule(tpsController), initialDelay, tpsControlDelay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new CommandIndexSchedule(pendingCommandIndex), commandIndexDelay, commandIndexDelay, unit);
+        globalExecutor.getExecutor().scheduleWithFixedDelay(new CallbackRetentionSchedule(callbackLogService,
+            callbackRetention, callbackRetentionBatchSize, callbackRetentionMaxBatches), initialDelay, callbackRetentionDelay, unit);
     }
 }
@@ -0,0 +1,299 @@
+package io.shulie.takin.cloud.app.control;
+
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.app.service.JsonService;
+import io.shulie.takin.cloud.app.service.CommandService;
+import io.shulie.takin.cloud.constant.CollectorConstants;
+import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.constant.enums.ThreadGroupType;
+import io.shulie.takin.cloud.app.service.PressureConfigService;
+import io.shulie.takin.cloud.data.entity.ThreadConfigExampleEntity;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+import io.shulie.takin.cloud.model.request.job.pressure.StartRequest.ThreadConfigInfo;
+
+/**
+ * TPS闭环控制
+ * <p>统计每个施压实例实际达到的TPS,与分配的TPS比较,按实际能力重新分配TPS和线程数</p>
+ * <p>总TPS和总线程数不变,每次只向目标值移动一部分(阻尼),每个施压任务每轮最多下发一次命令</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+@Component
+public class TpsController {
+    private static final long WINDOW_MILLIS = CollectorConstants.SEND_TIME * 1000L;
+
+    @javax.annotation.Resource
+    JsonService jsonService;
+    @javax.annotation.Resource
+    CommandService commandService;
+    @javax.annotation.Resource
+    PressureConfigService pressureConfigService;
+
+    /**
+     * 是否启用
+     * <p>需要压测引擎按线程组配置中每个施压实例的分配(examples)执行</p>
+     * <p>引擎仍按总量平均切分时实际TPS不会变化,开启后只会反复下发无效的配置,因此默认关闭</p>
+     */
+    @Value("${tps.control.enabled:false}")
+    Boolean enabled;
+    /**
+     * 阻尼系数(0-1)
+     * <p>每轮向目标分配移动的比例</p>
+     */
+    @Value("${tps.control.damping:0.5}")
+    Double damping;
+    /**
+     * 实际TPS低于分配TPS的该比例时视为达到能力上限
+     */
+    @Value("${tps.control.tolerance:0.05}")
+    Double tolerance;
+    /**
+     * 未达到上限的施压实例预估的剩余能力比例
+     */
+    @Value("${tps.control.headroom:0.2}")
+    Double headroom;
+    /**
+     * 每轮至少需要的窗口数
+     */
+    @Value("${tps.control.min-windows:3}")
+    Integer minWindows;
+
+    /**
+     * 施压任务主键 → 施压任务实例主键 → 关键词 → 本轮的统计
+     * <p>内层集合只在外层的compute中修改</p>
+     */
+    private final Map<Long, Map<Long, Map<String, Sample>>> taskMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 记录上报的指标
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param metricsList       指标数据
+     */
+    public void record(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList) {
+        if (!enabled || pressureId == null || pressureExampleId == null) {return;}
+        // 与取出本轮统计互斥,数据要么计入本轮,要么计入下一轮
+        taskMap.compute(pressureId, (k, v) -> {
+            Map<Long, Map<String, Sample>> exampleMap = v == null ? new HashMap<>(8) : v;
+            Map<String, Sample> sampleMap = exampleMap.computeIfAbsent(pressureExampleId, t -> new HashMap<>(8));
+            for (MetricsInfo metrics : metricsList) {
+                if (metrics.getTransaction() == null || metrics.getTimestamp() == null || metrics.getCount() == null) {continue;}
+                long windowTime = CollectorUtil.getTimeWindowTime(metrics.getTimestamp());
+                sampleMap.computeIfAbsent(metrics.getTransaction(), t -> new Sample()).add(windowTime, metrics.getCount());
+            }
+            return exampleMap;
+        });
+    }
+
+    /**
+     * 执行一轮控制
+     *
+     * @return 下发命令的施压任务数
+     */
+    public int control() {
+        int total = 0;
+        for (Long pressureId : taskMap.keySet()) {
+            // 取出本轮的统计,之后的数据计入下一轮
+            List<Map<Long, Map<String, Sample>>> detached = new ArrayList<>(1);
+            taskMap.computeIfPresent(pressureId, (k, v) -> {
+                detached.add(v);
+                return null;
+            });
+            if (detached.isEmpty()) {continue;}
+            Map<Long, Map<String, Sample>> exampleMap = detached.get(0);
+            try {
+                if (control(pressureId, exampleMap)) {total++;}
+            } catch (RuntimeException e) {
+                log.error("TPS-Control({}):重新分配TPS失败.\n", pressureId, e);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 控制单个施压任务
+     *
+     * @param pressureId 施压任务主键
+     * @param exampleMap 施压任务实例主键 → 关键词 → 本轮的统计
+     * @return 是否下发了命令
+     */
+    private boolean control(long pressureId, Map<Long, Map<String, Sample>> exampleMap) {
+        Map<String, List<ThreadConfigExampleEntity>> refMap = pressureConfigService.threadExampleItem(pressureId, null).stream()
+            .filter(t -> ThreadGroupType.TPS.getCode().equals(t.getType()))
+            .collect(Collectors.groupingBy(ThreadConfigExampleEntity::getRef));
+        boolean modified = false;
+        for (Map.Entry<String, List<ThreadConfigExampleEntity>> entry : refMap.entrySet()) {
+            List<ThreadConfigExampleEntity> exampleList = entry.getValue();
+            int size = exampleList.size();
+            if (size < 2) {continue;}
+            ThreadConfigInfo[] contextList = new ThreadConfigInfo[size];
+            long[] assigned = new long[size];
+            double[] measured = new double[size];
+            long number = 0;
+            boolean complete = true;
+            for (int i = 0; i < size && complete; i++) {
+                ThreadConfigExampleEntity example = exampleList.get(i);
+                contextList[i] = jsonService.readValue(example.getContext(), ThreadConfigInfo.class);
+                measured[i] = measure(exampleMap.get(example.getPressureExampleId()), entry.getKey());
+                complete = contextList[i] != null && contextList[i].getTps() != null && !Double.isNaN(measured[i]);
+                if (complete) {
+                    assigned[i] = contextList[i].getTps();
+                    number += contextList[i].getNumber() == null ? 0 : contextList[i].getNumber();
+                }
+            }
+            // 有施压实例没有数据时不调整
+            if (!complete) {continue;}
+            long[] tps = redistribute(assigned, measured, damping, tolerance, headroom);
+            if (tps == null) {continue;}
+            long[] threads = split(number, tps);
+            for (int i = 0; i < size; i++) {
+                ThreadConfigInfo context = contextList[i].setTps((int)tps[i]);
+                if (number > 0) {context.setNumber((int)threads[i]);}
+                pressureConfigService.modifThreadConfigExample(exampleList.get(i).getId(), ThreadGroupType.TPS, jsonService.writeValueAsString(context));
+            }
+            log.info("TPS-Control({}):线程组{}的TPS分配由{}调整为{}", pressureId, entry.getKey(), Arrays.toString(assigned), Arrays.toString(tps));
+            modified = true;
+        }
+        // 所有线程组合并为一条命令
+        if (modified) {commandService.updateConfig(pressureId);}
+        return modified;
+    }
+
+    /**
+     * 施压实例实际达到的TPS
+     * <p>优先取与线程组同名的关键词,否则取最大的关键词(通常为汇总)</p>
+     *
+     * @return 数据不足时返回NaN
+     */
+    private double measure(Map<String, Sample> sampleMap, String ref) {
+        if (sampleMap == null || sampleMap.isEmpty()) {return Double.NaN;}
+        Sample sample = sampleMap.get(ref);
+        if (sample == null) {
+            for (Sample item : sampleMap.values()) {
+                if (sample == null || item.count > sample.count) {sample = item;}
+            }
+        }
+        if (sample == null || sample.windows() < minWindows) {return Double.NaN;}
+        return sample.median() * 1000D / WINDOW_MILLIS;
+    }
+
+    /**
+     * 按实际能力重新分配TPS
+     * <p>达到上限的施压实例按实际TPS计算能力,其他施压实例按分配的TPS加上剩余能力计算</p>
+     *
+     * @param assigned  分配的TPS
+     * @param measured  实际达到的TPS
+     * @param damping   阻尼系数
+     * @param tolerance 达到上限的判断比例
+     * @param headroom  预估的剩余能力比例
+     * @return 新的分配(总和不变,每项至少为1)<br/>不需要调整时返回null
+     */
+    static long[] redistribute(long[] assigned, double[] measured, double damping, double tolerance, double headroom) {
+        int size = assigned.length;
+        long total = 0;
+        double capacityTotal = 0;
+        boolean saturated = false;
+        double[] capacity = new double[size];
+        for (int i = 0; i < size; i++) {
+            total += assigned[i];
+            if (measured[i] < assigned[i] * (1 - tolerance)) {
+                saturated = true;
+                capacity[i] = Math.max(measured[i], 1);
+            } else {
+                capacity[i] = Math.max(assigned[i], 1) * (1 + headroom);
+            }
+            capacityTotal += capacity[i];
+        }
+        // 都能达到分配的TPS时保持不变
+        if (!saturated || total < size) {return null;}
+        double[] target = new double[size];
+        for (int i = 0; i < size; i++) {
+            double proposed = total * capacity[i] / capacityTotal;
+            target[i] = assigned[i] + damping * (proposed - assigned[i]);
+        }
+        long[] result = round(total, target);
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {changed |= result[i] != assigned[i];}
+        return changed ? result : null;
+    }
+
+    /**
+     * 按TPS的比例切分线程数
+     */
+    static long[] split(long number, long[] tps) {
+        long total = 0;
+        for (long t : tps) {total += t;}
+        double[] target = new double[tps.length];
+        for (int i = 0; i < tps.length; i++) {target[i] = total == 0 ? 0 : number * (double)tps[i] / total;}
+        return round(number, target);
+    }
+
+    /**
+     * 取整并保持总和不变(最大余数法),总和足够时每项至少为1
+     */
+    private static long[] round(long total, double[] target) {
+        int size = target.length;
+        long minimum = total >= size ? 1 : 0;
+        long[] result = new long[size];
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            result[i] = Math.max(minimum, (long)Math.floor(target[i]));
+            sum += result[i];
+        }
+        // 多退少补,优先调整余数最大(最小)的项
+        while (sum != total) {
+            int index = -1;
+            for (int i = 0; i < size; i++) {
+                if (sum > total && result[i] <= minimum) {continue;}
+                double remainder = target[i] - result[i];
+                if (index < 0 || (sum < total ? remainder > target[index] - result[index] : remainder < target[index] - result[index])) {index = i;}
+            }
+            result[index] += sum < total ? 1 : -1;
+            sum += sum < total ? 1 : -1;
+        }
+        return result;
+    }
+
+    /**
+     * 施压实例单个关键词本轮的统计
+     */
+    private static class Sample {
+        /**
+         * 窗口时间 → 请求数
+         */
+        private final Map<Long, Long> windowMap = new HashMap<>(8);
+        private long count;
+
+        private synchronized void add(long windowTime, long count) {
+            this.count += count;
+            windowMap.merge(windowTime, count, Long::sum);
+        }
+
+        private synchronized int windows() {
+            return windowMap.size();
+        }
+
+        /**
+         * 每个窗口请求数的中位数
+         * <p>首尾窗口可能跨越两轮统计,取中位数避免被不完整的窗口拉低</p>
+         */
+        private synchronized long median() {
+            long[] values = windowMap.values().stream().mapToLong(Long::longValue).sorted().toArray();
+            return values[values.length / 2];
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package io.shulie.takin.cloud.app.controller;
 
 import java.util.Map;
+import java.util.List;
 import java.util.HashMap;
+import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 
+import com.github.pagehelper.PageInfo;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import io.shulie.takin.cloud.app.conf.WatchmanConfig;
+import io.shulie.takin.cloud.app.callback.CallbackDispatcher;
+import io.shulie.takin.cloud.data.entity.CallbackEntity;
+import io.shulie.takin.cloud.app.service.CallbackService;
 import io.shulie.takin.cloud.model.response.ApiResult;
+import io.shulie.takin.cloud.model.response.CallbackInfo;
 
 /**
  * 健康检查接口
@@ -24,6 +37,10 @@ public class CommonController {
 
     @javax.annotation.Resource
     WatchmanConfig watchmanConfig;
+    @javax.annotation.Resource
+    CallbackDispatcher callbackDispatcher;
+    @javax.annotation.Resource
+    CallbackService callbackService;
 
     @Operation(summary = "健康检查")
     @RequestMapping("health/checkup")
@@ -38,4 +55,36 @@ public class CommonController {
         result.put("version", watchmanConfig.getApplicationVersion());
         return ApiResult.success(result);
     }
+
+    @Operation(summary = "回调分发状态")
+    @RequestMapping("callback")
+    public ApiResult<Map<String, Object>> callback() {
+        return ApiResult.success(callbackDispatcher.statistics());
+    }
+
+    @Operation(summary = "回调死信列表")
+    @GetMapping("callback/dead")
+    public ApiResult<List<CallbackInfo>> callbackDead(
+        @Parameter(description = "分页页码") @RequestParam(defaultValue = "1") Integer pageNumber,
+        @Parameter(description = "分页容量") @RequestParam(defaultValue = "10") Integer pageSize) {
+        PageInfo<CallbackEntity> list = callbackService.listDead(pageNumber, pageSize);
+        List<CallbackInfo> result = list.getList().stream()
+            .map(t -> new CallbackInfo()
+                .setId(t.getId())
+                .setType(t.getType())
+                .setUrl(t.getUrl())
+                .setContent(t.getContext() == null ? null : new String(t.getContext(), StandardCharsets.UTF_8))
+                .setCreateTime(t.getCreateTime())
+                .setThresholdTime(t.getThresholdTime())
+                .setAttempts(t.getAttempts()))
+            .collect(Collectors.toList());
+        return ApiResult.success(result, list.getTotal());
+    }
+
+    @Operation(summary = "回调死信重放")
+    @PostMapping("callback/replay")
+    public ApiResult<Integer> callbackReplay(
+        @Parameter(description = "回调主键集合", required = true) @RequestBody List<Long> callbackIdList) {
+        return ApiResult.success(callbackService.replay(callbackIdList));
+    }
 }
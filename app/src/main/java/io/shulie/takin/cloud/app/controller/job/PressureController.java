@@ -1,5 +1,7 @@
 package io.shulie.takin.cloud.app.controller.job;
 
+import java.util.List;
+
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -7,11 +9,16 @@ import io.swagger.v3.oas.annotations.Parameter;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import io.shulie.takin.cloud.model.response.ApiResult;
 import io.shulie.takin.cloud.app.service.PressureService;
+import io.shulie.takin.cloud.model.response.PodCount;
+import io.shulie.takin.cloud.model.response.MetricsWindow;
+import io.shulie.takin.cloud.model.response.MetricsPercentile;
+import io.shulie.takin.cloud.app.service.PressureMetricsService;
 import io.shulie.takin.cloud.model.request.job.pressure.StartRequest;
 
 /**
@@ -25,6 +32,8 @@ import io.shulie.takin.cloud.model.request.job.pressure.StartRequest;
 public class PressureController {
     @javax.annotation.Resource
     PressureService pressureService;
+    @javax.annotation.Resource
+    PressureMetricsService pressureMetricsService;
 
     @Operation(summary = "启动")
     @PostMapping(value = "start")
@@ -38,4 +47,34 @@ public class PressureController {
         pressureService.stop(pressureId);
         return ApiResult.success();
     }
+
+    @Operation(summary = "集群维度的实时指标")
+    @GetMapping("metrics/realtime")
+    public ApiResult<List<MetricsWindow>> metricsRealtime(
+        @Parameter(description = "任务主键", required = true) @RequestParam Long pressureId,
+        @Parameter(description = "关键词") @RequestParam(required = false) String transaction,
+        @Parameter(description = "最近的窗口数") @RequestParam(required = false, defaultValue = "12") Integer size) {
+        return ApiResult.success(pressureMetricsService.realtime(pressureId, transaction, size));
+    }
+
+    @Operation(summary = "集群维度的响应时间分位值")
+    @GetMapping("metrics/percentile")
+    public ApiResult<MetricsPercentile> metricsPercentile(
+        @Parameter(description = "任务主键", required = true) @RequestParam Long pressureId,
+        @Parameter(description = "关键词") @RequestParam(required = false) String transaction,
+        @Parameter(description = "开始时间", required = true) @RequestParam Long startTime,
+        @Parameter(description = "结束时间") @RequestParam(required = false) Long endTime) {
+        long end = endTime == null ? System.currentTimeMillis() : endTime;
+        return ApiResult.success(pressureMetricsService.percentile(pressureId, transaction, startTime, end));
+    }
+
+    @Operation(summary = "每个时间窗口的施压实例数")
+    @GetMapping("metrics/pods")
+    public ApiResult<List<PodCount>> metricsPods(
+        @Parameter(description = "任务主键", required = true) @RequestParam Long pressureId,
+        @Parameter(description = "开始时间", required = true) @RequestParam Long startTime,
+        @Parameter(description = "结束时间") @RequestParam(required = false) Long endTime) {
+        long end = endTime == null ? System.currentTimeMillis() : endTime;
+        return ApiResult.success(pressureMetricsService.podCount(pressureId, startTime, end));
+    }
 }
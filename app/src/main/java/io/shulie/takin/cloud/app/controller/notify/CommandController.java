@@ -1,33 +1,36 @@
 package io.shulie.takin.cloud.app.controller.notify;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
-import cn.hutool.core.date.DateUtil;
-import com.github.pagehelper.PageInfo;
 import cn.hutool.core.text.CharSequenceUtil;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import io.shulie.takin.cloud.constant.Message;
-import io.shulie.takin.cloud.app.service.JsonService;
-import io.shulie.takin.cloud.data.entity.CommandEntity;
 import io.shulie.takin.cloud.model.response.ApiResult;
+import io.shulie.takin.cloud.model.request.command.AckRequest;
+import io.shulie.takin.cloud.model.response.command.CommandItem;
 import io.shulie.takin.cloud.data.entity.WatchmanEntity;
 import io.shulie.takin.cloud.constant.enums.CommandType;
 import io.shulie.takin.cloud.app.service.CommandService;
 import io.shulie.takin.cloud.app.service.WatchmanService;
+import io.shulie.takin.cloud.app.command.CommandNotifier;
 
 /**
  * 命令
@@ -39,12 +42,18 @@ import io.shulie.takin.cloud.app.service.WatchmanService;
 @RequestMapping("/notify/command")
 @RestController("NotiftCommandController")
 public class CommandController {
-    @javax.annotation.Resource
-    JsonService jsonService;
     @javax.annotation.Resource
     CommandService commandService;
     @javax.annotation.Resource
     WatchmanService watchmanService;
+    @javax.annotation.Resource
+    CommandNotifier commandNotifier;
+
+    /**
+     * 批量弹出的最大数量
+     */
+    @Value("${command.pop.max-batch-size:100}")
+    Integer maxBatchSize;
 
     @PostMapping("ack")
     @Operation(summary = "指令确认")
@@ -53,28 +62,58 @@ public class CommandController {
         return ApiResult.success(commandService.ack(id, "callback", content));
     }
 
+    @PostMapping("ack/batch")
+    @Operation(summary = "指令确认-批量")
+    public ApiResult<Object> ackBatch(@Parameter(description = "指令确认内容", required = true) @RequestBody List<AckRequest> content) {
+        Map<Long, String> messageMap = new LinkedHashMap<>(content.size() * 2);
+        content.stream().filter(t -> t.getId() != null).forEach(t -> messageMap.put(t.getId(), t.getContent()));
+        return ApiResult.success(commandService.ack(messageMap, "callback"));
+    }
+
     @GetMapping("pop")
     @Operation(summary = "弹出一条命令")
     public ApiResult<Object> ack(@Parameter(description = "签名", required = true) @RequestParam String sign,
         @Parameter(description = "命令类型", required = true) @RequestParam Integer type) {
-        // 兑换命令类型
-        CommandType commandType = CommandType.of(type);
-        if (commandType == null) {throw new IllegalArgumentException(CharSequenceUtil.format(Message.UNKOWN_COMMAND_TYPE, type));}
+        CommandType commandType = commandType(type);
         WatchmanEntity entity = watchmanService.ofSign(sign);
-        PageInfo<CommandEntity> range = commandService.range(entity.getId(), 1, commandType);
         // 没有命令则返回 null
-        if (range.getSize() == 0) {return ApiResult.success();}
-        // 有命令则返回命令内容
-        CommandEntity commandEntity = range.getList().get(0);
-        // pop模式要自动完成
-        commandService.ack(commandEntity.getId(), "pop", DateUtil.now() + "(pop-ack)");
-        Object content = jsonService.readValue(commandEntity.getContent(), Object.class);
-        // 返回命令内容
-        Map<String, Object> result = new HashMap<>(4);
-        result.put("content", content);
-        result.put("id", commandEntity.getId());
-        result.put("type", commandEntity.getType());
-        result.put("createTime", commandEntity.getCreateTime().getTime());
+        return ApiResult.success(commandService.pop(entity.getId(), commandType));
+    }
+
+    @GetMapping("pop/wait")
+    @Operation(summary = "弹出一条命令-长轮询", description = "没有命令时挂起请求,直到有新命令或超时(超时返回null)")
+    public DeferredResult<ApiResult<Object>> popWait(@Parameter(description = "签名", required = true) @RequestParam String sign,
+        @Parameter(description = "命令类型", required = true) @RequestParam Integer type,
+        @Parameter(description = "挂起时长(毫秒)") @RequestParam(required = false) Long timeout) {
+        CommandType commandType = commandType(type);
+        WatchmanEntity entity = watchmanService.ofSign(sign);
+        long watchmanId = entity.getId();
+        return commandNotifier.await(watchmanId, commandType, timeout, () -> commandService.pop(watchmanId, commandType));
+    }
+
+    @GetMapping("pop/batch")
+    @Operation(summary = "弹出命令-批量", description = "按创建顺序弹出多种类型的命令,自动确认")
+    public ApiResult<List<CommandItem>> popBatch(@Parameter(description = "签名", required = true) @RequestParam String sign,
+        @Parameter(description = "命令类型(为空时不限类型)") @RequestParam(required = false) List<Integer> type,
+        @Parameter(description = "最大数量") @RequestParam(defaultValue = "10") Integer number) {
+        List<CommandType> typeList = type == null ? null : type.stream().map(CommandController::commandType).collect(Collectors.toList());
+        WatchmanEntity entity = watchmanService.ofSign(sign);
+        List<CommandItem> result = commandService.pop(entity.getId(), typeList, Math.min(number, maxBatchSize)).stream()
+            .map(t -> new CommandItem()
+                .setId(t.getId())
+                .setType(t.getType())
+                .setContent(t.getContent())
+                .setCreateTime(t.getCreateTime().getTime()))
+            .collect(Collectors.toList());
         return ApiResult.success(result);
     }
+
+    /**
+     * 兑换命令类型
+     */
+    private static CommandType commandType(Integer type) {
+        CommandType commandType = CommandType.of(type);
+        if (commandType == null) {throw new IllegalArgumentException(CharSequenceUtil.format(Message.UNKOWN_COMMAND_TYPE, type));}
+        return commandType;
+    }
 }
@@ -1,32 +1,38 @@
 package io.shulie.takin.cloud.app.controller.notify;
 
+import java.util.Map;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import cn.hutool.extra.servlet.ServletUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 
 import io.shulie.takin.cloud.constant.Message;
+import io.shulie.takin.cloud.constant.MetricsFormatConstants;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import io.shulie.takin.cloud.data.entity.PressureEntity;
+import io.shulie.takin.cloud.app.pipeline.MetricsPipeline;
 import io.shulie.takin.cloud.app.service.PressureService;
 import io.shulie.takin.cloud.model.response.ApiResult;
 import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
-import io.shulie.takin.cloud.app.service.PressureMetricsService;
 import io.shulie.takin.cloud.data.entity.PressureExampleEntity;
 
 /**
@@ -42,24 +48,23 @@ public class PressureMetricsController {
     @javax.annotation.Resource
     PressureService pressureService;
     @javax.annotation.Resource
-    PressureMetricsService pressureMetricsService;
+    MetricsPipeline metricsPipeline;
 
     @PostMapping("upload")
     @Operation(summary = "聚合上报")
     public ApiResult<Object> upload(
         @Parameter(description = "任务主键", required = true) @RequestParam Long pressureId,
         @Parameter(description = "任务实例主键", required = true) @RequestParam Long pressureExampleId,
-        @Parameter(description = "聚合的指标数据", required = true) @RequestBody List<MetricsInfo> data,
-        HttpServletRequest request) {
-        List<MetricsInfo> filterData = data.stream().filter(t -> "response".equals(t.getType())).collect(Collectors.toList());
-        if (!filterData.isEmpty()) {
-            try {
-                pressureMetricsService.upload(pressureId, pressureExampleId, filterData, ServletUtil.getClientIP(request));
-            }catch (Throwable e){
-                log.error("upload report data error,{}-{}",pressureId,pressureExampleId);
-                log.error("upload report data error,data is {}",data);
-                throw e;
-            }
+        @Parameter(description = "聚合的指标数据(JSON数组或二进制格式,可gzip压缩)", required = true) @RequestBody byte[] data,
+        @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+        @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+        HttpServletRequest request, HttpServletResponse response) {
+        // 根据Content-Type和Content-Encoding确定格式,默认为未压缩的JSON
+        boolean binary = CharSequenceUtil.startWithIgnoreCase(contentType, MetricsFormatConstants.CONTENT_TYPE_BINARY);
+        boolean gzip = MetricsFormatConstants.CONTENT_ENCODING_GZIP.equalsIgnoreCase(CharSequenceUtil.trim(contentEncoding));
+        // 放入处理管道后立即返回
+        if (!metricsPipeline.publish(pressureId, pressureExampleId, data, binary, gzip, ServletUtil.getClientIP(request))) {
+            return busy(response);
         }
         return ApiResult.success();
     }
@@ -70,7 +75,7 @@ public class PressureMetricsController {
         @Parameter(description = "任务主键-新版本") @RequestParam(required = false) Long pressureId,
         @Parameter(description = "聚合的指标数据", required = true) @RequestBody List<MetricsInfo> data,
         @Parameter(description = "任务主键-旧版本", deprecated = true) @RequestParam(required = false) Long jobId,
-        HttpServletRequest request) {
+        HttpServletRequest request, HttpServletResponse response) {
         if (data.isEmpty()) {return ApiResult.fail(Message.EMPTY_METRICS_LIST);}
         // 兼容老版本
         if (Objects.isNull(pressureId) && Objects.nonNull(jobId)) {pressureId = jobId;}
@@ -84,7 +89,29 @@ public class PressureMetricsController {
             log.warn("未找到任务:{}对应,实例编号:{}对应的任务实例", pressureId, pressureExampleNumberString);
             return ApiResult.fail(Message.MISS_RESOURCE_EXAMPLE);
         }
-        // 执行暨定方法
-        return upload(pressureId, pressureExampleEntity.getId(), data, request);
+        // 放入处理管道
+        if (!metricsPipeline.publish(pressureId, pressureExampleEntity.getId(), data, ServletUtil.getClientIP(request))) {
+            return busy(response);
+        }
+        return ApiResult.success();
+    }
+
+    @GetMapping("pipeline")
+    @Operation(summary = "处理管道状态")
+    public ApiResult<Map<String, Object>> pipeline() {
+        return ApiResult.success(metricsPipeline.statistics());
+    }
+
+    /**
+     * 处理管道已满
+     * <p>响应429,并告知客户端重试间隔</p>
+     *
+     * @param response HTTP响应
+     * @return -
+     */
+    private ApiResult<Object> busy(HttpServletResponse response) {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(metricsPipeline.getRetryAfter()));
+        return ApiResult.fail(Message.METRICS_PIPELINE_BUSY);
     }
 }
@@ -0,0 +1,110 @@
+package io.shulie.takin.cloud.app.pipeline;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import lombok.Data;
+
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 指标上报 - 环形缓冲区槽位
+ * <p>槽位对象循环复用,每次认领后由生产者重新填充</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+public class MetricsEvent {
+    /**
+     * 行协议缓冲区超过该长度时不再复用
+     */
+    private static final int MAX_RETAINED_LINES = 1 << 20;
+    /**
+     * 施压任务主键
+     */
+    private Long pressureId;
+    /**
+     * 施压任务实例主键
+     */
+    private Long pressureExampleId;
+    /**
+     * 请求IP
+     */
+    private String ip;
+    /**
+     * 原始请求体
+     * <p>由解析阶段转换为指标数据</p>
+     */
+    private byte[] body;
+    /**
+     * 请求体是否为二进制格式
+     */
+    private boolean binary;
+    /**
+     * 请求体是否经过gzip压缩
+     */
+    private boolean gzip;
+    /**
+     * 指标数据
+     */
+    private List<MetricsInfo> data;
+    /**
+     * 解码用的对象池
+     * <p>随槽位复用,只在数据条数超过历史最大值时扩充</p>
+     */
+    private final List<MetricsInfo> pool = new ArrayList<>();
+    /**
+     * 解码结果
+     */
+    private final List<MetricsInfo> decoded = new ArrayList<>();
+    /**
+     * 编码后的行协议
+     */
+    private StringBuilder lines = new StringBuilder();
+    /**
+     * 时间窗口
+     */
+    private long windowTime;
+    /**
+     * 入队时间(纳秒)
+     */
+    private long publishNanos;
+
+    /**
+     * 重新填充槽位
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param body              原始请求体
+     * @param binary            请求体是否为二进制格式
+     * @param gzip              请求体是否经过gzip压缩
+     * @param data              已解析的指标数据
+     * @param ip                请求IP
+     */
+    public void fill(Long pressureId, Long pressureExampleId, byte[] body, boolean binary, boolean gzip, List<MetricsInfo> data, String ip) {
+        this.ip = ip;
+        this.body = body;
+        this.gzip = gzip;
+        this.binary = binary;
+        this.data = data;
+        this.windowTime = 0;
+        this.decoded.clear();
+        if (this.lines.capacity() > MAX_RETAINED_LINES) {
+            this.lines = new StringBuilder();
+        } else {
+            this.lines.setLength(0);
+        }
+        this.pressureId = pressureId;
+        this.pressureExampleId = pressureExampleId;
+        this.publishNanos = System.nanoTime();
+    }
+
+    /**
+     * 是否有需要处理的数据
+     *
+     * @return true/false
+     */
+    public boolean isEmpty() {
+        return data == null || data.isEmpty();
+    }
+}
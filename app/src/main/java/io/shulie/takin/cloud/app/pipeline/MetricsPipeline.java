@@ -0,0 +1,298 @@
+package io.shulie.takin.cloud.app.pipeline;
+
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.FilterInputStream;
+import java.util.zip.GZIPInputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.PostConstruct;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.app.util.InfluxUtil;
+import io.shulie.takin.cloud.app.util.InfluxSpool;
+import io.shulie.takin.cloud.app.util.InfluxLineWriter;
+import io.shulie.takin.cloud.app.util.MetricsCodec;
+import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.app.util.MetricsDecoder;
+import io.shulie.takin.cloud.app.service.PressureMetricsService;
+import io.shulie.takin.cloud.app.control.TpsController;
+import io.shulie.takin.cloud.app.aggregate.MetricsAggregator;
+import io.shulie.takin.cloud.app.service.PressureExampleService;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 指标上报的分阶段处理管道
+ * <p>解析 → 规整 → 分发(InfluxDB / 集群聚合 / SLA / 心跳)</p>
+ * <p>请求线程只负责把请求体放入环形缓冲区,缓冲区满时由调用方拒绝请求</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "METRICS")
+@Component
+public class MetricsPipeline {
+    @javax.annotation.Resource
+    PressureMetricsService pressureMetricsService;
+    @javax.annotation.Resource
+    PressureExampleService pressureExampleService;
+    @javax.annotation.Resource
+    InfluxLineWriter influxLineWriter;
+    @javax.annotation.Resource
+    InfluxSpool influxSpool;
+    @javax.annotation.Resource
+    MetricsAggregator metricsAggregator;
+    @javax.annotation.Resource
+    TpsController tpsController;
+
+    /**
+     * 环形缓冲区容量(2的幂)
+     */
+    @Value("${metrics.pipeline.buffer-size:4096}")
+    Integer bufferSize;
+    /**
+     * 处理阶段空闲时的休眠时长(微秒)
+     */
+    @Value("${metrics.pipeline.idle-micros:200}")
+    Long idleMicros;
+    /**
+     * 缓冲区满时建议客户端重试的间隔(秒)
+     */
+    @Getter
+    @Value("${metrics.pipeline.retry-after:1}")
+    Integer retryAfter;
+    /**
+     * gzip请求体解压后的最大字节数
+     */
+    @Value("${metrics.pipeline.max-inflated-size:67108864}")
+    Long maxInflatedSize;
+
+    private RingBuffer<MetricsEvent> ringBuffer;
+    private List<PipelineStage<MetricsEvent>> stageList;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        long idleNanos = TimeUnit.MICROSECONDS.toNanos(idleMicros);
+        ringBuffer = new RingBuffer<>(bufferSize, MetricsEvent::new);
+        // 解析 → 规整(各阶段统计从发布开始的延时,包含排队时间)
+        PipelineStage<MetricsEvent> parse = new PipelineStage<>("parse", ringBuffer, this::parse, idleNanos)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        PipelineStage<MetricsEvent> enrich = new PipelineStage<>("enrich", ringBuffer, this::enrich, idleNanos, parse)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        // 分发
+        PipelineStage<MetricsEvent> influx = new PipelineStage<>("influx", ringBuffer, this::sinkInflux, idleNanos, enrich)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        PipelineStage<MetricsEvent> aggregate = new PipelineStage<>("aggregate", ringBuffer, this::sinkAggregate, idleNanos, enrich)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        PipelineStage<MetricsEvent> sla = new PipelineStage<>("sla", ringBuffer, this::sinkSla, idleNanos, enrich)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        PipelineStage<MetricsEvent> heartbeat = new PipelineStage<>("heartbeat", ringBuffer, this::sinkHeartbeat, idleNanos, enrich)
+            .delayFrom(MetricsEvent::getPublishNanos);
+        ringBuffer.gatingBy(influx.getCursor(), aggregate.getCursor(), sla.getCursor(), heartbeat.getCursor());
+        stageList = Arrays.asList(parse, enrich, influx, aggregate, sla, heartbeat);
+        executor = Executors.newFixedThreadPool(stageList.size(), new NamedThreadFactory("MetricsPipeline-", false));
+        stageList.forEach(executor::execute);
+    }
+
+    /**
+     * 放入管道 - 原始请求体
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param body              原始请求体
+     * @param binary            是否为二进制格式(否则为JSON数组)
+     * @param gzip              是否经过gzip压缩
+     * @param ip                请求IP
+     * @return false - 缓冲区已满
+     */
+    public boolean publish(Long pressureId, Long pressureExampleId, byte[] body, boolean binary, boolean gzip, String ip) {
+        return publish(pressureId, pressureExampleId, body, binary, gzip, null, ip);
+    }
+
+    /**
+     * 放入管道 - 已解析的指标数据
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param data              指标数据
+     * @param ip                请求IP
+     * @return false - 缓冲区已满
+     */
+    public boolean publish(Long pressureId, Long pressureExampleId, List<MetricsInfo> data, String ip) {
+        return publish(pressureId, pressureExampleId, null, false, false, data, ip);
+    }
+
+    private boolean publish(Long pressureId, Long pressureExampleId, byte[] body, boolean binary, boolean gzip, List<MetricsInfo> data, String ip) {
+        long sequence = ringBuffer.tryNext();
+        if (sequence < 0) {
+            log.warn("Metrics-Upload({}-{}):处理管道已满,拒绝本次上报.", pressureId, pressureExampleId);
+            return false;
+        }
+        ringBuffer.get(sequence).fill(pressureId, pressureExampleId, body, binary, gzip, data, ip);
+        ringBuffer.publish(sequence);
+        return true;
+    }
+
+    /**
+     * 解析阶段
+     * <p>解压并流式解码请求体,只保留响应数据,同时完成规整和行协议编码</p>
+     */
+    private void parse(MetricsEvent event) {
+        String measurement = InfluxUtil.getMetricsMeasurement(event.getPressureId());
+        if (event.getBody() != null) {
+            byte[] body = event.getBody();
+            event.setBody(null);
+            event.setData(event.getDecoded());
+            try (InputStream in = event.isGzip()
+                ? new BufferedInputStream(new BoundedInputStream(new GZIPInputStream(new ByteArrayInputStream(body)), maxInflatedSize))
+                : new ByteArrayInputStream(body)) {
+                MetricsDecoder.decode(in, event.isBinary(), measurement, event.getPool(), event.getDecoded(), event.getLines());
+            } catch (IOException | RuntimeException e) {
+                // 丢弃本次上报,不保留解码了一半的数据
+                event.getDecoded().clear();
+                event.getLines().setLength(0);
+                throw new IllegalArgumentException("解析metrics数据异常,数据格式不正确", e);
+            }
+        } else if (event.getData() != null) {
+            List<MetricsInfo> data = event.getData();
+            data.removeIf(t -> t == null || t.getTimestamp() == null || !"response".equals(t.getType()));
+            MetricsCodec.encode(event.getLines(), measurement, data, true);
+        }
+    }
+
+    /**
+     * 规整阶段
+     * <p>计算时间窗口</p>
+     */
+    private void enrich(MetricsEvent event) {
+        if (event.isEmpty()) {return;}
+        List<MetricsInfo> data = event.getData();
+        long timestamp = data.get(0).getTimestamp();
+        log.info("Metrics-Upload({}-{}): 接收到的数据:{}条,时间范围:{},延时:{}", event.getPressureId(), event.getPressureExampleId(),
+            data.size(), timestamp, (System.currentTimeMillis() - timestamp));
+        event.setWindowTime(CollectorUtil.getTimeWindowTime(timestamp));
+    }
+
+    /**
+     * 分发 - InfluxDB
+     */
+    private void sinkInflux(MetricsEvent event) {
+        if (event.isEmpty()) {return;}
+        pressureMetricsService.writeInfluxdb(InfluxUtil.getMetricsMeasurement(event.getPressureId()), event.getLines());
+    }
+
+    /**
+     * 分发 - 集群维度聚合和每个施压实例的TPS统计
+     */
+    private void sinkAggregate(MetricsEvent event) {
+        if (event.isEmpty()) {return;}
+        metricsAggregator.merge(event.getPressureId(), event.getData());
+        tpsController.record(event.getPressureId(), event.getPressureExampleId(), event.getData());
+    }
+
+    /**
+     * 分发 - SLA
+     */
+    private void sinkSla(MetricsEvent event) {
+        if (event.isEmpty()) {return;}
+        pressureMetricsService.checkSla(event.getPressureId(), event.getPressureExampleId(), event.getData());
+    }
+
+    /**
+     * 分发 - 心跳和IP统计
+     */
+    private void sinkHeartbeat(MetricsEvent event) {
+        if (event.isEmpty()) {return;}
+        pressureExampleService.onHeartbeat(event.getPressureExampleId());
+        pressureMetricsService.statisticalIp(event.getPressureId(), event.getWindowTime(), event.getIp());
+    }
+
+    /**
+     * 管道状态
+     *
+     * @return 队列深度和各阶段的耗时
+     */
+    public Map<String, Object> statistics() {
+        Map<String, Object> stages = new LinkedHashMap<>(stageList.size());
+        stageList.forEach(t -> stages.put(t.getName(), t.statistics()));
+        Map<String, Object> result = new HashMap<>(6);
+        result.put("capacity", ringBuffer.capacity());
+        result.put("depth", ringBuffer.backlog());
+        result.put("stages", stages);
+        result.put("influx", influxLineWriter.statistics());
+        result.put("spool", influxSpool.statistics());
+        result.put("aggregate", metricsAggregator.statistics());
+        return result;
+    }
+
+    /**
+     * 停止时处理完已入队的数据
+     */
+    @PreDestroy
+    public void destroy() {
+        stageList.forEach(PipelineStage::halt);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("指标处理管道未能在限定时间内处理完积压数据:{}条", ringBuffer.backlog());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 限制读取字节数的输入流
+     * <p>超出限制时抛出异常,避免压缩炸弹</p>
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {consume(1);}
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {consume(read);}
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {consume(skipped);}
+            return skipped;
+        }
+
+        private void consume(long length) throws IOException {
+            remaining -= length;
+            if (remaining < 0) {throw new IOException("解压后的数据超出限制");}
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.shulie.takin.cloud.app.pipeline;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 环形缓冲区的处理阶段
+ * <p>独占一个线程,按序号处理上游阶段(或生产者)已完成的槽位</p>
+ *
+ * @param <E> 槽位类型
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "METRICS")
+public class PipelineStage<E> implements Runnable {
+    /**
+     * 阶段名称
+     */
+    @Getter
+    private final String name;
+    /**
+     * 环形缓冲区
+     */
+    private final RingBuffer<E> ringBuffer;
+    /**
+     * 上游阶段
+     * <p>为空时直接消费生产者发布的槽位</p>
+     */
+    private final PipelineStage<?>[] upstream;
+    /**
+     * 处理逻辑
+     */
+    private final Consumer<E> handler;
+    /**
+     * 空闲时的休眠时长(纳秒)
+     */
+    private final long idleNanos;
+    /**
+     * 当前阶段已处理完的序号
+     */
+    @Getter
+    private final AtomicLong cursor = new AtomicLong(-1);
+    /**
+     * 处理计数
+     */
+    private final LongAdder processed = new LongAdder();
+    /**
+     * 异常计数
+     */
+    private final LongAdder failed = new LongAdder();
+    /**
+     * 累计处理耗时(纳秒)
+     */
+    private final LongAdder totalNanos = new LongAdder();
+    /**
+     * 最大处理耗时(纳秒)
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+    /**
+     * 槽位的发布时间(纳秒)
+     * <p>为空时不统计排队延时</p>
+     */
+    private ToLongFunction<E> publishNanos;
+    /**
+     * 累计延时(纳秒,从发布到本阶段处理完成,包含在环形缓冲区中等待的时间)
+     */
+    private final LongAdder delayNanos = new LongAdder();
+    /**
+     * 最大延时(纳秒)
+     */
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile boolean terminated = false;
+
+    public PipelineStage(String name, RingBuffer<E> ringBuffer, Consumer<E> handler, long idleNanos, PipelineStage<?>... upstream) {
+        this.name = name;
+        this.handler = handler;
+        this.idleNanos = idleNanos;
+        this.ringBuffer = ringBuffer;
+        this.upstream = upstream;
+    }
+
+    /**
+     * 统计从发布到本阶段处理完成的延时
+     *
+     * @param publishNanos 槽位的发布时间(纳秒)
+     * @return 当前阶段
+     */
+    public PipelineStage<E> delayFrom(ToLongFunction<E> publishNanos) {
+        this.publishNanos = publishNanos;
+        return this;
+    }
+
+    @Override
+    public void run() {
+        long next = cursor.get() + 1;
+        while (true) {
+            long available = available(next);
+            if (available < next) {
+                // 停止时,等上游处理完并且积压的槽位也处理完再退出
+                if (!running && upstreamTerminated() && available(next) < next) {break;}
+                LockSupport.parkNanos(idleNanos);
+                continue;
+            }
+            for (long sequence = next; sequence <= available; sequence++) {
+                handle(ringBuffer.get(sequence));
+                cursor.lazySet(sequence);
+            }
+            next = available + 1;
+        }
+        terminated = true;
+    }
+
+    /**
+     * 上游阶段是否都已退出
+     *
+     * @return true/false
+     */
+    private boolean upstreamTerminated() {
+        for (PipelineStage<?> stage : upstream) {
+            if (!stage.terminated) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * 处理单个槽位
+     *
+     * @param event 槽位
+     */
+    private void handle(E event) {
+        long start = System.nanoTime();
+        try {
+            handler.accept(event);
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("指标处理阶段[{}]异常.\n", name, e);
+        } finally {
+            long end = System.nanoTime();
+            long cost = end - start;
+            processed.increment();
+            totalNanos.add(cost);
+            maxNanos.accumulateAndGet(cost, Math::max);
+            if (publishNanos != null) {
+                long delay = end - publishNanos.applyAsLong(event);
+                delayNanos.add(delay);
+                maxDelayNanos.accumulateAndGet(delay, Math::max);
+            }
+        }
+    }
+
+    /**
+     * 可以处理到的最大序号
+     *
+     * @param next 下一个要处理的序号
+     * @return 最大序号
+     */
+    private long available(long next) {
+        if (upstream.length == 0) {return ringBuffer.highestPublished(next);}
+        long minimum = Long.MAX_VALUE;
+        for (PipelineStage<?> stage : upstream) {
+            minimum = Math.min(minimum, stage.cursor.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * 停止处理
+     * <p>已发布的槽位处理完后线程退出</p>
+     */
+    public void halt() {
+        running = false;
+    }
+
+    /**
+     * 统计信息
+     *
+     * @return 处理数、异常数、平均/最大耗时(微秒)、平均/最大延时(微秒)
+     */
+    public Map<String, Object> statistics() {
+        long count = processed.sum();
+        Map<String, Object> result = new HashMap<>(8);
+        result.put("processed", count);
+        result.put("failed", failed.sum());
+        result.put("cursor", cursor.get());
+        result.put("avgMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / count));
+        result.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        if (publishNanos != null) {
+            result.put("avgDelayMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(delayNanos.sum() / count));
+            result.put("maxDelayMicros", TimeUnit.NANOSECONDS.toMicros(maxDelayNanos.get()));
+        }
+        return result;
+    }
+}
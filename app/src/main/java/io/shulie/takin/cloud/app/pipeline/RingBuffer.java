@@ -0,0 +1,146 @@
+package io.shulie.takin.cloud.app.pipeline;
+
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 预分配的环形缓冲区
+ * <p>多生产者认领槽位、填充后发布;多个处理阶段按序号依次消费</p>
+ * <p>槽位对象在创建时一次性分配,之后循环复用</p>
+ *
+ * @param <E> 槽位类型
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public class RingBuffer<E> {
+    /**
+     * 序号到下标的掩码
+     */
+    private final int mask;
+    /**
+     * 槽位
+     */
+    private final Object[] entries;
+    /**
+     * 每个槽位已发布的序号
+     */
+    private final AtomicLongArray published;
+    /**
+     * 已被生产者认领的最大序号
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+    /**
+     * 末端处理阶段的游标
+     * <p>生产者不能越过最慢的末端阶段一整圈</p>
+     */
+    private volatile AtomicLong[] gating = new AtomicLong[0];
+
+    /**
+     * 构造函数
+     *
+     * @param size    容量(2的幂)
+     * @param factory 槽位工厂
+     */
+    public RingBuffer(int size, Supplier<E> factory) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("环形缓冲区的容量必须是2的幂:" + size);
+        }
+        this.mask = size - 1;
+        this.entries = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = factory.get();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * 设置末端处理阶段的游标
+     *
+     * @param sequences 游标
+     */
+    public void gatingBy(AtomicLong... sequences) {
+        this.gating = sequences.clone();
+    }
+
+    /**
+     * 尝试认领下一个槽位
+     *
+     * @return 认领到的序号<br/>缓冲区已满时返回-1
+     */
+    public long tryNext() {
+        long current;
+        long next;
+        do {
+            current = claimed.get();
+            next = current + 1;
+            if (next - entries.length > minimumGating()) {return -1L;}
+        } while (!claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    /**
+     * 获取序号对应的槽位
+     *
+     * @param sequence 序号
+     * @return 槽位
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E)entries[(int)(sequence & mask)];
+    }
+
+    /**
+     * 发布槽位
+     *
+     * @param sequence 认领到的序号
+     */
+    public void publish(long sequence) {
+        published.set((int)(sequence & mask), sequence);
+    }
+
+    /**
+     * 获取从指定序号开始连续发布的最大序号
+     *
+     * @param from 起始序号
+     * @return 最大的连续已发布序号<br/>起始序号未发布时返回 from - 1
+     */
+    public long highestPublished(long from) {
+        long available = claimed.get();
+        for (long sequence = from; sequence <= available; sequence++) {
+            if (published.get((int)(sequence & mask)) != sequence) {return sequence - 1;}
+        }
+        return available;
+    }
+
+    /**
+     * 最慢的末端阶段游标
+     *
+     * @return 游标
+     */
+    public long minimumGating() {
+        long minimum = claimed.get();
+        for (AtomicLong sequence : gating) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * 积压的槽位数
+     *
+     * @return 已认领但末端阶段还未处理完的槽位数
+     */
+    public long backlog() {
+        return claimed.get() - minimumGating();
+    }
+
+    /**
+     * 容量
+     *
+     * @return 槽位总数
+     */
+    public int capacity() {
+        return entries.length;
+    }
+}
@@ -0,0 +1,56 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import java.util.Date;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.service.CallbackLogService;
+
+/**
+ * 回调保留期限
+ * <p>分批删除超过保留期限的已完成(或已被取代)的回调及其日志,单次运行的批数有上限,不会长时间占用数据库</p>
+ * <p>死信和未完成的回调不会被删除</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "CALLBACK")
+public class CallbackRetentionSchedule implements Runnable {
+
+    private final CallbackLogService callbackLogService;
+    /**
+     * 保留时长(毫秒)
+     */
+    private final long retention;
+    /**
+     * 每批数量
+     */
+    private final int batchSize;
+    /**
+     * 单次运行的最大批数
+     */
+    private final int maxBatches;
+
+    public CallbackRetentionSchedule(CallbackLogService callbackLogService, long retention, int batchSize, int maxBatches) {
+        this.callbackLogService = callbackLogService;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Override
+    public void run() {
+        if (retention <= 0) {return;}
+        try {
+            Date before = new Date(System.currentTimeMillis() - retention);
+            int total = 0;
+            for (int i = 0; i < maxBatches; i++) {
+                int count = callbackLogService.purge(before, batchSize);
+                total += count;
+                if (count < batchSize) {break;}
+            }
+            if (total > 0) {log.info("清理了{}条过期的回调", total);}
+        } catch (RuntimeException e) {
+            log.error("清理过期的回调异常\n", e);
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package io.shulie.takin.cloud.app.schedule;
 
-import lombok.extern.slf4j.Slf4j;
+import java.util.List;
 
-import com.github.pagehelper.PageInfo;
+import lombok.extern.slf4j.Slf4j;
 
 import io.shulie.takin.cloud.data.entity.CallbackEntity;
+import io.shulie.takin.cloud.app.callback.CallbackDispatcher;
 import io.shulie.takin.cloud.app.service.CallbackService;
 
 /**
  * 回调通知
+ * <p>新建的回调已直接放入分发队列,这里只补发未完成的回调(重试、队列已满、服务重启)</p>
+ * <p>回调通过租约认领,多个节点同时运行时每个回调只由一个节点发送</p>
  *
  * @author chenhongqiao@shulie.com
  */
@@ -16,24 +19,21 @@ import io.shulie.takin.cloud.app.service.CallbackService;
 public class CallbackSchedule implements Runnable {
 
     private final CallbackService callbackService;
+    private final CallbackDispatcher callbackDispatcher;
 
-    public CallbackSchedule(CallbackService callbackService) {
+    public CallbackSchedule(CallbackService callbackService, CallbackDispatcher callbackDispatcher) {
         this.callbackService = callbackService;
+        this.callbackDispatcher = callbackDispatcher;
     }
 
     @Override
     public void run() {
         try {
-            PageInfo<CallbackEntity> ready = callbackService.listNotCompleted(1, 100);
-            log.info("开始调度.共{}条,本次计划调度{}条", ready.getTotal(), ready.getSize());
-            ready.getList().forEach(t -> {
-                try {
-                    callbackService.callback(t.getId(), t.getUrl(), t.getType(), t.getContext());
-                    log.info("回调定时器调度了一条:{}", t.getId());
-                } catch (RuntimeException e) {
-                    log.error("调度异常\n", e);
-                }
-            });
+            List<CallbackEntity> ready = callbackService.claim();
+            if (ready.isEmpty()) {return;}
+            log.info("开始调度.本次认领{}条", ready.size());
+            long count = ready.stream().filter(callbackDispatcher::submit).count();
+            if (count > 0) {log.info("回调定时器补发了{}条", count);}
         } catch (RuntimeException e) {
             log.error("单次调度异常\n", e);
         }
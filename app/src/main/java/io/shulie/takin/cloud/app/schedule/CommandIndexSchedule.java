@@ -0,0 +1,30 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.command.PendingCommandIndex;
+
+/**
+ * 未确认命令索引与数据库核对
+ * <p>补齐丢失的节点间消息(Redis不可用、节点重启)造成的差异</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j(topic = "NOTIFY")
+public class CommandIndexSchedule implements Runnable {
+
+    private final PendingCommandIndex pendingCommandIndex;
+
+    public CommandIndexSchedule(PendingCommandIndex pendingCommandIndex) {
+        this.pendingCommandIndex = pendingCommandIndex;
+    }
+
+    @Override
+    public void run() {
+        try {
+            pendingCommandIndex.resync();
+        } catch (RuntimeException e) {
+            log.error("未确认命令索引核对异常\n", e);
+        }
+    }
+}
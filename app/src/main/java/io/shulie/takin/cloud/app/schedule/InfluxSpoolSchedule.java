@@ -0,0 +1,34 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.util.InfluxSpool;
+import io.shulie.takin.cloud.app.util.InfluxWriter;
+
+/**
+ * InfluxDB预写日志回放
+ * <p>每次最多回放固定条数,以调度间隔限制回放速率</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+public class InfluxSpoolSchedule implements Runnable {
+
+    private final InfluxSpool influxSpool;
+    private final InfluxWriter influxWriter;
+
+    public InfluxSpoolSchedule(InfluxSpool influxSpool, InfluxWriter influxWriter) {
+        this.influxSpool = influxSpool;
+        this.influxWriter = influxWriter;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int count = influxSpool.replay(influxWriter::writeDirect);
+            if (count > 0) {log.info("InfluxDB预写日志回放了{}条", count);}
+        } catch (RuntimeException e) {
+            log.error("InfluxDB预写日志回放异常\n", e);
+        }
+    }
+}
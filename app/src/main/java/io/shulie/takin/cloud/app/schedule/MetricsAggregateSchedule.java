@@ -0,0 +1,34 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.aggregate.MetricsAggregator;
+import io.shulie.takin.cloud.app.service.PressureMetricsService;
+
+/**
+ * 集群维度指标写入
+ * <p>写入已关闭的聚合窗口</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+public class MetricsAggregateSchedule implements Runnable {
+
+    private final MetricsAggregator metricsAggregator;
+    private final PressureMetricsService pressureMetricsService;
+
+    public MetricsAggregateSchedule(MetricsAggregator metricsAggregator, PressureMetricsService pressureMetricsService) {
+        this.metricsAggregator = metricsAggregator;
+        this.pressureMetricsService = pressureMetricsService;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int count = metricsAggregator.flush(pressureMetricsService::writeInfluxdb);
+            if (count > 0) {log.debug("写入集群维度指标{}个窗口", count);}
+        } catch (RuntimeException e) {
+            log.error("写入集群维度指标异常\n", e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.aggregate.PodWindowCollector;
+
+/**
+ * 施压实例窗口统计写入Redis
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+public class PodWindowSchedule implements Runnable {
+
+    private final PodWindowCollector podWindowCollector;
+
+    public PodWindowSchedule(PodWindowCollector podWindowCollector) {
+        this.podWindowCollector = podWindowCollector;
+    }
+
+    @Override
+    public void run() {
+        try {
+            podWindowCollector.flush();
+        } catch (RuntimeException e) {
+            log.error("施压实例窗口统计写入Redis异常\n", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.shulie.takin.cloud.app.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import io.shulie.takin.cloud.app.control.TpsController;
+
+/**
+ * TPS闭环控制
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+public class TpsControlSchedule implements Runnable {
+
+    private final TpsController tpsController;
+
+    public TpsControlSchedule(TpsController tpsController) {
+        this.tpsController = tpsController;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int count = tpsController.control();
+            if (count > 0) {log.info("TPS闭环控制:调整了{}个施压任务", count);}
+        } catch (RuntimeException e) {
+            log.error("TPS闭环控制异常\n", e);
+        }
+    }
+}
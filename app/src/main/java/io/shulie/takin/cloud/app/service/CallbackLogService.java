@@ -1,5 +1,8 @@
 package io.shulie.takin.cloud.app.service;
 
+import java.util.Map;
+import java.util.Date;
+
 import cn.hutool.core.text.CharSequenceUtil;
 
 /**
@@ -18,31 +21,52 @@ public interface CallbackLogService {
 
     /**
      * 预创建回调日志
+     * <p>不再记录请求内容,请求内容以回调表为准</p>
      *
      * @param callbackId 回调主键
      * @param type       回调类型
      * @param url        回调路径
-     * @param data       回调内容
      * @return 回调日志主键
      */
-    Long create(long callbackId, Integer type, String url, byte[] data);
+    Long create(long callbackId, Integer type, String url);
 
     /**
      * 填充回调日志
      *
+     * @param callbackId    回调主键
      * @param callbackLogId 回调日志主键
      * @param data          响应内容
      */
-    void fill(long callbackLogId, byte[] data);
+    void fill(long callbackId, long callbackLogId, byte[] data);
 
     /**
      * 填充回调日志
      *
+     * @param callbackId    回调主键
      * @param callbackLogId 回调日志主键
      * @param data          响应内容
      */
-    default void fill(long callbackLogId, String data) {
-        fill(callbackLogId, CharSequenceUtil.utf8Bytes(data));
+    default void fill(long callbackId, long callbackLogId, String data) {
+        fill(callbackId, callbackLogId, CharSequenceUtil.utf8Bytes(data));
     }
 
+    /**
+     * 填充批量回调的日志
+     * <p>按响应中每一项的结果分别更新回调状态</p>
+     *
+     * @param callbackLogIdMap 回调主键 → 回调日志主键
+     * @param data             响应内容
+     */
+    void fillBatch(Map<Long, Long> callbackLogIdMap, byte[] data);
+
+    /**
+     * 清理已结束的回调及其日志
+     * <p>已完成或已被取代、且早于保留期限的回调,每批按主键顺序删除</p>
+     *
+     * @param before    创建时间早于该时间的回调
+     * @param batchSize 每批数量
+     * @return 本批删除的回调数量
+     */
+    int purge(Date before, int batchSize);
+
 }
@@ -1,5 +1,8 @@
 package io.shulie.takin.cloud.app.service;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Collection;
 import java.nio.charset.StandardCharsets;
 
 import com.github.pagehelper.PageInfo;
@@ -34,6 +37,49 @@ public interface CallbackService {
         return list(pageIndex, pageSize, false);
     }
 
+    /**
+     * 分页获取死信
+     *
+     * @param pageIndex 分页页码
+     * @param pageSize  分页容量
+     * @return 集合数据
+     */
+    PageInfo<CallbackEntity> listDead(int pageIndex, int pageSize);
+
+    /**
+     * 重放死信
+     * <p>重置发送次数和退避时长,立即可以被认领</p>
+     *
+     * @param callbackIdList 回调主键
+     * @return 重放的数量
+     */
+    int replay(Collection<Long> callbackIdList);
+
+    /**
+     * 认领待发送的回调
+     * <p>原子地为一批未完成、未被取代、已到阈值时间且没有有效租约的回调设置本节点的租约</p>
+     *
+     * @return 本次认领的回调
+     */
+    List<CallbackEntity> claim();
+
+    /**
+     * 释放租约
+     * <p>未发送的回调可以立即被任意节点重新认领</p>
+     *
+     * @param callbackIdList 回调主键
+     */
+    void releaseLease(Collection<Long> callbackIdList);
+
+    /**
+     * 推迟发送
+     * <p>释放租约并设置阈值时间,不计入发送次数</p>
+     *
+     * @param callbackIdList 回调主键
+     * @param thresholdTime  阈值时间
+     */
+    void postpone(Collection<Long> callbackIdList, Date thresholdTime);
+
     /**
      * 创建回调
      *
@@ -41,7 +87,9 @@ public interface CallbackService {
      * @param type    回调类型
      * @param content 回调内容
      */
-    void create(String url, CallbackType type, byte[] content);
+    default void create(String url, CallbackType type, byte[] content) {
+        create(url, type, null, content);
+    }
 
     /**
      * 创建回调
@@ -50,18 +98,31 @@ public interface CallbackService {
      * @param content 回调内容
      */
     default void create(String url, CallbackType type, String content) {
-        create(url, type, content.getBytes(StandardCharsets.UTF_8));
+        create(url, type, null, content.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * 回调web
+     * 创建可被取代的回调
+     * <p>同一类型、同一主体的未送达的旧回调不再发送</p>
      *
-     * @param id      回调主键
-     * @param url     回调地址
-     * @param type    回调类型
-     * @param content 回调内容
+     * @param url       回调路径
+     * @param type      回调类型
+     * @param subjectId 主体主键(如施压任务实例主键)
+     * @param content   回调内容
+     */
+    default void create(String url, CallbackType type, Object subjectId, String content) {
+        create(url, type, type == null ? null : type.coalesceKey(subjectId), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 创建回调
+     *
+     * @param url         回调路径
+     * @param type        回调类型
+     * @param coalesceKey 合并键(为空时不合并)
+     * @param content     回调内容
      */
-    void callback(Long id, String url, Integer type, byte[] content);
+    void create(String url, CallbackType type, String coalesceKey, byte[] content);
 
     /**
      * 更新完成状态
@@ -73,6 +134,7 @@ public interface CallbackService {
 
     /**
      * 更新阈值时间
+     * <p>发送失败后累加发送次数并计算下次发送的时间,超过最大发送次数时进入死信</p>
      *
      * @param callbackId 回调主键
      */
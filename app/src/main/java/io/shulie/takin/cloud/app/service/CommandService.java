@@ -1,5 +1,9 @@
 package io.shulie.takin.cloud.app.service;
 
+import java.util.Map;
+import java.util.List;
+import java.util.Collection;
+
 import com.github.pagehelper.PageInfo;
 
 import io.shulie.takin.cloud.data.entity.CommandEntity;
@@ -44,6 +48,7 @@ public interface CommandService {
 
     /**
      * 更新配置
+     * <p>命令内容携带递增的配置版本,同一施压任务尚未弹出的旧配置命令被作废</p>
      *
      * @param pressureId 施压任务主键
      */
@@ -73,6 +78,16 @@ public interface CommandService {
      */
     boolean ack(long id, String type, String message);
 
+    /**
+     * 批量命令确认
+     * <p>一次批量更新</p>
+     *
+     * @param messageMap 命令主键 → ack内容
+     * @param type       ack类型
+     * @return true/false
+     */
+    boolean ack(Map<Long, String> messageMap, String type);
+
     /**
      * 取出一定数量的命令
      *
@@ -82,4 +97,25 @@ public interface CommandService {
      * @return 命令集合
      */
     PageInfo<CommandEntity> range(long watchmanId, int number, CommandType type);
+
+    /**
+     * 弹出一条命令
+     * <p>自动确认</p>
+     *
+     * @param watchmanId 调度主键
+     * @param type       命令类型
+     * @return 命令内容(主键、类型、内容、创建时间)<br/>没有命令时返回null
+     */
+    Map<String, Object> pop(long watchmanId, CommandType type);
+
+    /**
+     * 批量弹出命令
+     * <p>按创建顺序取出,一次批量更新自动确认</p>
+     *
+     * @param watchmanId 调度主键
+     * @param typeList   命令类型(为空时不限类型)
+     * @param number     最大数量
+     * @return 命令集合
+     */
+    List<CommandEntity> pop(long watchmanId, Collection<CommandType> typeList, int number);
 }
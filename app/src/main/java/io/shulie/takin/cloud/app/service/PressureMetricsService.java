@@ -2,6 +2,9 @@ package io.shulie.takin.cloud.app.service;
 
 import java.util.List;
 
+import io.shulie.takin.cloud.model.response.PodCount;
+import io.shulie.takin.cloud.model.response.MetricsWindow;
+import io.shulie.takin.cloud.model.response.MetricsPercentile;
 import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
 
 /**
@@ -11,22 +14,51 @@ import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
  */
 public interface PressureMetricsService {
     /**
-     * 上报
+     * 数据集合存入InfluxDB
      *
-     * @param pressureId        施压任务主键
-     * @param pressureExampleId 施压任务实例主键
-     * @param metricsList       数据集合
-     * @param ip                请求IP
+     * @param pressureId  施压任务主键
+     * @param metricsList 数据集合
      */
-    void upload(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList, String ip);
+    void collectorToInfluxdb(Long pressureId, List<MetricsInfo> metricsList);
 
     /**
-     * 数据集合存入InfluxDB
+     * 行协议数据存入InfluxDB
+     *
+     * @param measurement  表名
+     * @param lineProtocol 行协议(毫秒精度)
+     */
+    void writeInfluxdb(String measurement, CharSequence lineProtocol);
+
+    /**
+     * 集群维度的实时指标
      *
      * @param pressureId  施压任务主键
-     * @param metricsList 数据集合
+     * @param transaction 关键词(为空时查询全部)
+     * @param size        最近的窗口数
+     * @return 窗口数据
      */
-    void collectorToInfluxdb(Long pressureId, List<MetricsInfo> metricsList);
+    List<MetricsWindow> realtime(Long pressureId, String transaction, int size);
+
+    /**
+     * 集群维度的响应时间分位值
+     * <p>合并时间范围内所有窗口的直方图</p>
+     *
+     * @param pressureId  施压任务主键
+     * @param transaction 关键词(为空时合并全部)
+     * @param startTime   开始时间
+     * @param endTime     结束时间
+     * @return 分位值
+     */
+    MetricsPercentile percentile(Long pressureId, String transaction, long startTime, long endTime);
+
+    /**
+     * SLA检查并通知
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param metricsList       数据集合
+     */
+    void checkSla(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList);
 
     /**
      * 统计每个时间窗口pod调用数量
@@ -36,4 +68,14 @@ public interface PressureMetricsService {
      * @param ip         IP地址
      */
     void statisticalIp(Long pressureId, long time, String ip);
+
+    /**
+     * 每个时间窗口上报数据的施压实例数
+     *
+     * @param pressureId 施压任务主键
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 每个窗口的施压实例数
+     */
+    List<PodCount> podCount(Long pressureId, long startTime, long endTime);
 }
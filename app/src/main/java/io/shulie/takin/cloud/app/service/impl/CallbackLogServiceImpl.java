@@ -1,8 +1,11 @@
 package io.shulie.takin.cloud.app.service.impl;
 
 import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
 import java.util.Date;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -15,8 +18,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import io.shulie.takin.cloud.constant.Message;
 import io.shulie.takin.cloud.app.service.JsonService;
 import io.shulie.takin.cloud.app.service.CallbackService;
+import io.shulie.takin.cloud.data.entity.CallbackEntity;
 import io.shulie.takin.cloud.data.entity.CallbackLogEntity;
 import io.shulie.takin.cloud.app.service.CallbackLogService;
+import io.shulie.takin.cloud.data.service.CallbackMapperService;
+import io.shulie.takin.cloud.data.handler.GzipBytesTypeHandler;
 import io.shulie.takin.cloud.data.service.CallbackLogMapperService;
 
 /**
@@ -38,6 +44,9 @@ public class CallbackLogServiceImpl implements CallbackLogService {
     @javax.annotation.Resource(name = "callbackLogMapperServiceImpl")
     CallbackLogMapperService callbackLogMapper;
 
+    @javax.annotation.Resource(name = "callbackMapperServiceImpl")
+    CallbackMapperService callbackMapper;
+
     /**
      * {@inheritDoc}
      */
@@ -52,11 +61,10 @@ public class CallbackLogServiceImpl implements CallbackLogService {
      * {@inheritDoc}
      */
     @Override
-    public Long create(long callbackId, Integer type, String url, byte[] data) {
+    public Long create(long callbackId, Integer type, String url) {
         CallbackLogEntity callbackLogEntity = new CallbackLogEntity()
             .setType(type)
             .setRequestUrl(url)
-            .setRequestData(data)
             .setCallbackId(callbackId)
             .setRequestTime(new Date());
         callbackLogMapper.save(callbackLogEntity);
@@ -67,38 +75,105 @@ public class CallbackLogServiceImpl implements CallbackLogService {
      * {@inheritDoc}
      */
     @Override
-    public void fill(long callbackLogId, byte[] data) {
-        CallbackLogEntity callbackLogEntity = callbackLogMapper.getById(callbackLogId);
-        if (callbackLogEntity == null) {
-            log.warn("{}对应的数据库记录未找到", callbackLogId);
-        } else {
-            boolean completed = isSuccess(data);
-            // 填充日志信息
-            boolean updateResult = callbackLogMapper.
-                lambdaUpdate()
-                .eq(CallbackLogEntity::getId, callbackLogId)
-                .set(CallbackLogEntity::getResponseData, data)
-                .set(CallbackLogEntity::getResponseTime, new Date())
-                .set(CallbackLogEntity::getCompleted, completed).update();
-            // 更新回调的状态
-            if (completed && updateResult) {
-                callbackService.updateCompleted(callbackLogEntity.getCallbackId(), true);
-            }
-            // 更新阈值时间 - 防止回调堆积
-            else {
-                callbackService.updateThresholdTime(callbackLogEntity.getCallbackId());
+    public void fill(long callbackId, long callbackLogId, byte[] data) {
+        fill(callbackId, callbackLogId, data, isSuccess(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fillBatch(Map<Long, Long> callbackLogIdMap, byte[] data) {
+        Map<Long, Boolean> itemResult = new HashMap<>(callbackLogIdMap.size());
+        boolean batchSuccess = false;
+        Map<String, Object> resJson = parse(data);
+        if (resJson != null) {
+            batchSuccess = isTrue(resJson.get(Message.SUCCESS));
+            // 每一项的结果: {"success":true,"data":[{"id":1,"success":true}]}
+            Object items = resJson.get(Message.DATA);
+            if (items instanceof List) {
+                for (Object item : (List<?>)items) {
+                    if (!(item instanceof Map)) {continue;}
+                    Object id = ((Map<?, ?>)item).get("id");
+                    if (id instanceof Number) {itemResult.put(((Number)id).longValue(), isTrue(((Map<?, ?>)item).get(Message.SUCCESS)));}
+                }
             }
         }
+        // 响应中没有的项以整体结果为准
+        boolean defaultResult = batchSuccess && itemResult.isEmpty();
+        callbackLogIdMap.forEach((callbackId, callbackLogId) -> fill(callbackId, callbackLogId, data, itemResult.getOrDefault(callbackId, defaultResult)));
+    }
+
+    /**
+     * 填充回调日志并更新回调状态
+     *
+     * @param callbackId    回调主键
+     * @param callbackLogId 回调日志主键
+     * @param data          响应内容
+     * @param completed     是否成功
+     */
+    private void fill(long callbackId, long callbackLogId, byte[] data, boolean completed) {
+        // 填充日志信息
+        boolean updateResult = callbackLogMapper.
+            lambdaUpdate()
+            .eq(CallbackLogEntity::getId, callbackLogId)
+            .set(CallbackLogEntity::getResponseData, GzipBytesTypeHandler.compress(data))
+            .set(CallbackLogEntity::getResponseTime, new Date())
+            .set(CallbackLogEntity::getCompleted, completed).update();
+        if (!updateResult) {
+            log.warn("{}对应的数据库记录未找到", callbackLogId);
+        }
+        // 更新回调的状态
+        else if (completed) {
+            callbackService.updateCompleted(callbackId, true);
+        }
+        // 更新阈值时间 - 防止回调堆积
+        else {
+            callbackService.updateThresholdTime(callbackId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int purge(Date before, int batchSize) {
+        List<Long> callbackIdList = callbackMapper.lambdaQuery()
+            .select(CallbackEntity::getId)
+            .lt(CallbackEntity::getCreateTime, before)
+            .and(t -> t.eq(CallbackEntity::getCompleted, true).or(c -> c.eq(CallbackEntity::getObsolete, true)))
+            .last("order by id limit " + batchSize)
+            .list().stream().map(CallbackEntity::getId).collect(Collectors.toList());
+        if (callbackIdList.isEmpty()) {return 0;}
+        // 先删除日志,中途失败时下次仍能找到对应的回调
+        callbackLogMapper.lambdaUpdate().in(CallbackLogEntity::getCallbackId, callbackIdList).remove();
+        callbackMapper.removeByIds(callbackIdList);
+        return callbackIdList.size();
     }
 
     /**
      * 回调的响应判断回调是否成功
      */
     private boolean isSuccess(byte[] responseData) {
+        Map<String, Object> resJson = parse(responseData);
+        return Objects.nonNull(resJson) && isTrue(resJson.get(Message.SUCCESS));
+    }
+
+    /**
+     * 解析响应
+     *
+     * @return 不是JSON对象(如请求异常时的异常信息)时返回null
+     */
+    private Map<String, Object> parse(byte[] responseData) {
         String response = StrUtil.utf8Str(responseData);
-        Map<String, Object> resJson = jsonService.readValue(response, new TypeReference<Map<String, Object>>() {});
-        return Objects.nonNull(resJson)
-            && Objects.nonNull(resJson.get(Message.SUCCESS))
-            && Boolean.TRUE.equals(BooleanUtil.toBoolean(resJson.get(Message.SUCCESS).toString()));
+        try {
+            return jsonService.readValue(response, new TypeReference<Map<String, Object>>() {});
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isTrue(Object value) {
+        return Objects.nonNull(value) && Boolean.TRUE.equals(BooleanUtil.toBoolean(value.toString()));
     }
 }
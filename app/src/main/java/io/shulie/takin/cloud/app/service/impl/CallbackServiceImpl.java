@@ -2,26 +2,26 @@ package io.shulie.takin.cloud.app.service.impl;
 
 import java.util.Date;
 import java.util.List;
-import java.util.HashMap;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ThreadLocalRandom;
 
-import cn.hutool.http.HttpUtil;
-import cn.hutool.http.ContentType;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
-import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.util.IdUtil;
 
-import cn.hutool.http.Method;
 import lombok.extern.slf4j.Slf4j;
 import com.github.pagehelper.Page;
 import cn.hutool.core.date.DateUtil;
-import cn.hutool.core.date.DateTime;
 import com.github.pagehelper.PageInfo;
 import com.github.pagehelper.page.PageMethod;
 import org.springframework.stereotype.Service;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.beans.factory.annotation.Value;
 
 import io.shulie.takin.cloud.data.entity.CallbackEntity;
 import io.shulie.takin.cloud.app.service.CallbackService;
+import io.shulie.takin.cloud.app.callback.CallbackDispatcher;
 import io.shulie.takin.cloud.constant.enums.CallbackType;
 import io.shulie.takin.cloud.app.service.CallbackLogService;
 import io.shulie.takin.cloud.data.service.CallbackMapperService;
@@ -38,6 +38,46 @@ public class CallbackServiceImpl implements CallbackService {
     CallbackLogService callbackLogService;
     @javax.annotation.Resource(name = "callbackMapperServiceImpl")
     CallbackMapperService callbackMapper;
+    @Lazy
+    @javax.annotation.Resource
+    CallbackDispatcher callbackDispatcher;
+
+    /**
+     * 租约时长(毫秒)
+     * <p>需要大于回调在队列中等待和发送的最长时间</p>
+     */
+    @Value("${callback.lease.duration:60000}")
+    Long leaseDuration;
+    /**
+     * 单次认领的数量
+     */
+    @Value("${callback.lease.claim-size:100}")
+    Integer claimSize;
+    /**
+     * 最大发送次数
+     * <p>达到后进入死信</p>
+     */
+    @Value("${callback.retry.max-attempts:20}")
+    Integer maxAttempts;
+    /**
+     * 退避的基础时长(毫秒)
+     */
+    @Value("${callback.retry.base:1000}")
+    Long retryBase;
+    /**
+     * 退避的上限(毫秒)
+     */
+    @Value("${callback.retry.cap:600000}")
+    Long retryCap;
+
+    /**
+     * 节点标识
+     */
+    private final String node = IdUtil.fastSimpleUUID();
+    /**
+     * 认领序号
+     */
+    private final AtomicLong claimSequence = new AtomicLong();
 
     /**
      * {@inheritDoc}
@@ -47,6 +87,9 @@ public class CallbackServiceImpl implements CallbackService {
         try (Page<Object> ignored = PageMethod.startPage(pageNumber, pageSize)) {
             List<CallbackEntity> sourceList = callbackMapper.lambdaQuery()
                 .eq(CallbackEntity::getCompleted, isCompleted)
+                // 已被取代的回调不再发送
+                .eq(!isCompleted, CallbackEntity::getObsolete, false)
+                .eq(!isCompleted, CallbackEntity::getDead, false)
                 .and(t ->
                     // (阈值时间为空 || 阈值时间小于等于当前时间)
                     t.isNull(CallbackEntity::getThresholdTime)
@@ -60,36 +103,125 @@ public class CallbackServiceImpl implements CallbackService {
      * {@inheritDoc}
      */
     @Override
-    public void create(String url, CallbackType type, byte[] content) {
-        int typeValue = type == null ? -1 : type.getCode();
-        callbackMapper.save(new CallbackEntity().setUrl(url).setType(typeValue).setContext(content));
+    public PageInfo<CallbackEntity> listDead(int pageNumber, int pageSize) {
+        try (Page<Object> ignored = PageMethod.startPage(pageNumber, pageSize)) {
+            List<CallbackEntity> sourceList = callbackMapper.lambdaQuery()
+                .eq(CallbackEntity::getCompleted, false)
+                .eq(CallbackEntity::getObsolete, false)
+                .eq(CallbackEntity::getDead, true)
+                .orderByAsc(CallbackEntity::getId)
+                .list();
+            return new PageInfo<>(sourceList);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int replay(Collection<Long> callbackIdList) {
+        if (callbackIdList == null || callbackIdList.isEmpty()) {return 0;}
+        List<CallbackEntity> deadList = callbackMapper.lambdaQuery()
+            .select(CallbackEntity::getId)
+            .in(CallbackEntity::getId, callbackIdList)
+            .eq(CallbackEntity::getCompleted, false)
+            .eq(CallbackEntity::getDead, true)
+            .list();
+        if (deadList.isEmpty()) {return 0;}
+        callbackMapper.lambdaUpdate()
+            .set(CallbackEntity::getDead, false)
+            .set(CallbackEntity::getAttempts, 0)
+            .set(CallbackEntity::getBackoff, null)
+            .set(CallbackEntity::getThresholdTime, null)
+            .set(CallbackEntity::getLeaseExpire, null)
+            .in(CallbackEntity::getId, deadList.stream().map(CallbackEntity::getId).collect(Collectors.toList()))
+            .eq(CallbackEntity::getDead, true)
+            .update();
+        log.info("重放死信:{}", deadList.size());
+        return deadList.size();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void callback(Long id, String url, Integer type, byte[] content) {
-        HashMap<String, Object> query = new HashMap<>(2);
-        query.put("id", id);
-        query.put("type", type);
-        // 组装请求地址
-        String requestUrl = HttpUtil.urlWithForm(url, query, StandardCharsets.UTF_8, true);
-        // 组装请求
-        HttpRequest request = HttpUtil.createRequest(Method.POST, requestUrl)
-            .contentType(ContentType.JSON.getValue())
-            .setConnectionTimeout(3000)
-            .body(content);
-        // 记录请求
-        Long callbackLogId = callbackLogService.create(id, type, request.getUrl(), content);
-        byte[] result;
-        // 接收响应
-        try (HttpResponse response = request.execute()) {
-            result = response.bodyBytes();
-            callbackLogService.fill(callbackLogId, result);
-        } catch (RuntimeException e) {
-            callbackLogService.fill(callbackLogId, ExceptionUtil.stacktraceToOneLineString(e, 500));
+    public void create(String url, CallbackType type, String coalesceKey, byte[] content) {
+        int typeValue = type == null ? -1 : type.getCode();
+        // 取代未送达的旧回调
+        if (coalesceKey != null) {
+            callbackMapper.lambdaUpdate()
+                .set(CallbackEntity::getObsolete, true)
+                .eq(CallbackEntity::getCoalesceKey, coalesceKey)
+                .eq(CallbackEntity::getCompleted, false)
+                .eq(CallbackEntity::getObsolete, false)
+                .update();
         }
+        // 创建时即持有租约,立即分发时其他节点不会认领
+        CallbackEntity callbackEntity = new CallbackEntity().setUrl(url).setType(typeValue).setContext(content)
+            .setCoalesceKey(coalesceKey).setObsolete(false)
+            .setLeaseOwner(leaseOwner()).setLeaseExpire(DateUtil.offsetMillisecond(new Date(), leaseDuration.intValue()));
+        callbackMapper.save(callbackEntity);
+        // 立即分发,失败时由定时任务补发
+        callbackDispatcher.submit(callbackEntity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CallbackEntity> claim() {
+        Date now = new Date();
+        String owner = leaseOwner();
+        // 单条语句原子认领,多个节点并发认领时不会重复
+        boolean claimed = callbackMapper.lambdaUpdate()
+            .set(CallbackEntity::getLeaseOwner, owner)
+            .set(CallbackEntity::getLeaseExpire, DateUtil.offsetMillisecond(now, leaseDuration.intValue()))
+            .eq(CallbackEntity::getCompleted, false)
+            .eq(CallbackEntity::getObsolete, false)
+            .eq(CallbackEntity::getDead, false)
+            .and(t -> t.isNull(CallbackEntity::getThresholdTime).or(c -> c.le(CallbackEntity::getThresholdTime, now)))
+            // 没有租约或租约已过期
+            .and(t -> t.isNull(CallbackEntity::getLeaseExpire).or(c -> c.le(CallbackEntity::getLeaseExpire, now)))
+            .last("order by id limit " + claimSize)
+            .update();
+        if (!claimed) {return new ArrayList<>(0);}
+        return callbackMapper.lambdaQuery().eq(CallbackEntity::getLeaseOwner, owner).list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void releaseLease(Collection<Long> callbackIdList) {
+        if (callbackIdList.isEmpty()) {return;}
+        callbackMapper.lambdaUpdate()
+            .set(CallbackEntity::getLeaseExpire, null)
+            .in(CallbackEntity::getId, callbackIdList)
+            .eq(CallbackEntity::getCompleted, false)
+            .update();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postpone(Collection<Long> callbackIdList, Date thresholdTime) {
+        if (callbackIdList.isEmpty()) {return;}
+        callbackMapper.lambdaUpdate()
+            .set(CallbackEntity::getThresholdTime, thresholdTime)
+            .set(CallbackEntity::getLeaseExpire, null)
+            .in(CallbackEntity::getId, callbackIdList)
+            .eq(CallbackEntity::getCompleted, false)
+            .update();
+    }
+
+    /**
+     * 本次认领的租约持有者
+     *
+     * @return 节点标识#认领序号
+     */
+    private String leaseOwner() {
+        return node + "#" + claimSequence.incrementAndGet();
     }
 
     /**
@@ -98,6 +230,7 @@ public class CallbackServiceImpl implements CallbackService {
     public void updateCompleted(long callbackId, Boolean completed) {
         callbackMapper.lambdaUpdate()
             .set(CallbackEntity::getCompleted, completed)
+            .set(CallbackEntity::getLeaseExpire, null)
             .eq(CallbackEntity::getId, callbackId)
             .update();
     }
@@ -108,14 +241,43 @@ public class CallbackServiceImpl implements CallbackService {
     @Override
     public void updateThresholdTime(long callbackId) {
         try {
-            CallbackEntity callback = callbackMapper.getById(callbackId);
-            Long logCount = callbackLogService.count(callbackId);
-            DateTime thresholdTime = DateUtil.offsetMillisecond(callback.getCreateTime(), 2 << logCount);
-            callbackMapper.lambdaUpdate()
-                .set(CallbackEntity::getThresholdTime, thresholdTime)
-                .eq(CallbackEntity::getId, callback.getId()).update();
+            // 只查询次数和退避时长,不加载回调内容
+            CallbackEntity callback = callbackMapper.lambdaQuery()
+                .select(CallbackEntity::getId, CallbackEntity::getAttempts, CallbackEntity::getBackoff)
+                .eq(CallbackEntity::getId, callbackId)
+                .one();
+            if (callback == null) {return;}
+            int previous = callback.getAttempts() == null ? 0 : callback.getAttempts();
+            int attempts = previous + 1;
+            boolean dead = attempts >= maxAttempts;
+            long backoff = nextBackoff(callback.getBackoff());
+            // 以发送次数为条件更新,并发的失败不会重复计数;进入死信后不再认领,否则释放租约,到阈值时间后任意节点都可以认领
+            boolean updated = callbackMapper.lambdaUpdate()
+                .set(CallbackEntity::getAttempts, attempts)
+                .set(dead, CallbackEntity::getDead, true)
+                .set(!dead, CallbackEntity::getBackoff, backoff)
+                .set(!dead, CallbackEntity::getThresholdTime, new Date(System.currentTimeMillis() + backoff))
+                .set(CallbackEntity::getLeaseExpire, null)
+                .eq(CallbackEntity::getId, callbackId)
+                .eq(CallbackEntity::getAttempts, previous)
+                .update();
+            if (updated && dead) {log.warn("回调{}已发送{}次,进入死信", callbackId, attempts);}
         } catch (Exception e) {
             log.error("更新阈值时间失败:{}\n", callbackId, e);
         }
     }
+
+    /**
+     * 退避时长(去相关抖动)
+     * <p>min(上限, random(基础时长, 上次的退避时长 * 3))</p>
+     *
+     * @param previous 上次的退避时长(为空时视为基础时长)
+     * @return 本次的退避时长(毫秒)
+     */
+    long nextBackoff(Long previous) {
+        long base = Math.max(1, retryBase);
+        long upper = Math.max(base, Math.min(retryCap, (previous == null ? base : previous) * 3));
+        long backoff = upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base;
+        return Math.min(retryCap, backoff);
+    }
 }
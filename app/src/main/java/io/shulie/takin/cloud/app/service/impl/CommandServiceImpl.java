@@ -4,6 +4,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 
@@ -11,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageInfo;
 import com.github.pagehelper.page.PageMethod;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import org.springframework.stereotype.Service;
 import org.springframework.context.annotation.Lazy;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -18,6 +21,8 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import io.shulie.takin.cloud.constant.Message;
 import io.shulie.takin.cloud.app.service.JsonService;
 import io.shulie.takin.cloud.app.conf.WatchmanConfig;
+import io.shulie.takin.cloud.app.command.CommandNotifier;
+import io.shulie.takin.cloud.app.command.PendingCommandIndex;
 import io.shulie.takin.cloud.data.entity.ScriptEntity;
 import io.shulie.takin.cloud.app.service.ScriptService;
 import io.shulie.takin.cloud.data.entity.CommandEntity;
@@ -37,6 +42,7 @@ import io.shulie.takin.cloud.constant.PressureEngineConstants;
 import io.shulie.takin.cloud.data.entity.ResourceExampleEntity;
 import io.shulie.takin.cloud.data.service.CommandMapperService;
 import io.shulie.takin.cloud.data.service.MetricsMapperService;
+import io.shulie.takin.cloud.data.service.PressureMapperService;
 import io.shulie.takin.cloud.data.entity.ThreadConfigExampleEntity;
 import io.shulie.takin.cloud.data.service.ThreadConfigMapperService;
 import io.shulie.takin.cloud.data.service.PressureFileMapperService;
@@ -51,6 +57,15 @@ import io.shulie.takin.cloud.data.service.ThreadConfigExampleMapperService;
 @Service
 public class CommandServiceImpl implements CommandService {
 
+    /**
+     * 线程组配置版本更新冲突时的重试次数
+     */
+    private static final int CONFIG_VERSION_RETRY = 10;
+    /**
+     * 弹出时认领数不足的补充次数
+     */
+    private static final int POP_RETRY = 3;
+
     @Lazy
     @javax.annotation.Resource
     PressureService pressureService;
@@ -68,11 +83,17 @@ public class CommandServiceImpl implements CommandService {
     JsonService jsonService;
     @javax.annotation.Resource
     WatchmanConfig watchmanConfig;
+    @javax.annotation.Resource
+    CommandNotifier commandNotifier;
+    @javax.annotation.Resource
+    PendingCommandIndex pendingCommandIndex;
 
     @javax.annotation.Resource(name = "metricsMapperServiceImpl")
     MetricsMapperService metricsMapper;
     @javax.annotation.Resource(name = "commandMapperServiceImpl")
     CommandMapperService commandMapper;
+    @javax.annotation.Resource(name = "pressureMapperServiceImpl")
+    PressureMapperService pressureMapper;
     @javax.annotation.Resource(name = "pressureFileMapperServiceImpl")
     PressureFileMapperService pressureFileMapper;
     @javax.annotation.Resource(name = "threadConfigMapperServiceImpl")
@@ -220,15 +241,28 @@ public class CommandServiceImpl implements CommandService {
             int numberSum = contextList.stream().mapToInt(t -> NumberUtil.parseInt(t.getOrDefault(Message.THREAD_NUMBER, "0"))).sum();
             // TPS数
             double tpsSum = contextList.stream().mapToDouble(t -> NumberUtil.parseDouble(t.getOrDefault(Message.TPS_NUMBER, "0.0"))).sum();
+            // 每个施压实例的分配(TPS闭环控制后不再是平均分配)
+            List<Map<String, Object>> exampleList = new ArrayList<>(v.size());
+            for (int i = 0; i < v.size() && contextList.size() == v.size(); i++) {
+                Map<String, Object> exampleItem = new HashMap<>(4);
+                exampleItem.put("pressureExampleId", v.get(i).getPressureExampleId());
+                exampleItem.put("tps", NumberUtil.parseDouble(contextList.get(i).getOrDefault(Message.TPS_NUMBER, "0.0")));
+                exampleItem.put(PressureEngineConstants.THREAD_GROUP_CONCURRENT_NUMBER, NumberUtil.parseInt(contextList.get(i).getOrDefault(Message.THREAD_NUMBER, "0")));
+                exampleList.add(exampleItem);
+            }
             // 组装对象
-            Map<String, Object> contentItem = new HashMap<>(3);
+            Map<String, Object> contentItem = new HashMap<>(4);
             contentItem.put("ref", k);
             contentItem.put("tps", tpsSum);
             contentItem.put(PressureEngineConstants.THREAD_GROUP_CONCURRENT_NUMBER, numberSum);
+            if (!exampleList.isEmpty()) {contentItem.put("examples", exampleList);}
             content.add(contentItem);
         });
-        Map<String, Object> result = new HashMap<>(3);
+        // 配置版本 - 调度器忽略低于已应用版本的配置
+        long version = nextConfigVersion(pressureEntity.getId());
+        Map<String, Object> result = new HashMap<>(4);
         result.put("content", content);
+        result.put("version", version);
         result.put("pressure", pressureEntity.getId());
         result.put("taskId", pressureEntity.getId());
         // 下发命令
@@ -236,10 +270,79 @@ public class CommandServiceImpl implements CommandService {
         // 下发命令 - 分批次执行
         resourceService.listExample(resourceEntity.getId()).stream().map(ResourceExampleEntity::getWatchmanId)
             .distinct().forEach(t -> {
+                // 每次下发的都是完整配置,尚未弹出的旧配置直接作废
+                int superseded = supersedeConfig(t, pressureEntity.getId(), version);
                 long commandId = create(t, CommandType.MODIFY_THREAD_CONFIG, request);
-                log.info("下发命令:更新线程组配置:{},命令主键{}.", pressureId, commandId);
+                log.info("下发命令:更新线程组配置:{},版本{},命令主键{},作废旧配置{}条.", pressureId, version, commandId, superseded);
             });
-        // 输出日志
+    }
+
+    /**
+     * 递增线程组配置版本
+     * <p>以数据库中的版本号做比较更新,多个节点同时下发时版本号不重复</p>
+     *
+     * @param pressureId 施压任务主键
+     * @return 新的版本号
+     */
+    private long nextConfigVersion(long pressureId) {
+        for (int i = 0; i < CONFIG_VERSION_RETRY; i++) {
+            PressureEntity pressureEntity = pressureMapper.lambdaQuery()
+                .select(PressureEntity::getId, PressureEntity::getConfigVersion)
+                .eq(PressureEntity::getId, pressureId)
+                .one();
+            if (pressureEntity == null) {throw new IllegalArgumentException(CharSequenceUtil.format(Message.MISS_PRESSURE, pressureId));}
+            long current = pressureEntity.getConfigVersion() == null ? 0 : pressureEntity.getConfigVersion();
+            boolean updated = pressureMapper.lambdaUpdate()
+                .set(PressureEntity::getConfigVersion, current + 1)
+                .eq(PressureEntity::getId, pressureId)
+                .eq(PressureEntity::getConfigVersion, current)
+                .update();
+            if (updated) {return current + 1;}
+        }
+        throw new IllegalStateException(CharSequenceUtil.format("施压任务{}的线程组配置版本更新冲突", pressureId));
+    }
+
+    /**
+     * 作废调度器尚未弹出的旧线程组配置
+     * <p>从未确认命令索引中查找,索引未同步的旧配置仍会下发,由调度器按版本号忽略</p>
+     *
+     * @param watchmanId 调度主键
+     * @param pressureId 施压任务主键
+     * @param version    新的版本号
+     * @return 作废的命令数
+     */
+    private int supersedeConfig(long watchmanId, long pressureId, long version) {
+        List<Long> idList = pendingCommandIndex.peek(watchmanId, Collections.singletonList(CommandType.MODIFY_THREAD_CONFIG), Integer.MAX_VALUE)
+            .stream().filter(t -> isConfigOf(t, pressureId))
+            .map(CommandEntity::getId)
+            .collect(Collectors.toList());
+        if (idList.isEmpty()) {return 0;}
+        // 只作废尚未确认的命令,已被弹出的不受影响
+        String message = CharSequenceUtil.format("{}(superseded-by-version:{})", DateUtil.now(), version);
+        int count = commandMapper.getBaseMapper().update(
+            new CommandEntity().setAckContent(ackContent("superseded", message)).setAckTime(new Date()),
+            Wrappers.<CommandEntity>lambdaUpdate()
+                .in(CommandEntity::getId, idList)
+                .isNull(CommandEntity::getAckTime));
+        commandNotifier.publishAck(idList);
+        return count;
+    }
+
+    /**
+     * 是否是施压任务的线程组配置
+     *
+     * @param command    命令
+     * @param pressureId 施压任务主键
+     * @return true/false
+     */
+    private boolean isConfigOf(CommandEntity command, long pressureId) {
+        try {
+            Map<String, Object> content = jsonService.readValue(command.getContent(), new TypeReference<Map<String, Object>>() {});
+            Object pressure = content == null ? null : content.get("pressure");
+            return pressure instanceof Number && ((Number)pressure).longValue() == pressureId;
+        } catch (RuntimeException e) {
+            return false;
+        }
     }
 
     /**
@@ -262,11 +365,7 @@ public class CommandServiceImpl implements CommandService {
         ScriptEntity scriptEntity = scriptService.entity(scriptId);
         if (Objects.nonNull(scriptEntity)) {
             // 下发命令的操作
-            CommandEntity commandEntity = new CommandEntity()
-                .setContent(jsonService.writeValueAsString(scriptEntity))
-                .setWatchmanId(scriptEntity.getWatchmanId())
-                .setType(CommandType.ANNOUNCE_SCRIPT.getValue());
-            commandMapper.save(commandEntity);
+            create(scriptEntity.getWatchmanId(), CommandType.ANNOUNCE_SCRIPT, jsonService.writeValueAsString(scriptEntity));
         }
     }
 
@@ -282,8 +381,11 @@ public class CommandServiceImpl implements CommandService {
         CommandEntity commandEntity = new CommandEntity()
             .setContent(content)
             .setWatchmanId(watchmanId)
-            .setType(commandType.getValue());
+            .setType(commandType.getValue())
+            .setCreateTime(new Date());
         commandMapper.save(commandEntity);
+        // 追加到未确认命令索引,唤醒等待中的长轮询
+        commandNotifier.publish(commandEntity);
         return commandEntity.getId();
     }
 
@@ -291,14 +393,91 @@ public class CommandServiceImpl implements CommandService {
      * {@inheritDoc}
      */
     public boolean ack(long id, String type, String message) {
-        Map<String, String> content = new HashMap<>(2);
-        content.put("type", type);
-        content.put("message", message);
-        return commandMapper.lambdaUpdate()
-            .set(CommandEntity::getAckContent, jsonService.writeValueAsString(content))
+        boolean result = commandMapper.lambdaUpdate()
+            .set(CommandEntity::getAckContent, ackContent(type, message))
             .set(CommandEntity::getAckTime, new Date())
             .eq(CommandEntity::getId, id)
             .update();
+        commandNotifier.publishAck(Collections.singletonList(id));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean ack(Map<Long, String> messageMap, String type) {
+        if (messageMap.isEmpty()) {return false;}
+        Date now = new Date();
+        List<CommandEntity> entityList = messageMap.entrySet().stream()
+            .map(t -> new CommandEntity().setId(t.getKey()).setAckTime(now).setAckContent(ackContent(type, t.getValue())))
+            .collect(Collectors.toList());
+        boolean result = commandMapper.updateBatchById(entityList);
+        commandNotifier.publishAck(messageMap.keySet());
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<CommandEntity> pop(long watchmanId, Collection<CommandType> typeList, int number) {
+        int size = Math.max(1, number);
+        List<CommandEntity> result = new ArrayList<>(0);
+        // 部分命令已被其他节点弹出或确认时,继续认领之后的命令
+        for (int i = 0; i < POP_RETRY && result.size() < size; i++) {
+            // 只读内存索引
+            List<CommandEntity> commandList = pendingCommandIndex.peek(watchmanId, typeList, size - result.size());
+            if (commandList.isEmpty()) {break;}
+            List<CommandEntity> claimedList = claim(commandList);
+            result.addAll(claimedList);
+            if (claimedList.size() == commandList.size()) {break;}
+        }
+        if (result.size() > 1) {result.sort(Comparator.comparing(CommandEntity::getId));}
+        return result;
+    }
+
+    /**
+     * 认领命令
+     * <p>pop模式要自动完成,只确认尚未确认的命令</p>
+     *
+     * @param commandList 命令集合
+     * @return 本次确认的命令
+     */
+    private List<CommandEntity> claim(List<CommandEntity> commandList) {
+        List<Long> idList = commandList.stream().map(CommandEntity::getId).collect(Collectors.toList());
+        String message = DateUtil.now() + "(pop-ack:" + IdUtil.fastSimpleUUID() + ")";
+        int count = commandMapper.getBaseMapper().update(
+            new CommandEntity().setAckContent(ackContent("pop", message)).setAckTime(new Date()),
+            Wrappers.<CommandEntity>lambdaUpdate()
+                .in(CommandEntity::getId, idList)
+                .isNull(CommandEntity::getAckTime));
+        // 无论是否由本次确认,都已不再是未确认的命令
+        commandNotifier.publishAck(idList);
+        if (count == idList.size()) {return commandList;}
+        // 部分命令已被其他节点弹出或确认,只返回本次确认的命令
+        Set<Long> claimedIdSet = commandMapper.lambdaQuery()
+            .select(CommandEntity::getId, CommandEntity::getAckContent)
+            .in(CommandEntity::getId, idList)
+            .list().stream()
+            .filter(t -> t.getAckContent() != null && message.equals(jsonService.readValue(t.getAckContent(), new TypeReference<Map<String, String>>() {}).get("message")))
+            .map(CommandEntity::getId)
+            .collect(Collectors.toSet());
+        return commandList.stream().filter(t -> claimedIdSet.contains(t.getId())).collect(Collectors.toList());
+    }
+
+    /**
+     * ack内容
+     *
+     * @param type    ack类型
+     * @param message ack内容
+     * @return JSON
+     */
+    private String ackContent(String type, String message) {
+        Map<String, String> content = new HashMap<>(2);
+        content.put("type", type);
+        content.put("message", message);
+        return jsonService.writeValueAsString(content);
     }
 
     /**
@@ -316,6 +495,25 @@ public class CommandServiceImpl implements CommandService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> pop(long watchmanId, CommandType type) {
+        List<CommandEntity> commandList = pop(watchmanId, Collections.singletonList(type), 1);
+        // 没有命令则返回 null
+        if (commandList.isEmpty()) {return null;}
+        // 有命令则返回命令内容
+        CommandEntity commandEntity = commandList.get(0);
+        Object content = jsonService.readValue(commandEntity.getContent(), Object.class);
+        Map<String, Object> result = new HashMap<>(4);
+        result.put("content", content);
+        result.put("id", commandEntity.getId());
+        result.put("type", commandEntity.getType());
+        result.put("createTime", commandEntity.getCreateTime().getTime());
+        return result;
+    }
+
     /**
      * 打包启动任务参数
      *
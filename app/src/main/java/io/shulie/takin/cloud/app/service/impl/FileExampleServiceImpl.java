@@ -116,7 +116,7 @@ public class FileExampleServiceImpl implements FileExampleService {
                     .setComplete(fileExampleEntity.getCompleted())
                     .setProgress(fileExampleEntity.getCompleteSize() + "")
                 );
-                callbackService.create(fileEntity.getCallbackUrl(), CallbackType.FILE_RESOURCE_PROGRESS,
+                callbackService.create(fileEntity.getCallbackUrl(), CallbackType.FILE_RESOURCE_PROGRESS, fileExampleId,
                     StrUtil.utf8Str(jsonService.writeValueAsString(progressReport)));
             }
         }
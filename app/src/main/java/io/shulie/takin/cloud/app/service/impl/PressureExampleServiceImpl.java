@@ -7,6 +7,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import io.shulie.takin.cloud.app.service.JsonService;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer.Category;
 import io.shulie.takin.cloud.data.entity.PressureEntity;
 import io.shulie.takin.cloud.app.service.CallbackService;
 import io.shulie.takin.cloud.constant.enums.CallbackType;
@@ -36,6 +38,8 @@ public class PressureExampleServiceImpl implements PressureExampleService {
     JsonService jsonService;
     @javax.annotation.Resource
     CallbackService callbackService;
+    @javax.annotation.Resource
+    HeartbeatCoalescer heartbeatCoalescer;
     @javax.annotation.Resource(name = "pressureMapperServiceImpl")
     PressureMapperService pressureMapper;
     @javax.annotation.Resource(name = "pressureExampleMapperServiceImpl")
@@ -45,12 +49,14 @@ public class PressureExampleServiceImpl implements PressureExampleService {
 
     @Override
     public void onHeartbeat(long pressureExampleId) {
+        // 合并间隔内的心跳
+        if (!heartbeatCoalescer.tryAcquire(Category.PRESSURE_EXAMPLE, pressureExampleId)) {return;}
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         PressureExampleHeartbeat context = new PressureExampleHeartbeat();
         context.setData(getCallbackData(pressureExampleId, callbackUrl));
         // 创建回调
-        callbackService.create(callbackUrl.toString(), CallbackType.PRESSURE_EXAMPLE_HEARTBEAT, jsonService.writeValueAsString(context));
+        callbackService.create(callbackUrl.toString(), CallbackType.PRESSURE_EXAMPLE_HEARTBEAT, pressureExampleId, jsonService.writeValueAsString(context));
         // 记录事件
         pressureExampleEventMapper.save(new PressureExampleEventEntity()
             .setContext("{}")
@@ -64,6 +70,7 @@ public class PressureExampleServiceImpl implements PressureExampleService {
      */
     @Override
     public void onStart(long pressureExampleId) {
+        heartbeatCoalescer.reset(Category.PRESSURE_EXAMPLE, pressureExampleId);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         PressureExampleStart context = new PressureExampleStart();
@@ -83,6 +90,7 @@ public class PressureExampleServiceImpl implements PressureExampleService {
 
     @Override
     public void onStop(long pressureExampleId) {
+        heartbeatCoalescer.reset(Category.PRESSURE_EXAMPLE, pressureExampleId);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         PressureExampleStop context = new PressureExampleStop();
@@ -100,6 +108,7 @@ public class PressureExampleServiceImpl implements PressureExampleService {
 
     @Override
     public void onError(long pressureExampleId, String errorMessage) {
+        heartbeatCoalescer.reset(Category.PRESSURE_EXAMPLE, pressureExampleId);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         PressureExample pressureExample = getCallbackData(pressureExampleId, callbackUrl);
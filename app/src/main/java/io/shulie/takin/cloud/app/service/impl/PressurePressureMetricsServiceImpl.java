@@ -1,25 +1,29 @@
 package io.shulie.takin.cloud.app.service.impl;
 
+import java.util.Set;
 import java.util.List;
-import java.util.Objects;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
-import java.util.concurrent.TimeUnit;
+import java.util.Base64;
+import java.util.HashSet;
 
 import lombok.extern.slf4j.Slf4j;
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import org.influxdb.dto.QueryResult;
 import org.springframework.stereotype.Service;
-import org.springframework.data.redis.core.RedisTemplate;
 
 import io.shulie.takin.cloud.app.util.InfluxUtil;
+import io.shulie.takin.cloud.app.util.MetricsCodec;
 import io.shulie.takin.cloud.app.util.InfluxWriter;
-import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.app.util.InfluxLineWriter;
 import io.shulie.takin.cloud.app.service.SlaService;
-import io.shulie.takin.cloud.app.service.JsonService;
+import io.shulie.takin.cloud.app.aggregate.LatencyHistogram;
+import io.shulie.takin.cloud.app.aggregate.PodWindowCollector;
+import io.shulie.takin.cloud.app.aggregate.MetricsAggregator;
 import io.shulie.takin.cloud.data.entity.SlaEventEntity;
 import io.shulie.takin.cloud.app.service.PressureMetricsService;
-import io.shulie.takin.cloud.constant.PressureEngineConstants;
-import io.shulie.takin.cloud.app.service.PressureExampleService;
+import io.shulie.takin.cloud.model.response.PodCount;
+import io.shulie.takin.cloud.model.response.MetricsWindow;
+import io.shulie.takin.cloud.model.response.MetricsPercentile;
 import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
 
 import static com.alibaba.fastjson.JSON.*;
@@ -35,37 +39,26 @@ public class PressurePressureMetricsServiceImpl implements PressureMetricsServic
     @javax.annotation.Resource
     SlaService slaService;
     @javax.annotation.Resource
-    JsonService jsonService;
-    @javax.annotation.Resource
     private InfluxWriter influxWriter;
     @javax.annotation.Resource
-    PressureExampleService pressureExampleService;
+    private InfluxLineWriter influxLineWriter;
+    @javax.annotation.Resource
+    MetricsAggregator metricsAggregator;
     @javax.annotation.Resource
-    RedisTemplate<String, Object> stringRedisTemplate;
+    PodWindowCollector podWindowCollector;
 
     /**
      * {@inheritDoc}
      */
-    @Override
-    public void upload(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList, String ip) {
-        long timestamp = metricsList.get(0).getTimestamp();
-        log.debug("Metrics-Upload({}-{}):接受到的数据:{}", pressureId, pressureExampleId, metricsList);
-        log.info("Metrics-Upload({}-{}): 接收到的数据:{}条,时间范围:{},延时:{}", pressureId, pressureExampleId,
-            metricsList.size(), timestamp, (System.currentTimeMillis() - timestamp));
+    public void collectorToInfluxdb(Long pressureId, List<MetricsInfo> metricsList) {
+        if (CollUtil.isEmpty(metricsList)) {
+            return;
+        }
         try {
-            // 回调数据
-            pressureExampleService.onHeartbeat(pressureExampleId);
-            // 写入InfluxDB
-            collectorToInfluxdb(pressureId, metricsList);
-            // 统计每个时间窗口pod调用数量
-            statisticalIp(pressureId, timestamp, ip);
-            // SLA检查
-            List<SlaEventEntity> check = slaService.check(pressureId, pressureExampleId, metricsList);
-            // 进行通知
-            slaService.event(pressureId, pressureExampleId, check);
-        }catch (Throwable e) {
-            log.error("upload error,{}-{}", pressureId, pressureExampleId);
-            log.error("upload error,data detail is {}", metricsList.toString());
+            // 规整和编码一次完成
+            MetricsCodec.encode(InfluxUtil.getMetricsMeasurement(pressureId), metricsList, true).forEach(influxWriter::insert);
+        } catch (Throwable e) {
+            log.error("collectorToInfluxdb error", e);
             throw e;
         }
     }
@@ -73,75 +66,93 @@ public class PressurePressureMetricsServiceImpl implements PressureMetricsServic
     /**
      * {@inheritDoc}
      */
-    public void collectorToInfluxdb(Long pressureId, List<MetricsInfo> metricsList) {
-        try {
-            if (CollUtil.isEmpty(metricsList)) {
-                return;
-            }
-            String measurement = InfluxUtil.getMetricsMeasurement(pressureId);
-            List<MetricsInfo> metricsInfoList = metricsList.stream().filter(Objects::nonNull).collect(Collectors.toList());
-            metricsInfoList.forEach(metrics -> {
-                //判断有没有MD5值
-                int strPosition = metrics.getTransaction().lastIndexOf(PressureEngineConstants.TRANSACTION_SPLIT_STR);
-                if (strPosition > 0) {
-                    String transaction = metrics.getTransaction();
-                    metrics.setTransaction(transaction.substring(strPosition + PressureEngineConstants.TRANSACTION_SPLIT_STR.length()));
-                    metrics.setTestName((transaction.substring(0, strPosition)));
-                } else {
-                    metrics.setTransaction(metrics.getTransaction());
-                    metrics.setTestName(metrics.getTransaction());
-                }
-            });
-            metricsInfoList.stream().map(metrics -> {
-                //处理时间戳-纳秒转成毫秒，防止插入influxdb报错
-                if (Objects.nonNull(metrics.getTime()) && metrics.getTime() > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
-                    metrics.setTimestamp(metrics.getTimestamp() / 1000000);
-                }
-                if (Objects.nonNull(metrics.getTimestamp()) && metrics.getTimestamp() > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
-                    metrics.setTimestamp(metrics.getTimestamp() / 1000000);
-                }
-                return InfluxUtil.toPoint(measurement, metrics.getTimestamp(), metrics);
-            }).forEach(influxWriter::insert);
-        } catch (Throwable e) {
-            log.error("collectorToInfluxdb error", e);
-            throw e;
+    @Override
+    public void writeInfluxdb(String measurement, CharSequence lineProtocol) {
+        if (lineProtocol.length() == 0) {return;}
+        if (influxLineWriter.isEnabled()) {
+            influxLineWriter.write(measurement, lineProtocol);
+        } else {
+            influxWriter.insertAsync(lineProtocol);
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<MetricsWindow> realtime(Long pressureId, String transaction, int size) {
+        return metricsAggregator.realtime(pressureId, transaction, size);
     }
 
     /**
      * {@inheritDoc}
      */
-    public void statisticalIp(Long pressureId, long time, String ip) {
-        // 时间窗口缓存Key
-        String redisKey = String.format("%s:%s", getKey(pressureId), "windowsTime");
-        //  获取当前时间窗口
-        String hashKey = String.valueOf(CollectorUtil.getTimeWindowTime(time));
-        // 声明IP列表
-        List<String> ipList = new ArrayList<>();
-        // 如果缓存不存在
-        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(redisKey))) {
-            ipList.add(ip);
-            stringRedisTemplate.opsForHash().put(redisKey, hashKey, jsonService.writeValueAsString(ipList));
-            stringRedisTemplate.expire(redisKey, 1, TimeUnit.DAYS);
-        } else {
-            Object cacheData = stringRedisTemplate.opsForHash().get(redisKey, hashKey);
-            if (cacheData instanceof List) {
-                ipList = ((List<?>)cacheData).stream().filter(String.class::isInstance)
-                    .map(Object::toString).collect(Collectors.toList());
+    @Override
+    public MetricsPercentile percentile(Long pressureId, String transaction, long startTime, long endTime) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 内存中的窗口(可能包含迟到数据)为准
+        Set<String> covered = new HashSet<>();
+        metricsAggregator.histogram(pressureId, transaction, startTime, endTime, histogram, covered);
+        // 已移出内存的窗口
+        String command = String.format("SELECT \"histogram\", \"timestamp\", \"transaction\" FROM \"%s\" WHERE time >= %dms AND time <= %dms",
+            InfluxUtil.getClusterMetricsMeasurement(pressureId), startTime, endTime);
+        if (CharSequenceUtil.isNotBlank(transaction)) {
+            command += String.format(" AND \"transaction\" = '%s'", transaction.replace("\\", "\\\\").replace("'", "\\'"));
+        }
+        for (QueryResult.Result result : influxWriter.select(command)) {
+            if (result.getSeries() == null) {continue;}
+            for (QueryResult.Series series : result.getSeries()) {
+                int histogramIndex = series.getColumns().indexOf("histogram");
+                int timestampIndex = series.getColumns().indexOf("timestamp");
+                int transactionIndex = series.getColumns().indexOf("transaction");
+                for (List<Object> value : series.getValues()) {
+                    Object data = value.get(histogramIndex);
+                    Object time = value.get(timestampIndex);
+                    if (data == null || !(time instanceof Number)) {continue;}
+                    if (covered.contains(MetricsAggregator.windowKey(String.valueOf(value.get(transactionIndex)), ((Number)time).longValue()))) {continue;}
+                    try {
+                        histogram.merge(LatencyHistogram.decode(Base64.getDecoder().decode(data.toString())));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("施压任务{}的响应时间直方图格式不正确:{}", pressureId, e.getMessage());
+                    }
+                }
             }
-            stringRedisTemplate.opsForHash().put(redisKey, hashKey, jsonService.writeValueAsString(ipList));
         }
+        return new MetricsPercentile()
+            .setTransaction(transaction)
+            .setStartTime(startTime)
+            .setEndTime(endTime)
+            .setCount(histogram.count())
+            .setP50(histogram.quantile(0.5))
+            .setP90(histogram.quantile(0.9))
+            .setP99(histogram.quantile(0.99))
+            .setP999(histogram.quantile(0.999));
     }
 
     /**
-     * 获取施压任务对应的Redis的Key
-     *
-     * @param pressureId 施压任务主键
-     * @return Redis的Key
+     * {@inheritDoc}
      */
-    protected String getKey(Long pressureId) {
-        return String.format("COLLECTOR:TASK:%s", pressureId);
+    @Override
+    public void checkSla(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList) {
+        // SLA检查
+        List<SlaEventEntity> check = slaService.check(pressureId, pressureExampleId, metricsList);
+        // 进行通知
+        slaService.event(pressureId, pressureExampleId, check);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void statisticalIp(Long pressureId, long time, String ip) {
+        podWindowCollector.add(pressureId, time, ip);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PodCount> podCount(Long pressureId, long startTime, long endTime) {
+        return podWindowCollector.count(pressureId, startTime, endTime);
     }
 
 }
@@ -224,7 +224,13 @@ public class PressureServiceImpl implements PressureService {
             .setAttach(t.getAttach())
             .setFormulaNumber(t.getFormulaNumber())
             .setFormulaTarget(t.getFormulaTarget().getCode())
-            .setFormulaSymbol(t.getFormulaSymbol().getCode())).collect(Collectors.toList());
+            .setFormulaSymbol(t.getFormulaSymbol().getCode())
+            .setWindowSize(t.getWindowSize())
+            .setBreachCount(t.getBreachCount())
+            .setAverageSeconds(t.getAverageSeconds())
+            .setCooldownSeconds(t.getCooldownSeconds())
+            .setAction(t.getAction() == null ? null : t.getAction().getCode())
+            .setActionNumber(t.getActionNumber())).collect(Collectors.toList());
     }
 
     /**
@@ -11,6 +11,8 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import io.shulie.takin.cloud.model.callback.*;
 import io.shulie.takin.cloud.app.service.JsonService;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer.Category;
 import io.shulie.takin.cloud.data.entity.ResourceEntity;
 import io.shulie.takin.cloud.app.service.CallbackService;
 import io.shulie.takin.cloud.app.service.ResourceService;
@@ -42,6 +44,8 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
     @javax.annotation.Resource
     CallbackService callbackService;
     @javax.annotation.Resource
+    HeartbeatCoalescer heartbeatCoalescer;
+    @javax.annotation.Resource
     ResourceService resourceService;
     @javax.annotation.Resource(name = "resourceExampleMapperServiceImpl")
     ResourceExampleMapperService resourceExampleMapper;
@@ -52,12 +56,14 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
 
     @Override
     public void onHeartbeat(long id) {
+        // 合并间隔内的心跳
+        if (!heartbeatCoalescer.tryAcquire(Category.RESOURCE_EXAMPLE, id)) {return;}
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         ResourceExampleHeartbeat context = new ResourceExampleHeartbeat();
         context.setData(getCallbackData(id, callbackUrl));
         // 创建回调
-        callbackService.create(callbackUrl.toString(), CallbackType.RESOURCE_EXAMPLE_HEARTBEAT, jsonService.writeValueAsString(context));
+        callbackService.create(callbackUrl.toString(), CallbackType.RESOURCE_EXAMPLE_HEARTBEAT, id, jsonService.writeValueAsString(context));
         // 记录事件
         resourceExampleEventMapper.save(new ResourceExampleEventEntity()
             .setContext("{}")
@@ -67,6 +73,7 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
 
     @Override
     public void onStart(long id) {
+        heartbeatCoalescer.reset(Category.RESOURCE_EXAMPLE, id);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         ResourceExampleStart context = new ResourceExampleStart();
@@ -87,6 +94,7 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
      */
     @Override
     public void onStop(long id) {
+        heartbeatCoalescer.reset(Category.RESOURCE_EXAMPLE, id);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         ResourceExampleStop context = new ResourceExampleStop();
@@ -129,6 +137,7 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
     }
 
     public void onSuccessful(long id) {
+        heartbeatCoalescer.reset(Category.RESOURCE_EXAMPLE, id);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         ResourceExampleSuccessful context = new ResourceExampleSuccessful();
@@ -152,6 +161,7 @@ public class ResourceExampleServiceImpl implements ResourceExampleService {
 
     @Override
     public void onError(long id, String errorMessage) {
+        heartbeatCoalescer.reset(Category.RESOURCE_EXAMPLE, id);
         // 基础信息准备
         StringBuilder callbackUrl = new StringBuilder();
         ResourceExample resourceExample = getCallbackData(id, callbackUrl);
@@ -18,6 +18,8 @@ import com.fasterxml.jackson.core.type.TypeReference;
 
 import io.shulie.takin.cloud.constant.Message;
 import io.shulie.takin.cloud.app.util.ResourceUtil;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer;
+import io.shulie.takin.cloud.app.util.HeartbeatCoalescer.Category;
 import io.shulie.takin.cloud.app.service.JsonService;
 import io.shulie.takin.cloud.model.resource.Resource;
 import io.shulie.takin.cloud.app.service.CommandService;
@@ -48,6 +50,8 @@ public class ResourceServiceImpl implements ResourceService {
     CommandService commandService;
     @javax.annotation.Resource
     WatchmanService watchmanService;
+    @javax.annotation.Resource
+    HeartbeatCoalescer heartbeatCoalescer;
     @javax.annotation.Resource(name = "resourceMapperServiceImpl")
     ResourceMapperService resourceMapper;
     @javax.annotation.Resource(name = "resourceExampleMapperServiceImpl")
@@ -251,6 +255,11 @@ public class ResourceServiceImpl implements ResourceService {
                     result.setStatusTime(dbResult.getTime().getTime());
                 }
             }
+            // 合并的心跳没有持久化,以内存中的时间为准
+            Long lastHeartbeat = heartbeatCoalescer.lastHeartbeat(Category.RESOURCE_EXAMPLE, resourceExampleId);
+            if (lastHeartbeat != null && (result.getStatusTime() == null || lastHeartbeat > result.getStatusTime())) {
+                result.setStatusTime(lastHeartbeat);
+            }
         }
         return result;
     }
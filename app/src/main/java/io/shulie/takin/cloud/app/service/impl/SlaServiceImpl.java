@@ -1,7 +1,9 @@
 package io.shulie.takin.cloud.app.service.impl;
 
+import java.util.Map;
 import java.util.Date;
 import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.ArrayList;
 import java.util.stream.Collectors;
 
@@ -10,6 +12,13 @@ import cn.hutool.core.collection.CollUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import io.shulie.takin.cloud.app.sla.SlaRule;
+import io.shulie.takin.cloud.app.sla.SlaRuleCache;
+import io.shulie.takin.cloud.app.sla.SlaRuleIndex;
+import io.shulie.takin.cloud.app.util.CollectorUtil;
+import io.shulie.takin.cloud.constant.enums.SlaAction;
+import io.shulie.takin.cloud.app.sla.SlaActionExecutor;
+import io.shulie.takin.cloud.app.sla.SlaWindowTracker;
 import io.shulie.takin.cloud.model.callback.Sla;
 import io.shulie.takin.cloud.data.entity.SlaEntity;
 import io.shulie.takin.cloud.app.service.SlaService;
@@ -45,6 +54,12 @@ public class SlaServiceImpl implements SlaService {
     ResourceService resourceService;
     @javax.annotation.Resource
     CallbackService callbackService;
+    @javax.annotation.Resource
+    SlaRuleCache slaRuleCache;
+    @javax.annotation.Resource
+    SlaWindowTracker slaWindowTracker;
+    @javax.annotation.Resource
+    SlaActionExecutor slaActionExecutor;
     @javax.annotation.Resource(name = "slaMapperServiceImpl")
     SlaMapperService slaMapper;
     @javax.annotation.Resource(name = "slaEventMapperServiceImpl")
@@ -70,6 +85,8 @@ public class SlaServiceImpl implements SlaService {
             .setFormulaTarget(target.getCode())
             .setFormulaSymbol(symbol.getCode())
         );
+        slaRuleCache.invalidate(pressureId);
+        slaWindowTracker.invalidate(pressureId);
     }
 
     /**
@@ -78,6 +95,8 @@ public class SlaServiceImpl implements SlaService {
     @Override
     public void event(Long pressureId, Long pressureExampleId, List<SlaEventEntity> slaEventEntityList) {
         if (CollUtil.isEmpty(slaEventEntityList)) {return;}
+        // 先执行动作,不等待控制台处理回调
+        Map<SlaEventEntity, SlaAction> actionMap = action(pressureId, slaEventEntityList);
         slaEventMapper.saveBatch(slaEventEntityList);
         PressureEntity pressureEntity = pressureService.entity(pressureId);
         PressureExampleEntity pressureExampleEntity = pressureService.exampleEntity(pressureExampleId);
@@ -93,6 +112,7 @@ public class SlaServiceImpl implements SlaService {
             .setFormulaTarget(t.getFormulaTarget())
             .setResourceExampleId(resourceExampleEntity.getId())
             .setResourceId(resourceExampleEntity.getResourceId())
+            .setAction(actionMap.getOrDefault(t, SlaAction.NOTIFY).getCode())
         ).collect(Collectors.toList());
         Sla sla = new Sla();
         sla.setTime(new Date());
@@ -104,90 +124,77 @@ public class SlaServiceImpl implements SlaService {
         log.info("SLA触发：{}", slaString);
     }
 
+    /**
+     * 执行触发的规则对应的动作
+     *
+     * @param pressureId         施压任务主键
+     * @param slaEventEntityList 触发记录
+     * @return 触发记录 → 实际执行的动作
+     */
+    private Map<SlaEventEntity, SlaAction> action(Long pressureId, List<SlaEventEntity> slaEventEntityList) {
+        Map<SlaEventEntity, SlaAction> result = new IdentityHashMap<>(slaEventEntityList.size());
+        SlaRuleIndex index = slaRuleCache.get(pressureId);
+        for (SlaEventEntity slaEvent : slaEventEntityList) {
+            SlaRule rule = index.rule(slaEvent.getSlaId());
+            if (rule == null || rule.getAction() == SlaAction.NOTIFY) {continue;}
+            result.put(slaEvent, slaActionExecutor.execute(pressureId, rule, slaEvent.getRef()));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public List<SlaEventEntity> check(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsInfoList) {
         // 业务结果
-        List<SlaEventEntity> result = new ArrayList<>();
+        List<SlaEventEntity> result = new ArrayList<>(0);
         // 获取条件
-        List<SlaEntity> slaEntityList = slaMapper.lambdaQuery().eq(SlaEntity::getPressureId, pressureId).list();
+        SlaRuleIndex index = slaRuleCache.get(pressureId);
+        if (index.isEmpty()) {return result;}
         // 逐个数据判断
         for (MetricsInfo metricsInfo : metricsInfoList) {
-            // 对应的条件列表
-            List<SlaEntity> conditionList = slaEntityList.stream()
-                .filter(t -> "".equals(t.getRef()) || t.getRef().equals(metricsInfo.getTransaction()))
-                .collect(Collectors.toList());
-            // 逐个条件判断
-            for (SlaEntity condition : conditionList) {
-                FormulaSymbol formulaSymbol = FormulaSymbol.of(condition.getFormulaSymbol());
-                FormulaTarget formulaTarget = FormulaTarget.of(condition.getFormulaTarget());
-                Double compareResult = compare(metricsInfo, formulaTarget, formulaSymbol, condition.getFormulaNumber());
-                // 符合校验则添加到业务结果里面
-                if (compareResult != null) {
-                    result.add(new SlaEventEntity()
-                        .setPressureId(pressureId)
-                        .setNumber(compareResult)
-                        .setRef(metricsInfo.getTransaction())
-                        .setSlaId(condition.getId())
-                        .setPressureExampleId(pressureExampleId)
-                        .setAttach(condition.getAttach())
-                        .setFormulaNumber(condition.getFormulaNumber())
-                        .setFormulaTarget(condition.getFormulaTarget())
-                        .setFormulaSymbol(condition.getFormulaSymbol()));
-                }
-            }
+            check(pressureId, pressureExampleId, metricsInfo, index.get(metricsInfo.getTransaction()), result);
+            check(pressureId, pressureExampleId, metricsInfo, index.wildcard(), result);
         }
         return result;
     }
 
     /**
-     * 算式是否成立
+     * 逐个条件判断
      *
-     * @param info   数据源信息
-     * @param target 算式目标
-     * @param symbol 算式符号
-     * @param value  比较值
-     * @return 成立则返回算式目标的实际值<br />
-     * 否则返回null
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param metricsInfo       指标数据
+     * @param ruleList          条件列表
+     * @param result            触发了SLA的记录
      */
-    Double compare(MetricsInfo info, FormulaTarget target, FormulaSymbol symbol, double value) {
-        Double targetValue = null;
-        switch (target) {
-            case RT:
-                targetValue = info.getRt();
-                break;
-            case SA:
-                targetValue = ((info.getSaCount() * 1.0) / info.getCount()) * 100;
-                break;
-            case TPS:
-                targetValue = (info.getCount() * 1.0) / 5;
-                break;
-            case SUCCESS_RATE:
-                targetValue = 100 - ((info.getFailCount() * 1.0) / info.getCount());
-                break;
-            default:
-                return targetValue;
-        }
-        // 进行数值比较
-        int compareResult = targetValue.compareTo(value);
-        switch (symbol) {
-            case EQUAL:
-                targetValue = compareResult == 0 ? targetValue : null;
-                break;
-            case GREATER_THAN:
-                targetValue = compareResult > 0 ? targetValue : null;
-                break;
-            case GREATER_THAN_OR_EQUAL_TO:
-                targetValue = compareResult >= 0 ? targetValue : null;
-                break;
-            case LESS_THAN:
-                targetValue = compareResult < 0 ? targetValue : null;
-                break;
-            case LESS_THAN_OR_EQUAL_TO:
-                targetValue = compareResult <= 0 ? targetValue : null;
-                break;
-            default:
-                return targetValue;
+    private void check(Long pressureId, Long pressureExampleId, MetricsInfo metricsInfo, SlaRule[] ruleList, List<SlaEventEntity> result) {
+        for (SlaRule rule : ruleList) {
+            double compareResult;
+            if (!rule.isSustained()) {
+                compareResult = rule.test(metricsInfo);
+            } else if (metricsInfo.getTimestamp() == null) {
+                continue;
+            } else {
+                // 跨窗口判断
+                compareResult = slaWindowTracker.offer(pressureId, rule, metricsInfo.getTransaction(),
+                    CollectorUtil.getTimeWindowTime(metricsInfo.getTimestamp()), rule.getTarget().applyAsDouble(metricsInfo));
+            }
+            // 符合校验则添加到业务结果里面
+            if (!Double.isNaN(compareResult)) {
+                SlaEntity condition = rule.getEntity();
+                result.add(new SlaEventEntity()
+                    .setPressureId(pressureId)
+                    .setNumber(compareResult)
+                    .setRef(metricsInfo.getTransaction())
+                    .setSlaId(condition.getId())
+                    .setPressureExampleId(pressureExampleId)
+                    .setAttach(condition.getAttach())
+                    .setFormulaNumber(condition.getFormulaNumber())
+                    .setFormulaTarget(condition.getFormulaTarget())
+                    .setFormulaSymbol(condition.getFormulaSymbol()));
+            }
         }
-        return targetValue;
     }
 }
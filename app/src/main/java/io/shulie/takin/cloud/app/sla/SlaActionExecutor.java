@@ -0,0 +1,122 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.Map;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.constant.enums.SlaAction;
+import io.shulie.takin.cloud.app.service.PressureService;
+import io.shulie.takin.cloud.model.response.PressureConfig;
+import io.shulie.takin.cloud.model.request.job.pressure.ModifyConfig;
+import io.shulie.takin.cloud.model.request.job.pressure.StartRequest.ThreadConfigInfo;
+
+/**
+ * SLA触发后的动作
+ * <p>在cloud内直接停止施压任务或降低TPS,不等待控制台处理回调</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+@Component
+public class SlaActionExecutor {
+    @javax.annotation.Resource
+    PressureService pressureService;
+
+    /**
+     * 同一个施压任务重复停止的间隔(毫秒)
+     */
+    @Value("${sla.action.stop-interval:60000}")
+    Long stopInterval;
+    /**
+     * 同一条规则重复限流的间隔(毫秒)
+     */
+    @Value("${sla.action.throttle-interval:30000}")
+    Long throttleInterval;
+
+    /**
+     * 施压任务主键(规则主键) → 最后一次执行的时间
+     */
+    private final Map<String, Long> lastExecute = new ConcurrentHashMap<>(16);
+
+    /**
+     * 执行动作
+     * <p>多个施压实例同时触发时只执行一次</p>
+     *
+     * @param pressureId 施压任务主键
+     * @param rule       触发的规则
+     * @param ref        触发的关键词
+     * @return 实际执行的动作
+     */
+    public SlaAction execute(long pressureId, SlaRule rule, String ref) {
+        SlaAction action = rule.getAction();
+        if (action == SlaAction.NOTIFY) {return action;}
+        long now = System.currentTimeMillis();
+        lastExecute.values().removeIf(t -> now - t >= Math.max(stopInterval, throttleInterval));
+        String key = action == SlaAction.STOP ? String.valueOf(pressureId) : pressureId + "(" + rule.getEntity().getId() + ")";
+        long interval = action == SlaAction.STOP ? stopInterval : throttleInterval;
+        boolean[] acquired = {false};
+        lastExecute.compute(key, (k, v) -> {
+            if (v != null && now - v < interval) {return v;}
+            acquired[0] = true;
+            return now;
+        });
+        if (!acquired[0]) {return SlaAction.NOTIFY;}
+        try {
+            if (action == SlaAction.STOP) {
+                pressureService.stop(pressureId);
+                log.info("SLA({}):停止施压任务{}", rule.getEntity().getId(), pressureId);
+            } else {
+                throttle(pressureId, rule, ref);
+            }
+            return action;
+        } catch (RuntimeException e) {
+            lastExecute.remove(key, now);
+            log.error("SLA({}):施压任务{}执行动作{}失败.\n", rule.getEntity().getId(), pressureId, action, e);
+            return SlaAction.NOTIFY;
+        }
+    }
+
+    /**
+     * 按比例降低TPS
+     * <p>关键词不是线程组时降低所有线程组</p>
+     */
+    private void throttle(long pressureId, SlaRule rule, String ref) {
+        Double actionNumber = rule.getEntity().getActionNumber();
+        double percent = actionNumber == null ? 50 : Math.max(0, Math.min(100, actionNumber));
+        List<PressureConfig> configList = pressureService.getConfig(pressureId, ref);
+        if (configList.isEmpty()) {configList = pressureService.getConfig(pressureId, null);}
+        Map<String, List<PressureConfig>> refMap = configList.stream()
+            .filter(t -> t.getContext() != null)
+            .collect(Collectors.groupingBy(PressureConfig::getRef));
+        refMap.forEach((k, v) -> {
+            int tps = v.stream().mapToInt(t -> t.getContext().getTps() == null ? 0 : t.getContext().getTps()).sum();
+            // 非TPS模式的线程组不处理
+            if (tps <= 0) {return;}
+            // 每个施压实例至少保留1
+            int target = Math.max(v.size(), (int)(tps * percent / 100));
+            if (target >= tps) {return;}
+            ThreadConfigInfo first = v.get(0).getContext();
+            ThreadConfigInfo context = new ThreadConfigInfo()
+                .setRef(k)
+                .setType(first.getType())
+                .setTps(target)
+                .setDuration(first.getDuration())
+                .setNumber(v.stream().mapToInt(t -> t.getContext().getNumber() == null ? 0 : t.getContext().getNumber()).sum())
+                .setGrowthStep(first.getGrowthStep())
+                .setGrowthTime(first.getGrowthTime());
+            ModifyConfig modifyConfig = new ModifyConfig();
+            modifyConfig.setPressureId(pressureId);
+            modifyConfig.setRef(k);
+            modifyConfig.setType(v.get(0).getType());
+            modifyConfig.setContext(context);
+            pressureService.modifyConfig(pressureId, modifyConfig);
+            log.info("SLA({}):施压任务{}的线程组{}的TPS从{}降低到{}", rule.getEntity().getId(), pressureId, k, tps, target);
+        });
+    }
+}
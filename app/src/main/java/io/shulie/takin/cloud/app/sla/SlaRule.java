@@ -0,0 +1,145 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.function.DoublePredicate;
+import java.util.function.ToDoubleFunction;
+
+import lombok.Getter;
+
+import io.shulie.takin.cloud.data.entity.SlaEntity;
+import io.shulie.takin.cloud.constant.CollectorConstants;
+import io.shulie.takin.cloud.constant.enums.SlaAction;
+import io.shulie.takin.cloud.constant.enums.FormulaSymbol;
+import io.shulie.takin.cloud.constant.enums.FormulaTarget;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 编译后的SLA规则
+ * <p>算式目标和算式符号在编译时解析为基本类型的取值函数和判断函数,判断时不创建对象</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Getter
+public final class SlaRule {
+    /**
+     * 原始规则
+     */
+    private final SlaEntity entity;
+    /**
+     * 取算式目标的实际值(无法计算时返回NaN)
+     */
+    private final ToDoubleFunction<MetricsInfo> target;
+    /**
+     * 判断实际值是否触发
+     */
+    private final DoublePredicate symbol;
+    /**
+     * 判断的窗口数(M)
+     */
+    private final int windowSize;
+    /**
+     * 触发的窗口数(N)
+     */
+    private final int breachCount;
+    /**
+     * 是否判断窗口内的平均值
+     */
+    private final boolean average;
+    /**
+     * 触发后的冷却时长(毫秒)
+     */
+    private final long cooldownMillis;
+    /**
+     * 触发后的动作
+     */
+    private final SlaAction action;
+
+    private SlaRule(SlaEntity entity, ToDoubleFunction<MetricsInfo> target, DoublePredicate symbol) {
+        this.entity = entity;
+        this.target = target;
+        this.symbol = symbol;
+        int averageSeconds = entity.getAverageSeconds() == null ? 0 : entity.getAverageSeconds();
+        this.average = averageSeconds > 0;
+        if (average) {
+            this.windowSize = (averageSeconds + CollectorConstants.SEND_TIME - 1) / CollectorConstants.SEND_TIME;
+            this.breachCount = windowSize;
+        } else {
+            this.windowSize = entity.getWindowSize() == null ? 1 : Math.max(1, entity.getWindowSize());
+            this.breachCount = entity.getBreachCount() == null ? windowSize : Math.max(1, Math.min(windowSize, entity.getBreachCount()));
+        }
+        this.cooldownMillis = entity.getCooldownSeconds() == null ? 0 : Math.max(0, entity.getCooldownSeconds()) * 1000L;
+        SlaAction slaAction = SlaAction.of(entity.getAction());
+        this.action = slaAction == null ? SlaAction.NOTIFY : slaAction;
+    }
+
+    /**
+     * 编译
+     *
+     * @param entity 规则
+     * @return 算式目标或算式符号无法识别时返回null
+     */
+    public static SlaRule compile(SlaEntity entity) {
+        FormulaTarget formulaTarget = FormulaTarget.of(entity.getFormulaTarget());
+        FormulaSymbol formulaSymbol = FormulaSymbol.of(entity.getFormulaSymbol());
+        if (formulaTarget == null || formulaSymbol == null || entity.getFormulaNumber() == null) {return null;}
+        ToDoubleFunction<MetricsInfo> target = target(formulaTarget);
+        DoublePredicate symbol = symbol(formulaSymbol, entity.getFormulaNumber());
+        if (target == null || symbol == null) {return null;}
+        return new SlaRule(entity, target, symbol);
+    }
+
+    /**
+     * 判断
+     *
+     * @param metrics 指标数据
+     * @return 触发时返回算式目标的实际值<br/>否则返回NaN
+     */
+    public double test(MetricsInfo metrics) {
+        double value = target.applyAsDouble(metrics);
+        return symbol.test(value) ? value : Double.NaN;
+    }
+
+    /**
+     * 是否需要跨窗口判断
+     * <p>否则与原有逻辑一致,每条数据独立判断</p>
+     *
+     * @return true/false
+     */
+    public boolean isSustained() {
+        return average || windowSize > 1 || cooldownMillis > 0;
+    }
+
+    private static ToDoubleFunction<MetricsInfo> target(FormulaTarget target) {
+        switch (target) {
+            case RT:
+                return t -> t.getRt() == null ? Double.NaN : t.getRt();
+            case SA:
+                return t -> t.getSaCount() == null || t.getCount() == null ? Double.NaN : ((t.getSaCount() * 1.0) / t.getCount()) * 100;
+            case TPS:
+                return t -> t.getCount() == null ? Double.NaN : (t.getCount() * 1.0) / 5;
+            case SUCCESS_RATE:
+                return t -> t.getFailCount() == null || t.getCount() == null ? Double.NaN : 100 - ((t.getFailCount() * 1.0) / t.getCount());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 与{@link Double#compare}的结果保持一致,NaN(无法计算)不触发
+     */
+    private static DoublePredicate symbol(FormulaSymbol symbol, double number) {
+        switch (symbol) {
+            case EQUAL:
+                return t -> !Double.isNaN(t) && Double.compare(t, number) == 0;
+            case GREATER_THAN:
+                return t -> !Double.isNaN(t) && Double.compare(t, number) > 0;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return t -> !Double.isNaN(t) && Double.compare(t, number) >= 0;
+            case LESS_THAN:
+                return t -> !Double.isNaN(t) && Double.compare(t, number) < 0;
+            case LESS_THAN_OR_EQUAL_TO:
+                return t -> !Double.isNaN(t) && Double.compare(t, number) <= 0;
+            default:
+                return null;
+        }
+    }
+}
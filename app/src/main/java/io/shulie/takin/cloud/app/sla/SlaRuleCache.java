@@ -0,0 +1,69 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.shulie.takin.cloud.data.entity.SlaEntity;
+import io.shulie.takin.cloud.data.service.SlaMapperService;
+
+/**
+ * SLA规则缓存
+ * <p>每个施压任务的规则只加载一次,规则变化时失效;其他节点修改的规则在过期后重新加载</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Component
+public class SlaRuleCache {
+    @javax.annotation.Resource(name = "slaMapperServiceImpl")
+    SlaMapperService slaMapper;
+
+    /**
+     * 过期时间(毫秒)
+     */
+    @Value("${sla.cache.expire:60000}")
+    Long expire;
+
+    private final Map<Long, Entry> cache = new ConcurrentHashMap<>(16);
+
+    /**
+     * 获取规则索引
+     *
+     * @param pressureId 施压任务主键
+     * @return 规则索引
+     */
+    public SlaRuleIndex get(long pressureId) {
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(pressureId);
+        if (entry == null || now - entry.loadTime >= expire) {
+            // 清理长时间没有使用的施压任务
+            cache.values().removeIf(t -> now - t.loadTime >= expire * 10);
+            // 同一个施压任务同时只加载一次
+            entry = cache.compute(pressureId, (k, v) -> v == null || now - v.loadTime >= expire
+                ? new Entry(SlaRuleIndex.of(slaMapper.lambdaQuery().eq(SlaEntity::getPressureId, pressureId).list()), now)
+                : v);
+        }
+        return entry.index;
+    }
+
+    /**
+     * 失效
+     *
+     * @param pressureId 施压任务主键
+     */
+    public void invalidate(long pressureId) {
+        cache.remove(pressureId);
+    }
+
+    private static class Entry {
+        private final SlaRuleIndex index;
+        private final long loadTime;
+
+        private Entry(SlaRuleIndex index, long loadTime) {
+            this.index = index;
+            this.loadTime = loadTime;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import io.shulie.takin.cloud.data.entity.SlaEntity;
+
+/**
+ * 施压任务的SLA规则索引
+ * <p>按关键词分组,关键词为空的规则适用于所有关键词;创建后不可修改</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public final class SlaRuleIndex {
+    private static final SlaRule[] EMPTY = new SlaRule[0];
+    /**
+     * 没有规则
+     */
+    public static final SlaRuleIndex NONE = new SlaRuleIndex(Collections.emptyMap(), EMPTY, Collections.emptyMap());
+
+    private final Map<String, SlaRule[]> refMap;
+    private final SlaRule[] wildcard;
+    private final Map<Long, SlaRule> idMap;
+
+    private SlaRuleIndex(Map<String, SlaRule[]> refMap, SlaRule[] wildcard, Map<Long, SlaRule> idMap) {
+        this.refMap = refMap;
+        this.wildcard = wildcard;
+        this.idMap = idMap;
+    }
+
+    /**
+     * 编译并创建索引
+     * <p>无法识别的规则会被忽略</p>
+     *
+     * @param entityList 规则
+     * @return 索引
+     */
+    public static SlaRuleIndex of(List<SlaEntity> entityList) {
+        if (entityList == null || entityList.isEmpty()) {return NONE;}
+        Map<String, List<SlaRule>> group = new HashMap<>(entityList.size());
+        List<SlaRule> wildcardList = new ArrayList<>();
+        Map<Long, SlaRule> idMap = new HashMap<>(entityList.size() * 2);
+        for (SlaEntity entity : entityList) {
+            SlaRule rule = SlaRule.compile(entity);
+            if (rule == null) {continue;}
+            String ref = entity.getRef();
+            if (ref == null || ref.isEmpty()) {
+                wildcardList.add(rule);
+            } else {
+                group.computeIfAbsent(ref, t -> new ArrayList<>(2)).add(rule);
+            }
+            idMap.put(entity.getId(), rule);
+        }
+        if (idMap.isEmpty()) {return NONE;}
+        Map<String, SlaRule[]> refMap = new HashMap<>(group.size() * 2);
+        group.forEach((k, v) -> refMap.put(k, v.toArray(EMPTY)));
+        return new SlaRuleIndex(refMap, wildcardList.toArray(EMPTY), idMap);
+    }
+
+    /**
+     * 关键词对应的规则
+     *
+     * @param ref 关键词
+     * @return 规则(不含通配规则)
+     */
+    public SlaRule[] get(String ref) {
+        SlaRule[] rules = ref == null ? null : refMap.get(ref);
+        return rules == null ? EMPTY : rules;
+    }
+
+    /**
+     * 适用于所有关键词的规则
+     *
+     * @return 规则
+     */
+    public SlaRule[] wildcard() {
+        return wildcard;
+    }
+
+    /**
+     * 主键对应的规则
+     *
+     * @param id 规则主键
+     * @return 规则(不存在或无法识别时返回null)
+     */
+    public SlaRule rule(Long id) {
+        return idMap.get(id);
+    }
+
+    public boolean isEmpty() {
+        return idMap.isEmpty();
+    }
+
+    public int size() {
+        return idMap.size();
+    }
+}
@@ -0,0 +1,102 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.Arrays;
+
+import io.shulie.takin.cloud.constant.CollectorConstants;
+
+/**
+ * 单个(施压任务, 规则, 关键词)的滚动窗口状态
+ * <p>按窗口序号取模定位槽位;同一窗口内多个施压实例的数据合并到同一槽位,任一实例触发即视为该窗口触发</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class SlaWindowState {
+    private static final long WINDOW_MILLIS = CollectorConstants.SEND_TIME * 1000L;
+
+    private final long[] time;
+    private final boolean[] breached;
+    private final double[] sum;
+    private final int[] samples;
+    /**
+     * 冷却结束的窗口时间
+     */
+    private long cooldownUntil = Long.MIN_VALUE;
+    /**
+     * 最后一次触发的窗口时间
+     */
+    private long lastFired = Long.MIN_VALUE;
+    /**
+     * 最后一次更新的时间
+     */
+    long lastUpdate;
+
+    SlaWindowState(int windowSize) {
+        time = new long[windowSize];
+        breached = new boolean[windowSize];
+        sum = new double[windowSize];
+        samples = new int[windowSize];
+        Arrays.fill(time, Long.MIN_VALUE);
+    }
+
+    /**
+     * 记录一个窗口的数据并判断
+     *
+     * @param rule       规则
+     * @param windowTime 窗口时间
+     * @param value      算式目标的实际值(NaN表示无法计算)
+     * @return 触发时返回实际值(平均值规则返回平均值)<br/>否则返回NaN
+     */
+    synchronized double offer(SlaRule rule, long windowTime, double value) {
+        lastUpdate = System.currentTimeMillis();
+        if (Double.isNaN(value)) {return Double.NaN;}
+        int slot = (int)Math.floorMod(windowTime / WINDOW_MILLIS, (long)time.length);
+        if (time[slot] != windowTime) {
+            // 槽位中是更新的窗口,数据过旧
+            if (time[slot] > windowTime) {return Double.NaN;}
+            time[slot] = windowTime;
+            breached[slot] = false;
+            sum[slot] = 0;
+            samples[slot] = 0;
+        }
+        breached[slot] |= rule.getSymbol().test(value);
+        sum[slot] += value;
+        samples[slot]++;
+        // 同一窗口只触发一次,冷却期内不触发
+        if (windowTime == lastFired || windowTime < cooldownUntil) {return Double.NaN;}
+        double result = rule.isAverage() ? average(rule, windowTime) : breach(rule, slot, windowTime, value);
+        if (!Double.isNaN(result)) {
+            lastFired = windowTime;
+            cooldownUntil = windowTime + rule.getCooldownMillis();
+        }
+        return result;
+    }
+
+    /**
+     * 最近M个窗口中有N个窗口触发(当前窗口必须触发)
+     */
+    private double breach(SlaRule rule, int slot, long windowTime, double value) {
+        if (!breached[slot]) {return Double.NaN;}
+        // 冷却结束前的窗口不再计入
+        long from = Math.max(windowTime - (time.length - 1) * WINDOW_MILLIS, cooldownUntil);
+        int count = 0;
+        for (int i = 0; i < time.length; i++) {
+            if (breached[i] && time[i] >= from && time[i] <= windowTime) {count++;}
+        }
+        return count >= rule.getBreachCount() ? value : Double.NaN;
+    }
+
+    /**
+     * 最近M个窗口的平均值(每个窗口先取均值,窗口不完整时不判断)
+     */
+    private double average(SlaRule rule, long windowTime) {
+        long from = windowTime - (time.length - 1) * WINDOW_MILLIS;
+        if (from < cooldownUntil) {return Double.NaN;}
+        double total = 0;
+        for (int i = 0; i < time.length; i++) {
+            if (time[i] < from || time[i] > windowTime || samples[i] == 0) {return Double.NaN;}
+            total += sum[i] / samples[i];
+        }
+        double value = total / time.length;
+        return rule.getSymbol().test(value) ? value : Double.NaN;
+    }
+}
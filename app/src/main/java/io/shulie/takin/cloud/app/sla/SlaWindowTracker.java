@@ -0,0 +1,65 @@
+package io.shulie.takin.cloud.app.sla;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * 持续触发的SLA规则的窗口状态
+ * <p>按(施压任务, 规则, 关键词)记录最近M个窗口的判断结果,长时间没有数据的施压任务会被清理</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Component
+public class SlaWindowTracker {
+    /**
+     * 没有数据后保留的时长(毫秒)
+     */
+    @Value("${sla.window.idle:600000}")
+    Long idle;
+
+    /**
+     * 施压任务主键 → 规则主键@关键词 → 窗口状态
+     */
+    private final Map<Long, Map<String, SlaWindowState>> taskMap = new ConcurrentHashMap<>(16);
+    private volatile long lastClean;
+
+    /**
+     * 记录并判断
+     *
+     * @param pressureId  施压任务主键
+     * @param rule        规则
+     * @param transaction 关键词
+     * @param windowTime  窗口时间
+     * @param value       算式目标的实际值
+     * @return 触发时返回实际值(平均值规则返回平均值)<br/>否则返回NaN
+     */
+    public double offer(long pressureId, SlaRule rule, String transaction, long windowTime, double value) {
+        clean();
+        SlaWindowState state = taskMap.computeIfAbsent(pressureId, t -> new ConcurrentHashMap<>(16))
+            .computeIfAbsent(rule.getEntity().getId() + "@" + transaction, t -> new SlaWindowState(rule.getWindowSize()));
+        return state.offer(rule, windowTime, value);
+    }
+
+    /**
+     * 清除施压任务的窗口状态
+     *
+     * @param pressureId 施压任务主键
+     */
+    public void invalidate(long pressureId) {
+        taskMap.remove(pressureId);
+    }
+
+    /**
+     * 清理长时间没有数据的状态(最多每个保留时长执行一次)
+     */
+    private void clean() {
+        long now = System.currentTimeMillis();
+        if (now - lastClean < idle) {return;}
+        lastClean = now;
+        taskMap.values().forEach(t -> t.values().removeIf(c -> now - c.lastUpdate >= idle));
+        taskMap.values().removeIf(Map::isEmpty);
+    }
+}
@@ -0,0 +1,111 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.Map;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * 心跳合并
+ * <p>在内存中记录每个实例最后一次心跳的时间,每个实例在一个间隔内最多持久化(记录事件并回调)一次</p>
+ * <p>状态变化时清除记录,之后的第一次心跳立即持久化;长时间没有心跳的记录定期清理</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Component
+public class HeartbeatCoalescer {
+    /**
+     * 持久化间隔(毫秒)
+     * <p>小于等于0时不合并</p>
+     */
+    @Value("${heartbeat.coalesce-interval:10000}")
+    Long interval;
+    /**
+     * 没有心跳的记录保留时长(毫秒)
+     * <p>不小于持久化间隔</p>
+     */
+    @Value("${heartbeat.idle:600000}")
+    Long idle;
+
+    /**
+     * 实例类型
+     */
+    public enum Category {
+        /**
+         * 施压任务实例
+         */
+        PRESSURE_EXAMPLE,
+        /**
+         * 资源实例
+         */
+        RESOURCE_EXAMPLE,
+    }
+
+    private final Map<Category, Map<Long, State>> stateMap = new EnumMap<>(Category.class);
+    private volatile long lastClean;
+
+    public HeartbeatCoalescer() {
+        for (Category category : Category.values()) {
+            stateMap.put(category, new ConcurrentHashMap<>(16));
+        }
+    }
+
+    /**
+     * 记录心跳
+     *
+     * @param category 实例类型
+     * @param id       实例主键
+     * @return true - 需要持久化
+     */
+    public boolean tryAcquire(Category category, long id) {
+        long now = System.currentTimeMillis();
+        clean(now);
+        State state = stateMap.get(category).computeIfAbsent(id, t -> new State());
+        state.lastHeartbeat = now;
+        if (interval <= 0) {return true;}
+        long previous = state.lastPersist.get();
+        return (previous == 0 || now - previous >= interval) && state.lastPersist.compareAndSet(previous, now);
+    }
+
+    /**
+     * 状态变化
+     * <p>之后的第一次心跳立即持久化</p>
+     *
+     * @param category 实例类型
+     * @param id       实例主键
+     */
+    public void reset(Category category, long id) {
+        stateMap.get(category).remove(id);
+    }
+
+    /**
+     * 最后一次心跳的时间
+     *
+     * @param category 实例类型
+     * @param id       实例主键
+     * @return 时间戳<br/>本节点没有收到过心跳时返回null
+     */
+    public Long lastHeartbeat(Category category, long id) {
+        State state = stateMap.get(category).get(id);
+        return state == null ? null : state.lastHeartbeat;
+    }
+
+    /**
+     * 清理长时间没有心跳的记录(最多每个保留时长执行一次)
+     * <p>没有状态变化就停止的实例不会被重置,只能按心跳时间清理</p>
+     */
+    private void clean(long now) {
+        long retain = Math.max(idle, interval);
+        if (now - lastClean < retain) {return;}
+        lastClean = now;
+        stateMap.values().forEach(t -> t.values().removeIf(c -> now - c.lastHeartbeat >= retain));
+    }
+
+    private static class State {
+        private volatile long lastHeartbeat;
+        private final AtomicLong lastPersist = new AtomicLong();
+    }
+}
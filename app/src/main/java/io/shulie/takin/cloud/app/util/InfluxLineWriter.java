@@ -0,0 +1,527 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FilterOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.PostConstruct;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * InfluxDB行协议写入
+ * <p>按表名聚合成批,行协议直接编码到池化的直接内存缓冲区,由多个写线程gzip压缩后POST到/write接口</p>
+ * <p>批次达到条数上限、缓冲区写满或超过等待时长时提交;写入失败按退避时长重试</p>
+ * <p>重试后仍失败或队列已满的批次转入{@link InfluxSpool}</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+@Component
+public class InfluxLineWriter {
+    /**
+     * 连接地址
+     */
+    @Value("${spring.influxdb.url:}")
+    String influxdbUrl;
+    /**
+     * 用户名
+     */
+    @Value("${spring.influxdb.user:}")
+    String userName;
+    /**
+     * 密码
+     */
+    @Value("${spring.influxdb.password:}")
+    String password;
+    /**
+     * 数据库库名
+     */
+    @Value("${spring.influxdb.database:}")
+    String database;
+    /**
+     * 是否启用(不启用时使用{@link InfluxWriter})
+     */
+    @Getter
+    @Value("${spring.influxdb.line-writer.enabled:false}")
+    boolean enabled;
+    /**
+     * 写线程数
+     */
+    @Value("${spring.influxdb.line-writer.threads:2}")
+    Integer threads;
+    /**
+     * 单批最大条数
+     */
+    @Value("${spring.influxdb.line-writer.batch-size:5000}")
+    Integer batchSize;
+    /**
+     * 单批最长等待时长(毫秒)
+     */
+    @Value("${spring.influxdb.line-writer.linger-millis:200}")
+    Long lingerMillis;
+    /**
+     * 单个缓冲区大小(字节)
+     */
+    @Value("${spring.influxdb.line-writer.buffer-bytes:1048576}")
+    Integer bufferBytes;
+    /**
+     * 缓冲区池的大小
+     */
+    @Value("${spring.influxdb.line-writer.pool-size:16}")
+    Integer poolSize;
+    /**
+     * 待写入批次的队列长度
+     */
+    @Value("${spring.influxdb.line-writer.queue-size:32}")
+    Integer queueSize;
+    /**
+     * 最大重试次数
+     */
+    @Value("${spring.influxdb.line-writer.max-retries:3}")
+    Integer maxRetries;
+    /**
+     * 首次重试的退避时长(毫秒),之后每次翻倍
+     */
+    @Value("${spring.influxdb.line-writer.retry-backoff-millis:200}")
+    Long retryBackoffMillis;
+    /**
+     * 是否gzip压缩
+     */
+    @Value("${spring.influxdb.line-writer.gzip:true}")
+    boolean gzip;
+    /**
+     * 连接超时(毫秒)
+     */
+    @Value("${spring.influxdb.line-writer.connect-timeout:3000}")
+    Integer connectTimeout;
+    /**
+     * 读超时(毫秒)
+     */
+    @Value("${spring.influxdb.line-writer.read-timeout:10000}")
+    Integer readTimeout;
+
+    private URL writeUrl;
+    private ExecutorService executor;
+    private BlockingQueue<Batch> queue;
+    private BlockingQueue<ByteBuffer> bufferPool;
+    private volatile boolean running;
+    /**
+     * 未提交的批次(按表名)
+     */
+    private final Map<String, Batch> openBatch = new HashMap<>(8);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    @javax.annotation.Resource
+    InfluxSpool influxSpool;
+
+    private final LongAdder points = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder rejectedBatches = new LongAdder();
+    private final LongAdder rejectedPoints = new LongAdder();
+    private final LongAdder droppedPoints = new LongAdder();
+    private final LongAdder spilledPoints = new LongAdder();
+    private final LongAdder poolMiss = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    /**
+     * 上次统计时的快照(用于计算速率)
+     */
+    private long lastSnapshotNanos = System.nanoTime();
+    private long lastPoints;
+    private long lastBytes;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled || CharSequenceUtil.isBlank(influxdbUrl)) {
+            enabled = false;
+            return;
+        }
+        String query = CharSequenceUtil.format("db={}&precision=ms&u={}&p={}",
+            URLEncoder.encode(database, "UTF-8"), URLEncoder.encode(userName, "UTF-8"), URLEncoder.encode(password, "UTF-8"));
+        writeUrl = new URL(CharSequenceUtil.removeSuffix(influxdbUrl, "/") + "/write?" + query);
+        queue = new ArrayBlockingQueue<>(queueSize);
+        bufferPool = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            bufferPool.add(ByteBuffer.allocateDirect(bufferBytes));
+        }
+        running = true;
+        executor = Executors.newFixedThreadPool(threads + 1, new NamedThreadFactory("InfluxLineWriter-", true));
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::sendLoop);
+        }
+        executor.execute(this::lingerLoop);
+    }
+
+    /**
+     * 写入
+     *
+     * @param measurement  表名
+     * @param lineProtocol 行协议(毫秒精度,每行以换行结尾)
+     */
+    public void write(String measurement, CharSequence lineProtocol) {
+        List<Batch> sealed = new ArrayList<>(1);
+        synchronized (openBatch) {
+            int start = 0;
+            int length = lineProtocol.length();
+            while (start < length) {
+                int end = start;
+                while (end < length && lineProtocol.charAt(end) != '\n') {end++;}
+                // 包含换行符
+                end = Math.min(end + 1, length);
+                append(measurement, lineProtocol, start, end, sealed);
+                start = end;
+            }
+        }
+        sealed.forEach(this::enqueue);
+    }
+
+    /**
+     * 追加一行
+     */
+    private void append(String measurement, CharSequence lines, int start, int end, List<Batch> sealed) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Batch batch = openBatch.computeIfAbsent(measurement, t -> new Batch(t, acquire()));
+            ByteBuffer buffer = batch.buffer;
+            int position = buffer.position();
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(lines, start, end), buffer, true);
+            if (!result.isOverflow()) {result = encoder.flush(buffer);}
+            if (!result.isOverflow()) {
+                batch.points++;
+                if (batch.points >= batchSize) {sealed.add(openBatch.remove(measurement));}
+                return;
+            }
+            // 缓冲区写满,回退本行并提交当前批次
+            buffer.position(position);
+            openBatch.remove(measurement);
+            if (batch.points > 0) {
+                sealed.add(batch);
+            } else {
+                release(buffer);
+                break;
+            }
+        }
+        droppedPoints.increment();
+        log.warn("InfluxDB行协议单行超出缓冲区大小({}字节),已丢弃", bufferBytes);
+    }
+
+    /**
+     * 提交超过等待时长的批次
+     */
+    private void lingerLoop() {
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (running) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.max(1, lingerMillis / 4));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            flush(false, System.nanoTime() - lingerNanos);
+        }
+    }
+
+    /**
+     * 提交批次
+     *
+     * @param all           是否提交全部批次
+     * @param createdBefore 只提交在该时间(纳秒)之前创建的批次
+     */
+    private void flush(boolean all, long createdBefore) {
+        List<Batch> sealed = new ArrayList<>();
+        synchronized (openBatch) {
+            Iterator<Batch> iterator = openBatch.values().iterator();
+            while (iterator.hasNext()) {
+                Batch batch = iterator.next();
+                if (all || batch.createNanos - createdBefore <= 0) {
+                    sealed.add(batch);
+                    iterator.remove();
+                }
+            }
+        }
+        sealed.forEach(this::enqueue);
+    }
+
+    /**
+     * 放入待写入队列
+     * <p>队列满时转入预写日志,不阻塞调用方</p>
+     */
+    private void enqueue(Batch batch) {
+        if (!queue.offer(batch)) {
+            ByteBuffer data = batch.buffer;
+            data.flip();
+            spill(batch, data);
+            release(data);
+        }
+    }
+
+    /**
+     * 转入预写日志
+     */
+    private void spill(Batch batch, ByteBuffer data) {
+        if (influxSpool.append(data.duplicate())) {
+            spilledPoints.add(batch.points);
+        } else {
+            droppedPoints.add(batch.points);
+        }
+    }
+
+    /**
+     * 写线程
+     */
+    private void sendLoop() {
+        byte[] chunk = new byte[64 * 1024];
+        while (running || !queue.isEmpty()) {
+            Batch batch;
+            try {
+                batch = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == null) {continue;}
+            try {
+                send(batch, chunk);
+            } finally {
+                release(batch.buffer);
+            }
+        }
+    }
+
+    /**
+     * 发送单个批次(含重试)
+     */
+    private void send(Batch batch, byte[] chunk) {
+        ByteBuffer data = batch.buffer;
+        data.flip();
+        long backoff = retryBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                int status = post(data.duplicate(), chunk);
+                if (status / 100 == 2) {
+                    long cost = System.nanoTime() - start;
+                    latencyNanos.add(cost);
+                    maxLatencyNanos.accumulateAndGet(cost, Math::max);
+                    batches.increment();
+                    points.add(batch.points);
+                    bytes.add(data.remaining());
+                    return;
+                }
+                // 4xx(限流除外)是数据本身的问题,重试和转入预写日志都无意义
+                if (status / 100 == 4 && status != 429) {
+                    rejectedBatches.increment();
+                    rejectedPoints.add(batch.points);
+                    log.error("InfluxDB写入被拒绝:{},表:{},条数:{}", status, batch.measurement, batch.points);
+                    return;
+                }
+                log.warn("InfluxDB写入失败:{},表:{},第{}次", status, batch.measurement, attempt + 1);
+            } catch (IOException e) {
+                log.warn("InfluxDB写入异常,表:{},第{}次:{}", batch.measurement, attempt + 1, e.getMessage());
+            }
+            if (attempt >= maxRetries) {break;}
+            retries.increment();
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoff = backoff * 2;
+        }
+        // 可重试的失败(IO异常、5xx、429)用完重试次数后转入预写日志
+        failedBatches.increment();
+        spill(batch, data);
+    }
+
+    /**
+     * POST到/write接口
+     *
+     * @return HTTP状态码
+     */
+    private int post(ByteBuffer data, byte[] chunk) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)writeUrl.openConnection();
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setChunkedStreamingMode(chunk.length);
+            connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+            if (gzip) {connection.setRequestProperty("Content-Encoding", "gzip");}
+            CountingOutputStream counting = new CountingOutputStream(connection.getOutputStream());
+            try (OutputStream out = gzip ? new GZIPOutputStream(counting, chunk.length) : counting) {
+                while (data.hasRemaining()) {
+                    int length = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+            sentBytes.add(counting.count);
+            int status = connection.getResponseCode();
+            // 读完响应以便复用连接
+            try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (in != null) {
+                    while (in.read(chunk) >= 0) {
+                        // 丢弃响应内容
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * 从池中取出缓冲区
+     * <p>池为空时临时分配,归还时池满则丢弃</p>
+     */
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            poolMiss.increment();
+            buffer = ByteBuffer.allocateDirect(bufferBytes);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (!bufferPool.offer(buffer)) {
+            log.debug("InfluxDB行协议缓冲区池已满,释放临时缓冲区");
+        }
+    }
+
+    /**
+     * 统计信息
+     *
+     * @return 写入速率、延时、重试、拒绝、丢弃等计数
+     */
+    public synchronized Map<String, Object> statistics() {
+        long now = System.nanoTime();
+        long pointCount = points.sum();
+        long byteCount = bytes.sum();
+        double seconds = Math.max(1, now - lastSnapshotNanos) / 1e9;
+        long batchCount = batches.sum();
+        Map<String, Object> result = new HashMap<>(32);
+        result.put("enabled", enabled);
+        result.put("points", pointCount);
+        result.put("bytes", byteCount);
+        result.put("sentBytes", sentBytes.sum());
+        result.put("pointsPerSecond", (long)((pointCount - lastPoints) / seconds));
+        result.put("bytesPerSecond", (long)((byteCount - lastBytes) / seconds));
+        result.put("batches", batchCount);
+        result.put("retries", retries.sum());
+        result.put("failedBatches", failedBatches.sum());
+        result.put("rejectedBatches", rejectedBatches.sum());
+        result.put("rejectedPoints", rejectedPoints.sum());
+        result.put("droppedPoints", droppedPoints.sum());
+        result.put("spilledPoints", spilledPoints.sum());
+        result.put("poolMiss", poolMiss.sum());
+        result.put("queueDepth", queue == null ? 0 : queue.size());
+        result.put("avgLatencyMillis", batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyNanos.sum() / batchCount));
+        result.put("maxLatencyMillis", TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+        lastSnapshotNanos = now;
+        lastPoints = pointCount;
+        lastBytes = byteCount;
+        return result;
+    }
+
+    /**
+     * 停止时提交所有批次并等待写完
+     */
+    @PreDestroy
+    public void destroy() {
+        if (!enabled) {return;}
+        flush(true, 0);
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(readTimeout * 2L, TimeUnit.MILLISECONDS)) {
+                log.warn("InfluxDB行协议写入未能在限定时间内完成,剩余批次:{}", queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 未写完的批次转入预写日志
+        List<Batch> remain = new ArrayList<>(queue.size());
+        queue.drainTo(remain);
+        remain.forEach(t -> {
+            t.buffer.flip();
+            spill(t, t.buffer);
+        });
+    }
+
+    /**
+     * 批次
+     */
+    private static final class Batch {
+        private final String measurement;
+        private final ByteBuffer buffer;
+        private final long createNanos = System.nanoTime();
+        private int points;
+
+        private Batch(String measurement, ByteBuffer buffer) {
+            this.measurement = measurement;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 统计写出字节数
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {super(out);}
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
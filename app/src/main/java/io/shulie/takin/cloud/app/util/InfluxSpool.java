@@ -0,0 +1,422 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.io.File;
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.PostConstruct;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import cn.hutool.core.text.CharSequenceUtil;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * InfluxDB写入失败数据的本地预写日志
+ * <p>写入失败或积压的行协议数据追加到内存映射的分段文件中,InfluxDB恢复后按顺序回放</p>
+ * <p>记录格式:长度(4字节) CRC32(4字节) 行协议(UTF-8);长度最后写入,未写完的记录长度为0</p>
+ * <p>正在写的分段回放到写入位置为止,写满后才封存</p>
+ * <p>总大小超过上限时丢弃最旧的分段</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Slf4j
+@Component
+public class InfluxSpool {
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * 是否启用
+     */
+    @Getter
+    @Value("${spring.influxdb.spool.enabled:true}")
+    boolean enabled;
+    /**
+     * 存储目录
+     */
+    @Value("${spring.influxdb.spool.dir:${user.home}/takin-cloud/influx-spool}")
+    String dir;
+    /**
+     * 单个分段的大小(字节)
+     */
+    @Value("${spring.influxdb.spool.segment-bytes:67108864}")
+    Integer segmentBytes;
+    /**
+     * 总大小上限(字节)
+     */
+    @Value("${spring.influxdb.spool.max-bytes:1073741824}")
+    Long maxBytes;
+    /**
+     * 每次回放的最大记录数
+     */
+    @Getter
+    @Value("${spring.influxdb.spool.replay-records:20}")
+    Integer replayRecords;
+
+    private Path directory;
+    private final Object lock = new Object();
+    /**
+     * 待回放的分段(不含正在写的分段)
+     */
+    private final Deque<Long> sealed = new ArrayDeque<>();
+    private long activeSeq;
+    private MappedByteBuffer active;
+    /**
+     * 回放进度
+     */
+    private long replaySeq = -1;
+    /**
+     * 回放中的分段(可能就是正在写的分段)
+     */
+    private MappedByteBuffer replay;
+    private MappedByteBuffer checkpoint;
+
+    private final LongAdder spooledRecords = new LongAdder();
+    private final LongAdder replayedRecords = new LongAdder();
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder droppedSegments = new LongAdder();
+    private final LongAdder corruptRecords = new LongAdder();
+    private final LongAdder rejectedRecords = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {return;}
+        directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        // 恢复上次未回放完的分段
+        List<Long> exists = new ArrayList<>();
+        File[] files = directory.toFile().listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    exists.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("忽略无法识别的预写日志文件:{}", name);
+                }
+            }
+        }
+        exists.sort(Long::compare);
+        sealed.addAll(exists);
+        activeSeq = exists.isEmpty() ? 0 : exists.get(exists.size() - 1) + 1;
+        checkpoint = map(directory.resolve(CHECKPOINT), 16, FileChannel.MapMode.READ_WRITE);
+        if (!sealed.isEmpty()) {
+            log.info("InfluxDB预写日志:发现{}个待回放的分段", sealed.size());
+        }
+    }
+
+    /**
+     * 追加
+     *
+     * @param records 行协议(毫秒精度)
+     * @return false - 未启用或单条记录超出分段大小
+     */
+    public boolean append(String records) {
+        return append(ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 追加
+     *
+     * @param records 行协议(毫秒精度,UTF-8)
+     * @return false - 未启用或单条记录超出分段大小
+     */
+    public boolean append(ByteBuffer records) {
+        if (!enabled) {return false;}
+        int length = records.remaining();
+        if (length == 0) {return true;}
+        if (length + HEADER_BYTES > segmentBytes) {
+            droppedRecords.increment();
+            log.error("InfluxDB预写日志:单条记录{}字节超出分段大小,已丢弃", length);
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(records.duplicate());
+        synchronized (lock) {
+            try {
+                if (active == null || active.remaining() < length + HEADER_BYTES) {rotate();}
+                int position = active.position();
+                active.position(position + HEADER_BYTES);
+                active.put(records);
+                active.putInt(position + 4, (int)crc.getValue());
+                // 长度最后写入
+                active.putInt(position, length);
+                spooledRecords.increment();
+                return true;
+            } catch (IOException e) {
+                droppedRecords.increment();
+                log.error("InfluxDB预写日志写入失败.\n", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 按顺序回放
+     * <p>遇到可重试的失败即停止,下次从失败的记录继续;被拒绝的记录跳过,不阻塞之后的记录</p>
+     *
+     * @param sink 写入InfluxDB,返回写入结果
+     * @return 本次回放的记录数
+     */
+    public int replay(Function<String, WriteResult> sink) {
+        if (!enabled) {return 0;}
+        int count = 0;
+        while (count < replayRecords) {
+            String records;
+            int next;
+            synchronized (lock) {
+                if (!openReplay()) {break;}
+                int offset = (int)checkpoint.getLong(8);
+                // 正在写的分段只回放到写入位置
+                int limit = replay == active ? active.position() : replay.capacity();
+                if (replay == active && offset >= limit) {
+                    closeReplay();
+                    break;
+                }
+                int length = offset + HEADER_BYTES <= limit ? replay.getInt(offset) : 0;
+                if (length <= 0 || offset + HEADER_BYTES + length > limit) {
+                    finishReplay();
+                    continue;
+                }
+                byte[] data = new byte[length];
+                ByteBuffer view = replay.duplicate();
+                view.position(offset + HEADER_BYTES);
+                view.get(data);
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int)crc.getValue() != replay.getInt(offset + 4)) {
+                    // 长度也不可信,放弃分段剩余部分
+                    corruptRecords.increment();
+                    log.error("InfluxDB预写日志:分段{}在{}处校验失败,跳过剩余部分", replaySeq, offset);
+                    finishReplay();
+                    continue;
+                }
+                records = new String(data, StandardCharsets.UTF_8);
+                next = offset + HEADER_BYTES + length;
+            }
+            WriteResult result = sink.apply(records);
+            if (result == WriteResult.RETRY) {break;}
+            if (result == WriteResult.REJECTED) {
+                rejectedRecords.increment();
+                log.error("InfluxDB预写日志:分段{}的记录被拒绝,已跳过:{}", replaySeq, CharSequenceUtil.sub(records, 0, 256));
+            }
+            synchronized (lock) {
+                // 回放期间分段可能因超出上限被丢弃
+                if (replay != null) {checkpoint.putLong(8, next);}
+            }
+            if (result == WriteResult.SUCCESS) {replayedRecords.increment();}
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 打开待回放的分段
+     *
+     * @return false - 没有需要回放的数据
+     */
+    private boolean openReplay() {
+        if (replay != null) {return true;}
+        // 没有已封存的分段时,直接回放正在写的分段
+        if (sealed.isEmpty()) {
+            if (active == null) {return false;}
+            resetCheckpoint(activeSeq);
+            if (checkpoint.getLong(8) >= active.position()) {return false;}
+            replay = active;
+            replaySeq = activeSeq;
+            return true;
+        }
+        try {
+            long seq = sealed.peekFirst();
+            replay = map(segment(seq), segmentBytes, FileChannel.MapMode.READ_ONLY);
+            resetCheckpoint(seq);
+            replaySeq = seq;
+            return true;
+        } catch (IOException e) {
+            log.error("InfluxDB预写日志:打开分段失败.\n", e);
+            return false;
+        }
+    }
+
+    /**
+     * 回放进度切换到新的分段
+     */
+    private void resetCheckpoint(long seq) {
+        if (checkpoint.getLong(0) != seq) {
+            checkpoint.putLong(0, seq);
+            checkpoint.putLong(8, 0);
+        }
+    }
+
+    /**
+     * 暂停回放正在写的分段
+     */
+    private void closeReplay() {
+        replay = null;
+        replaySeq = -1;
+    }
+
+    /**
+     * 分段回放完成,删除文件
+     * <p>正在写的分段不删除,跳到写入位置</p>
+     */
+    private void finishReplay() {
+        if (replay == active) {
+            checkpoint.putLong(8, active.position());
+            closeReplay();
+            return;
+        }
+        sealed.remove(replaySeq);
+        unmap(replay);
+        delete(replaySeq);
+        closeReplay();
+        checkpoint.putLong(0, -1);
+        checkpoint.putLong(8, 0);
+    }
+
+    /**
+     * 封存正在写的分段并新建分段
+     */
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.force();
+            // 回放中的分段在回放完成后解除映射
+            if (active != replay) {unmap(active);}
+            sealed.addLast(activeSeq);
+            activeSeq++;
+        }
+        active = map(segment(activeSeq), segmentBytes, FileChannel.MapMode.READ_WRITE);
+        // 超出上限时丢弃最旧的分段
+        while ((sealed.size() + 1L) * segmentBytes > maxBytes && !sealed.isEmpty()) {
+            long oldest = sealed.pollFirst();
+            if (oldest == replaySeq) {
+                unmap(replay);
+                closeReplay();
+            }
+            delete(oldest);
+            droppedSegments.increment();
+            log.error("InfluxDB预写日志超出上限{}字节,丢弃最旧的分段:{}", maxBytes, oldest);
+        }
+    }
+
+    private Path segment(long seq) {
+        return directory.resolve(String.format("%020d%s", seq, SUFFIX));
+    }
+
+    private void delete(long seq) {
+        try {
+            Files.deleteIfExists(segment(seq));
+        } catch (IOException e) {
+            log.warn("InfluxDB预写日志:删除分段{}失败", seq, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+            ? new StandardOpenOption[] {StandardOpenOption.READ}
+            : new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, mode == FileChannel.MapMode.READ_ONLY ? Math.min(size, channel.size()) : size);
+        }
+    }
+
+    /**
+     * 解除内存映射
+     * <p>不等待GC回收,删除的分段立即释放地址空间和磁盘;调用方保证之后不再访问</p>
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {return;}
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 回退到Java 8的方式
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {cleaner.getClass().getMethod("clean").invoke(cleaner);}
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("InfluxDB预写日志:解除内存映射失败,等待GC回收", e);
+        }
+    }
+
+    /**
+     * 刷盘
+     */
+    @PreDestroy
+    public void flush() {
+        if (!enabled) {return;}
+        synchronized (lock) {
+            if (active != null) {active.force();}
+            if (checkpoint != null) {checkpoint.force();}
+        }
+    }
+
+    /**
+     * 统计信息
+     *
+     * @return 写入、回放、丢弃的记录数和待回放的分段数
+     */
+    public Map<String, Object> statistics() {
+        Map<String, Object> result = new HashMap<>(16);
+        result.put("enabled", enabled);
+        result.put("spooledRecords", spooledRecords.sum());
+        result.put("replayedRecords", replayedRecords.sum());
+        result.put("droppedRecords", droppedRecords.sum());
+        result.put("droppedSegments", droppedSegments.sum());
+        result.put("corruptRecords", corruptRecords.sum());
+        result.put("rejectedRecords", rejectedRecords.sum());
+        synchronized (lock) {
+            long replayed = checkpoint != null && checkpoint.getLong(0) == activeSeq ? checkpoint.getLong(8) : 0;
+            result.put("pendingSegments", sealed.size() + (active != null && active.position() > replayed ? 1 : 0));
+        }
+        return result;
+    }
+
+    /**
+     * 写入结果
+     */
+    public enum WriteResult {
+        /**
+         * 写入成功
+         */
+        SUCCESS,
+        /**
+         * 可重试的失败(IO异常、服务端错误、限流)
+         */
+        RETRY,
+        /**
+         * 数据被拒绝(格式错误、类型冲突等),重试无意义
+         */
+        REJECTED
+    }
+}
@@ -1,11 +1,6 @@
 package io.shulie.takin.cloud.app.util;
 
-import java.lang.reflect.Field;
-import java.util.concurrent.TimeUnit;
-
 import org.influxdb.dto.Point;
-import org.influxdb.BuilderException;
-import org.influxdb.annotation.Column;
 
 /**
  * Influx工具类
@@ -28,6 +23,16 @@ public class InfluxUtil {
         return getMeasurement("metrics", pressureExampleId);
     }
 
+    /**
+     * 集群维度指标数据的数据表
+     *
+     * @param pressureId 施压任务主键
+     * @return 表名
+     */
+    public static String getClusterMetricsMeasurement(Long pressureId) {
+        return getMeasurement("metrics_cluster", pressureId);
+    }
+
     /**
      * 拼装influxdb表名
      *
@@ -47,56 +52,9 @@ public class InfluxUtil {
      * @param pojo        对象
      * @return point
      */
+    @SuppressWarnings("unchecked")
     public static Point toPoint(String measurement, long time, Object pojo) {
-        Point.Builder builder = Point.measurement(measurement)
-            .time(time, TimeUnit.MILLISECONDS)
-            .addFieldsFromPOJO(pojo)
-            .addField("create_time", System.currentTimeMillis());
-        Class<?> superclass = pojo.getClass().getSuperclass();
-        //父类字段添加到数据库
-        addSuperClassFieldsFromPojo(builder, pojo, superclass);
-        return builder.build();
-    }
-
-    /**
-     * @param builder -
-     * @param pojo    -
-     * @param clazz   -
-     */
-    private static void addSuperClassFieldsFromPojo(Point.Builder builder, Object pojo, Class<?> clazz) {
-        for (Field field : clazz.getDeclaredFields()) {
-            Column column = field.getAnnotation(Column.class);
-            if (column == null) {
-                continue;
-            }
-            field.setAccessible(true);
-            String fieldName = column.name();
-            addFieldByAttribute(builder, pojo, field, column, fieldName);
-        }
-        if (clazz != Object.class) {
-            addSuperClassFieldsFromPojo(builder, pojo, clazz.getSuperclass());
-        }
-    }
-
-    /**
-     * @param builder   -
-     * @param pojo      -
-     * @param field     -
-     * @param column    -
-     * @param fieldName -
-     */
-    @SuppressWarnings("deprecation")
-    private static void addFieldByAttribute(final Point.Builder builder, final Object pojo, final Field field, final Column column, final String fieldName) {
-        try {
-            Object fieldValue = field.get(pojo);
-            if (column.tag()) {
-                builder.tag(fieldName, (String)fieldValue);
-            } else {
-                builder.field(fieldName, fieldValue);
-            }
-        } catch (IllegalArgumentException | IllegalAccessException e) {
-            // Can not happen since we use metadata got from the object
-            throw new BuilderException("Field " + fieldName + " could not found on class " + pojo.getClass().getSimpleName());
-        }
+        PointCodec<Object> codec = (PointCodec<Object>)PointCodec.of(pojo.getClass());
+        return codec.encode(measurement, time, System.currentTimeMillis(), pojo);
     }
 }
@@ -3,7 +3,11 @@ package io.shulie.takin.cloud.app.util;
 import java.util.Map;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.PostConstruct;
 
 import cn.hutool.json.JSONUtil;
@@ -11,8 +15,11 @@ import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
 
 import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBException;
+import org.influxdb.BatchOptions;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.BatchPoints;
@@ -56,8 +63,41 @@ public class InfluxWriter {
     @Value("${spring.influxdb.database:}")
     private String database;
 
+    /**
+     * 行协议缓冲的批量条数
+     */
+    @Value("${spring.influxdb.batch.actions:1000}")
+    private Integer batchActions;
+
+    /**
+     * 行协议缓冲的刷新间隔(毫秒)
+     */
+    @Value("${spring.influxdb.batch.flush-duration:40}")
+    private Long flushDuration;
+
+    /**
+     * 行协议缓冲的上限(字符数),写入阻塞时超出部分转入预写日志
+     */
+    @Value("${spring.influxdb.batch.max-buffer-chars:4194304}")
+    private Integer maxBufferChars;
+
     private InfluxDB influx;
 
+    /**
+     * 待写入的行协议
+     */
+    private StringBuilder lineBuffer = new StringBuilder();
+    private int bufferedLines;
+    private final Object lineLock = new Object();
+    /**
+     * 是否已提交按条数触发的刷新
+     */
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private ScheduledExecutorService flusher;
+
+    @javax.annotation.Resource
+    private InfluxSpool influxSpool;
+
     public static BatchPoints batchPoints(String sdatabase) {
         return BatchPoints.database(sdatabase).build();
     }
@@ -68,7 +108,33 @@ public class InfluxWriter {
             return;
         }
         influx = InfluxDBFactory.connect(influxdbUrl, userName, password);
-        influx.enableBatch(1000, 40, TimeUnit.MILLISECONDS);
+        // 异步批量写入失败的数据转入预写日志
+        influx.enableBatch(BatchOptions.DEFAULTS.actions(1000).flushDuration(40)
+            .exceptionHandler((points, e) -> {
+                log.error("influxdb批量写数据异常.\n", e);
+                // 被拒绝的数据重试无意义,不转入预写日志
+                if (rejected(e)) {return;}
+                StringBuilder records = new StringBuilder();
+                points.forEach(t -> records.append(t.lineProtocol(TimeUnit.MILLISECONDS)).append('\n'));
+                influxSpool.append(records.toString());
+            }));
+        // 行协议与Point一样异步批量写入,不占用调用线程
+        flusher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("InfluxWriter-", true));
+        flusher.scheduleWithFixedDelay(this::flushLines, flushDuration, flushDuration, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher == null) {return;}
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(flushDuration * 10, TimeUnit.MILLISECONDS)) {
+                log.warn("influxdb行协议缓冲未能在限定时间内写完");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushLines();
     }
 
     /**
@@ -110,11 +176,103 @@ public class InfluxWriter {
             influx.write(database, "", point);
         } catch (Exception ex) {
             log.error("influxdb写数据异常.\n", ex);
-            return false;
+            // 未配置InfluxDB时不转入预写日志
+            return influx != null && influxSpool.append(point.lineProtocol(TimeUnit.MILLISECONDS) + "\n");
         }
         return true;
     }
 
+    /**
+     * 插入行协议数据
+     *
+     * @param records 行协议(毫秒精度,多行以换行分隔)
+     * @return true/false
+     */
+    public boolean insert(String records) {
+        InfluxSpool.WriteResult result = writeDirect(records);
+        // 被拒绝的数据重试无意义,不转入预写日志
+        if (result != InfluxSpool.WriteResult.RETRY) {return result == InfluxSpool.WriteResult.SUCCESS;}
+        // 未配置InfluxDB时不转入预写日志
+        return influx != null && influxSpool.append(records);
+    }
+
+    /**
+     * 异步插入行协议数据
+     * <p>追加到缓冲区,达到批量条数或刷新间隔时由后台线程写入,失败时转入预写日志</p>
+     * <p>写入阻塞导致缓冲区超出上限时,缓冲的数据直接转入预写日志</p>
+     *
+     * @param records 行协议(毫秒精度,每行以换行结尾)
+     */
+    public void insertAsync(CharSequence records) {
+        // 未配置InfluxDB时不转入预写日志
+        if (influx == null || records.length() == 0) {return;}
+        String overflow = null;
+        boolean full;
+        synchronized (lineLock) {
+            lineBuffer.append(records);
+            for (int i = 0; i < records.length(); i++) {
+                if (records.charAt(i) == '\n') {bufferedLines++;}
+            }
+            if (lineBuffer.length() > maxBufferChars) {
+                overflow = lineBuffer.toString();
+                lineBuffer = new StringBuilder();
+                bufferedLines = 0;
+            }
+            full = bufferedLines >= batchActions;
+        }
+        if (overflow != null) {
+            log.warn("influxdb行协议缓冲超出上限,转入预写日志");
+            influxSpool.append(overflow);
+        } else if (full && flushQueued.compareAndSet(false, true)) {
+            flusher.execute(this::flushLines);
+        }
+    }
+
+    /**
+     * 写入缓冲的行协议
+     */
+    private void flushLines() {
+        flushQueued.set(false);
+        String records;
+        synchronized (lineLock) {
+            if (lineBuffer.length() == 0) {return;}
+            records = lineBuffer.toString();
+            lineBuffer.setLength(0);
+            bufferedLines = 0;
+        }
+        if (writeDirect(records) == InfluxSpool.WriteResult.RETRY) {influxSpool.append(records);}
+    }
+
+    /**
+     * 同步写入行协议数据
+     * <p>失败时不转入预写日志</p>
+     *
+     * @param records 行协议(毫秒精度,多行以换行分隔)
+     * @return 写入结果
+     */
+    public InfluxSpool.WriteResult writeDirect(String records) {
+        try {
+            influx.write(database, "", InfluxDB.ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, records);
+            return InfluxSpool.WriteResult.SUCCESS;
+        } catch (Exception ex) {
+            if (rejected(ex)) {
+                log.error("influxdb拒绝写入的数据:{}", ex.getMessage());
+                return InfluxSpool.WriteResult.REJECTED;
+            }
+            log.error("influxdb写数据异常.\n", ex);
+            return InfluxSpool.WriteResult.RETRY;
+        }
+    }
+
+    /**
+     * 是否是数据本身被拒绝(格式错误、字段类型冲突、超出保留策略),重试无意义
+     * <p>数据库不存在时等待创建,不丢弃数据</p>
+     */
+    private static boolean rejected(Throwable e) {
+        return e instanceof InfluxDBException && !((InfluxDBException)e).isRetryWorth()
+            && !(e instanceof InfluxDBException.DatabaseNotFoundException);
+    }
+
     /**
      * 查询数据
      *
@@ -0,0 +1,224 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.EOFException;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjDoubleConsumer;
+
+import io.shulie.takin.cloud.constant.MetricsFormatConstants;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_LONG;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_DOUBLE;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_STRING;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_DICTIONARY;
+
+/**
+ * 指标数据的二进制格式读取
+ * <p>格式见{@link MetricsFormatConstants},未知字段按类型跳过,记录末尾的未知数据按记录长度跳过</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+final class MetricsBinaryReader {
+    private MetricsBinaryReader() {}
+
+    /**
+     * 单条记录的最大长度
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    /**
+     * 字典的最大条目数
+     */
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+    /**
+     * 单次上报的最大记录数
+     */
+    private static final int MAX_RECORD_COUNT = 1 << 20;
+
+    private static final Map<String, BiConsumer<MetricsInfo, String>> STRING_SETTER = new HashMap<>(8);
+    private static final Map<String, ObjLongConsumer<MetricsInfo>> LONG_SETTER = new HashMap<>(16);
+    private static final Map<String, ObjDoubleConsumer<MetricsInfo>> DOUBLE_SETTER = new HashMap<>(8);
+
+    static {
+        STRING_SETTER.put("type", MetricsInfo::setType);
+        STRING_SETTER.put("transaction", MetricsInfo::setTransaction);
+        STRING_SETTER.put("testName", MetricsInfo::setTestName);
+        STRING_SETTER.put("podNo", MetricsInfo::setPodNo);
+        STRING_SETTER.put("percentData", MetricsInfo::setPercentData);
+        LONG_SETTER.put("time", MetricsInfo::setTime);
+        LONG_SETTER.put("timestamp", MetricsInfo::setTimestamp);
+        LONG_SETTER.put("count", (t, v) -> t.setCount((int)v));
+        LONG_SETTER.put("failCount", (t, v) -> t.setFailCount((int)v));
+        LONG_SETTER.put("sentBytes", (t, v) -> t.setSentBytes((int)v));
+        LONG_SETTER.put("receivedBytes", (t, v) -> t.setReceivedBytes((int)v));
+        LONG_SETTER.put("saCount", (t, v) -> t.setSaCount((int)v));
+        LONG_SETTER.put("activeThreads", (t, v) -> t.setActiveThreads((int)v));
+        DOUBLE_SETTER.put("rt", MetricsInfo::setRt);
+        DOUBLE_SETTER.put("sumRt", MetricsInfo::setSumRt);
+        DOUBLE_SETTER.put("maxRt", MetricsInfo::setMaxRt);
+        DOUBLE_SETTER.put("minRt", MetricsInfo::setMinRt);
+    }
+
+    /**
+     * 读取
+     *
+     * @param in   输入流
+     * @param sink 接收
+     * @throws IOException 格式不正确
+     */
+    static void read(InputStream in, MetricsDecoder.Sink sink) throws IOException {
+        Reader reader = new Reader(in);
+        int magic = (reader.readByte() << 8) | reader.readByte();
+        if (magic != MetricsFormatConstants.MAGIC) {throw new IOException("不是指标数据的二进制格式");}
+        int version = reader.readByte();
+        if (version > MetricsFormatConstants.VERSION) {throw new IOException("不支持的指标数据格式版本:" + version);}
+        // 字段定义
+        int fieldCount = reader.readLength();
+        if (fieldCount > Long.SIZE) {throw new IOException("字段数超出限制:" + fieldCount);}
+        int[] type = new int[fieldCount];
+        Object[] setter = new Object[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            String name = reader.readString();
+            type[i] = reader.readByte();
+            setter[i] = setter(name, type[i]);
+        }
+        // 字典
+        int dictionarySize = reader.readLength();
+        if (dictionarySize > MAX_DICTIONARY_SIZE) {throw new IOException("字典条目数超出限制:" + dictionarySize);}
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = reader.readString();
+        }
+        // 记录
+        int recordCount = reader.readLength();
+        if (recordCount > MAX_RECORD_COUNT) {throw new IOException("记录数超出限制:" + recordCount);}
+        for (int r = 0; r < recordCount; r++) {
+            int length = reader.readLength();
+            if (length > MAX_RECORD_LENGTH) {throw new IOException("记录长度超出限制:" + length);}
+            long end = reader.position + length;
+            long mask = reader.readVarint();
+            MetricsInfo metrics = sink.next();
+            for (int i = 0; i < fieldCount; i++) {
+                if ((mask & (1L << i)) == 0) {continue;}
+                readField(reader, type[i], setter[i], dictionary, metrics);
+            }
+            if (reader.position > end) {throw new IOException("记录长度不正确");}
+            reader.skip(end - reader.position);
+            sink.accept(metrics);
+        }
+    }
+
+    /**
+     * 读取单个字段
+     */
+    @SuppressWarnings("unchecked")
+    private static void readField(Reader reader, int type, Object setter, String[] dictionary, MetricsInfo metrics) throws IOException {
+        switch (type) {
+            case TYPE_DICTIONARY:
+                int index = reader.readLength();
+                if (index >= dictionary.length) {throw new IOException("字典下标越界:" + index);}
+                if (setter != null) {((BiConsumer<MetricsInfo, String>)setter).accept(metrics, dictionary[index]);}
+                break;
+            case TYPE_STRING:
+                String value = reader.readString();
+                if (setter != null) {((BiConsumer<MetricsInfo, String>)setter).accept(metrics, value);}
+                break;
+            case TYPE_LONG:
+                long zigzag = reader.readVarint();
+                if (setter != null) {((ObjLongConsumer<MetricsInfo>)setter).accept(metrics, (zigzag >>> 1) ^ -(zigzag & 1));}
+                break;
+            case TYPE_DOUBLE:
+                double number = Double.longBitsToDouble(reader.readLong());
+                if (setter != null) {((ObjDoubleConsumer<MetricsInfo>)setter).accept(metrics, number);}
+                break;
+            default:
+                throw new IOException("未知的字段类型:" + type);
+        }
+    }
+
+    /**
+     * 字段对应的赋值方法
+     *
+     * @return 字段未知或类型不匹配时返回null(读取后丢弃)
+     */
+    private static Object setter(String name, int type) {
+        switch (type) {
+            case TYPE_DICTIONARY:
+            case TYPE_STRING:
+                return STRING_SETTER.get(name);
+            case TYPE_LONG:
+                return LONG_SETTER.get(name);
+            case TYPE_DOUBLE:
+                return DOUBLE_SETTER.get(name);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 带读取位置的输入
+     */
+    private static final class Reader {
+        private final InputStream in;
+        private long position;
+        private byte[] buffer = new byte[64];
+
+        private Reader(InputStream in) {this.in = in;}
+
+        int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {throw new EOFException("指标数据不完整");}
+            position++;
+            return b;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int b = readByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {return value;}
+            }
+            throw new IOException("varint格式不正确");
+        }
+
+        int readLength() throws IOException {
+            long value = readVarint();
+            if (value < 0 || value > Integer.MAX_VALUE) {throw new IOException("长度不正确:" + value);}
+            return (int)value;
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            if (length > MAX_RECORD_LENGTH) {throw new IOException("字符串长度超出限制:" + length);}
+            if (buffer.length < length) {buffer = new byte[Math.max(length, buffer.length * 2)];}
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(buffer, offset, length - offset);
+                if (read < 0) {throw new EOFException("指标数据不完整");}
+                offset += read;
+            }
+            position += length;
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        void skip(long length) throws IOException {
+            for (long i = 0; i < length; i++) {
+                readByte();
+            }
+        }
+    }
+}
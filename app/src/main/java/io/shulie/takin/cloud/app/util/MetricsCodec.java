@@ -0,0 +1,85 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.influxdb.dto.Point;
+
+import io.shulie.takin.cloud.constant.PressureEngineConstants;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 指标数据编码
+ * <p>一次遍历完成规整(拆分关键词、纳秒转毫秒)和编码</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public class MetricsCodec {
+    private MetricsCodec() {}
+
+    private static final PointCodec<MetricsInfo> CODEC = PointCodec.of(MetricsInfo.class);
+
+    /**
+     * 规整单条指标数据
+     * <p>拆分关键词与业务活动名称、纳秒时间戳转换为毫秒</p>
+     *
+     * @param metrics 指标数据
+     */
+    public static void normalize(MetricsInfo metrics) {
+        //判断有没有MD5值
+        String transaction = metrics.getTransaction();
+        int strPosition = transaction == null ? -1 : transaction.lastIndexOf(PressureEngineConstants.TRANSACTION_SPLIT_STR);
+        if (strPosition > 0) {
+            metrics.setTransaction(transaction.substring(strPosition + PressureEngineConstants.TRANSACTION_SPLIT_STR.length()));
+            metrics.setTestName(transaction.substring(0, strPosition));
+        } else {
+            metrics.setTestName(transaction);
+        }
+        //处理时间戳-纳秒转成毫秒，防止插入influxdb报错
+        Long time = metrics.getTime();
+        if (time != null && time > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
+            metrics.setTime(time / 1000000);
+        }
+        Long timestamp = metrics.getTimestamp();
+        if (timestamp != null && timestamp > InfluxUtil.MAX_ACCEPT_TIMESTAMP) {
+            metrics.setTimestamp(timestamp / 1000000);
+        }
+    }
+
+    /**
+     * 编码为Point
+     *
+     * @param measurement 表名
+     * @param metricsList 指标数据(空元素会被跳过)
+     * @param normalize   是否需要先规整
+     * @return Point集合
+     */
+    public static List<Point> encode(String measurement, List<MetricsInfo> metricsList, boolean normalize) {
+        long createTime = System.currentTimeMillis();
+        List<Point> result = new ArrayList<>(metricsList.size());
+        for (MetricsInfo metrics : metricsList) {
+            if (metrics == null) {continue;}
+            if (normalize) {normalize(metrics);}
+            result.add(CODEC.encode(measurement, metrics.getTimestamp(), createTime, metrics));
+        }
+        return result;
+    }
+
+    /**
+     * 编码为行协议
+     *
+     * @param out         缓冲区
+     * @param measurement 表名
+     * @param metricsList 指标数据(空元素会被跳过)
+     * @param normalize   是否需要先规整
+     */
+    public static void encode(StringBuilder out, String measurement, List<MetricsInfo> metricsList, boolean normalize) {
+        long createTime = System.currentTimeMillis();
+        String escaped = PointCodec.escapeMeasurement(measurement);
+        for (MetricsInfo metrics : metricsList) {
+            if (metrics == null) {continue;}
+            if (normalize) {normalize(metrics);}
+            CODEC.encode(out, escaped, metrics.getTimestamp(), createTime, metrics);
+        }
+    }
+}
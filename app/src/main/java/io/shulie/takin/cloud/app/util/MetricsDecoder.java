@@ -0,0 +1,209 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonFactory;
+
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+/**
+ * 指标数据的流式解码
+ * <p>基于{@link JsonParser}逐个读取数组元素(或读取二进制格式),解析时过滤非响应数据,规整后直接编码为行协议</p>
+ * <p>解码出的对象取自调用方的对象池,不额外创建中间集合</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public class MetricsDecoder {
+    private MetricsDecoder() {}
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String RESPONSE = "response";
+
+    /**
+     * 解码
+     *
+     * @param in          请求体
+     * @param binary      是否为二进制格式(否则为JSON数组)
+     * @param measurement 表名
+     * @param pool        对象池(按需扩充)
+     * @param data        解码结果(响应数据)
+     * @param lines       行协议缓冲区
+     * @throws IOException 数据格式不正确
+     */
+    public static void decode(InputStream in, boolean binary, String measurement, List<MetricsInfo> pool,
+        List<MetricsInfo> data, StringBuilder lines) throws IOException {
+        Sink sink = new Sink(measurement, pool, data, lines);
+        if (binary) {
+            MetricsBinaryReader.read(in, sink);
+        } else {
+            decodeJson(in, sink);
+        }
+    }
+
+    /**
+     * 解码JSON数组
+     */
+    private static void decodeJson(InputStream in, Sink sink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("指标数据不是JSON数组");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {throw new IOException("指标数据不完整");}
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                MetricsInfo metrics = sink.next();
+                readObject(parser, metrics);
+                sink.accept(metrics);
+            }
+        }
+    }
+
+    /**
+     * 读取单个对象
+     * <p>字段名与{@link MetricsInfo}的属性名一致,未知字段忽略</p>
+     */
+    private static void readObject(JsonParser parser, MetricsInfo metrics) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {continue;}
+            switch (name) {
+                case "type":
+                    metrics.setType(parser.getValueAsString());
+                    break;
+                case "transaction":
+                    metrics.setTransaction(parser.getValueAsString());
+                    break;
+                case "testName":
+                    metrics.setTestName(parser.getValueAsString());
+                    break;
+                case "podNo":
+                    metrics.setPodNo(parser.getValueAsString());
+                    break;
+                case "percentData":
+                    metrics.setPercentData(parser.getValueAsString());
+                    break;
+                case "time":
+                    metrics.setTime(parser.getValueAsLong());
+                    break;
+                case "timestamp":
+                    metrics.setTimestamp(parser.getValueAsLong());
+                    break;
+                case "count":
+                    metrics.setCount(parser.getValueAsInt());
+                    break;
+                case "failCount":
+                    metrics.setFailCount(parser.getValueAsInt());
+                    break;
+                case "sentBytes":
+                    metrics.setSentBytes(parser.getValueAsInt());
+                    break;
+                case "receivedBytes":
+                    metrics.setReceivedBytes(parser.getValueAsInt());
+                    break;
+                case "saCount":
+                    metrics.setSaCount(parser.getValueAsInt());
+                    break;
+                case "activeThreads":
+                    metrics.setActiveThreads(parser.getValueAsInt());
+                    break;
+                case "rt":
+                    metrics.setRt(parser.getValueAsDouble());
+                    break;
+                case "sumRt":
+                    metrics.setSumRt(parser.getValueAsDouble());
+                    break;
+                case "maxRt":
+                    metrics.setMaxRt(parser.getValueAsDouble());
+                    break;
+                case "minRt":
+                    metrics.setMinRt(parser.getValueAsDouble());
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 清空对象以便复用
+     *
+     * @param metrics 对象
+     * @return 清空后的对象
+     */
+    public static MetricsInfo reset(MetricsInfo metrics) {
+        metrics.setTime(null);
+        metrics.setTransaction(null);
+        metrics.setTestName(null);
+        metrics.setCount(null);
+        metrics.setFailCount(null);
+        metrics.setSentBytes(null);
+        metrics.setReceivedBytes(null);
+        metrics.setRt(null);
+        metrics.setSumRt(null);
+        metrics.setSaCount(null);
+        metrics.setMaxRt(null);
+        metrics.setMinRt(null);
+        metrics.setTimestamp(null);
+        metrics.setActiveThreads(null);
+        metrics.setPercentData(null);
+        metrics.setPodNo(null);
+        metrics.setType(null);
+        return metrics;
+    }
+
+    /**
+     * 解码结果的接收
+     * <p>对象取自对象池;响应数据规整后编码为行协议,其余数据不占用对象池的位置</p>
+     */
+    static final class Sink {
+        private final long createTime = System.currentTimeMillis();
+        private final String measurement;
+        private final List<MetricsInfo> pool;
+        private final List<MetricsInfo> data;
+        private final StringBuilder lines;
+        private final PointCodec<MetricsInfo> codec = PointCodec.of(MetricsInfo.class);
+
+        Sink(String measurement, List<MetricsInfo> pool, List<MetricsInfo> data, StringBuilder lines) {
+            this.measurement = PointCodec.escapeMeasurement(measurement);
+            this.pool = pool;
+            this.data = data;
+            this.lines = lines;
+        }
+
+        /**
+         * 取出一个空对象
+         *
+         * @return 对象
+         */
+        MetricsInfo next() {
+            int index = data.size();
+            if (index == pool.size()) {pool.add(new MetricsInfo());}
+            return reset(pool.get(index));
+        }
+
+        /**
+         * 接收填充完的对象
+         *
+         * @param metrics 对象
+         */
+        void accept(MetricsInfo metrics) {
+            // 没有时间的数据无法入库
+            if (RESPONSE.equals(metrics.getType()) && metrics.getTimestamp() != null) {
+                MetricsCodec.normalize(metrics);
+                codec.encode(lines, measurement, metrics.getTimestamp(), createTime, metrics);
+                data.add(metrics);
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.shulie.takin.cloud.app.util;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+import java.lang.invoke.LambdaMetafactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.influxdb.dto.Point;
+import org.influxdb.annotation.Column;
+
+/**
+ * InfluxDB的Point编解码器
+ * <p>类上的{@link Column}元数据只解析一次,字段读取通过{@link LambdaMetafactory}生成的访问器完成,编码时不使用反射</p>
+ *
+ * @param <T> POJO类型
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public final class PointCodec<T> {
+    private static final Map<Class<?>, PointCodec<?>> CACHE = new ConcurrentHashMap<>(8);
+
+    /**
+     * 列定义(标签在前,字段在后)
+     */
+    private final Accessor[] columnList;
+
+    private PointCodec(Class<T> clazz) {
+        List<Accessor> tagList = new ArrayList<>();
+        List<Accessor> fieldList = new ArrayList<>();
+        // 子类字段优先,与Point.Builder#addFieldsFromPOJO保持一致
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Column column = field.getAnnotation(Column.class);
+                if (column == null || Modifier.isStatic(field.getModifiers())) {continue;}
+                Accessor accessor = new Accessor(column.name(), column.tag(), field.getType(), accessor(clazz, field));
+                (accessor.tag ? tagList : fieldList).add(accessor);
+            }
+        }
+        tagList.addAll(fieldList);
+        this.columnList = tagList.toArray(new Accessor[0]);
+    }
+
+    /**
+     * 获取类对应的编解码器
+     *
+     * @param clazz POJO类
+     * @param <T>   POJO类型
+     * @return 编解码器
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PointCodec<T> of(Class<T> clazz) {
+        return (PointCodec<T>)CACHE.computeIfAbsent(clazz, t -> new PointCodec<>(clazz));
+    }
+
+    /**
+     * 编码为Point
+     *
+     * @param measurement 表名
+     * @param time        时间(毫秒)
+     * @param createTime  入库时间(毫秒)
+     * @param pojo        对象
+     * @return Point
+     */
+    public Point encode(String measurement, long time, long createTime, T pojo) {
+        Point.Builder builder = Point.measurement(measurement).time(time, TimeUnit.MILLISECONDS);
+        for (Accessor accessor : columnList) {
+            Object value = accessor.getter.apply(pojo);
+            if (skip(accessor, value)) {continue;}
+            switch (accessor.kind) {
+                case TAG:
+                    builder.tag(accessor.name, value.toString());
+                    break;
+                case LONG:
+                    builder.addField(accessor.name, ((Number)value).longValue());
+                    break;
+                case DOUBLE:
+                    builder.addField(accessor.name, ((Number)value).doubleValue());
+                    break;
+                case BOOLEAN:
+                    builder.addField(accessor.name, (boolean)(Boolean)value);
+                    break;
+                default:
+                    builder.addField(accessor.name, value.toString());
+                    break;
+            }
+        }
+        return builder.addField("create_time", createTime).build();
+    }
+
+    /**
+     * 编码为行协议,追加到缓冲区
+     * <p>时间精度为毫秒</p>
+     *
+     * @param out         缓冲区
+     * @param measurement 表名(已转义)
+     * @param time        时间(毫秒)
+     * @param createTime  入库时间(毫秒)
+     * @param pojo        对象
+     */
+    public void encode(StringBuilder out, String measurement, long time, long createTime, T pojo) {
+        out.append(measurement);
+        char separator = ' ';
+        for (Accessor accessor : columnList) {
+            Object value = accessor.getter.apply(pojo);
+            if (skip(accessor, value)) {continue;}
+            if (accessor.kind == Kind.TAG) {
+                out.append(',').append(accessor.escapedName).append('=');
+                escapeKey(out, value.toString());
+                continue;
+            }
+            out.append(separator).append(accessor.escapedName).append('=');
+            separator = ',';
+            switch (accessor.kind) {
+                case LONG:
+                    out.append(((Number)value).longValue()).append('i');
+                    break;
+                case DOUBLE:
+                    out.append(((Number)value).doubleValue());
+                    break;
+                case BOOLEAN:
+                    out.append(((Boolean)value).booleanValue());
+                    break;
+                default:
+                    escapeString(out, value.toString());
+                    break;
+            }
+        }
+        out.append(separator).append("create_time=").append(createTime).append('i')
+            .append(' ').append(time).append('\n');
+    }
+
+    /**
+     * 是否跳过该列
+     * <p>空值、空字符串的标签、非有限的浮点数都会导致InfluxDB拒绝整批数据,与{@link Point.Builder}一样不写入</p>
+     */
+    private static boolean skip(Accessor accessor, Object value) {
+        if (value == null) {return true;}
+        if (accessor.kind == Kind.TAG) {return value.toString().isEmpty();}
+        if (accessor.kind == Kind.DOUBLE) {
+            double number = ((Number)value).doubleValue();
+            return Double.isNaN(number) || Double.isInfinite(number);
+        }
+        return false;
+    }
+
+    /**
+     * 转义表名
+     *
+     * @param measurement 表名
+     * @return 转义后的表名
+     */
+    public static String escapeMeasurement(String measurement) {
+        StringBuilder out = new StringBuilder(measurement.length() + 4);
+        for (int i = 0; i < measurement.length(); i++) {
+            char c = measurement.charAt(i);
+            if (c == ',' || c == ' ') {out.append('\\');}
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 转义标签名、标签值、字段名
+     */
+    private static void escapeKey(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ' ') {out.append('\\');}
+            out.append(c);
+        }
+    }
+
+    /**
+     * 转义字符串类型的字段值
+     */
+    private static void escapeString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {out.append('\\');}
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    /**
+     * 生成字段访问器
+     * <p>优先使用公开的getter生成lambda,否则退化为(已设置可访问的)字段读取</p>
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> accessor(Class<?> clazz, Field field) {
+        Method getter = getter(clazz, field);
+        if (getter != null) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle handle = lookup.unreflect(getter);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle, handle.type().wrap());
+                return (Function<Object, Object>)site.getTarget().invokeExact();
+            } catch (Throwable ignore) {
+                // 退化为字段读取
+            }
+        }
+        field.setAccessible(true);
+        return pojo -> {
+            try {
+                return field.get(pojo);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("无法读取字段:" + field.getName(), e);
+            }
+        };
+    }
+
+    /**
+     * 查找字段对应的公开getter
+     */
+    private static Method getter(Class<?> clazz, Field field) {
+        String name = field.getName();
+        String capitalize = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String prefix : new String[] {"get", "is"}) {
+            try {
+                Method method = clazz.getMethod(prefix + capitalize);
+                if (method.getReturnType() == field.getType() && Modifier.isPublic(clazz.getModifiers())) {return method;}
+            } catch (NoSuchMethodException ignore) {
+                // 尝试下一个前缀
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 列类型
+     */
+    private enum Kind {
+        /**
+         * 标签
+         */
+        TAG,
+        /**
+         * 整数
+         */
+        LONG,
+        /**
+         * 浮点数
+         */
+        DOUBLE,
+        /**
+         * 布尔
+         */
+        BOOLEAN,
+        /**
+         * 字符串
+         */
+        STRING
+    }
+
+    /**
+     * 列访问器
+     */
+    private static final class Accessor {
+        private final String name;
+        private final String escapedName;
+        private final boolean tag;
+        private final Kind kind;
+        private final Function<Object, Object> getter;
+
+        private Accessor(String name, boolean tag, Class<?> type, Function<Object, Object> getter) {
+            this.tag = tag;
+            this.name = name;
+            this.getter = getter;
+            this.kind = kind(tag, type);
+            StringBuilder escaped = new StringBuilder(name.length());
+            escapeKey(escaped, name);
+            this.escapedName = escaped.toString();
+        }
+
+        private static Kind kind(boolean tag, Class<?> type) {
+            if (tag) {return Kind.TAG;}
+            if (type == Integer.class || type == int.class || type == Long.class || type == long.class
+                || type == Short.class || type == short.class || type == Byte.class || type == byte.class) {
+                return Kind.LONG;
+            }
+            if (type == Double.class || type == double.class || type == Float.class || type == float.class) {
+                return Kind.DOUBLE;
+            }
+            if (type == Boolean.class || type == boolean.class) {return Kind.BOOLEAN;}
+            return Kind.STRING;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.shulie.takin.cloud.app.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * 响应时间直方图测试
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class LatencyHistogramTest {
+    @Test
+    void unorderedPercentiles() {
+        LatencyHistogram unordered = new LatencyHistogram();
+        assertTrue(unordered.addPercentiles("99,30|95,20|90,15", 1000, 50D));
+        LatencyHistogram ordered = new LatencyHistogram();
+        assertTrue(ordered.addPercentiles("90,15|95,20|99,30", 1000, 50D));
+        assertArrayEquals(ordered.encode(), unordered.encode());
+        assertEquals(1000, unordered.count());
+        assertEquals(15, unordered.quantile(0.90), 15 * 0.01);
+        assertEquals(20, unordered.quantile(0.95), 20 * 0.01);
+        assertEquals(30, unordered.quantile(0.99), 30 * 0.01);
+    }
+
+    @Test
+    void tailAboveHighestPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertTrue(histogram.addPercentiles("90,15|99,30", 1000, 50D));
+        assertEquals(1000, histogram.count());
+        // 最后1%按最大响应时间记录
+        assertEquals(50, histogram.quantile(0.999), 50 * 0.01);
+        assertEquals(50, histogram.quantile(1), 50 * 0.01);
+    }
+
+    @Test
+    void tailWithoutMaxRt() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertTrue(histogram.addPercentiles("95,20|99,30", 200, null));
+        assertEquals(200, histogram.count());
+        assertEquals(30, histogram.quantile(0.999), 30 * 0.01);
+    }
+
+    @Test
+    void mergedCountMatchesRequests() {
+        LatencyHistogram merged = new LatencyHistogram();
+        LatencyHistogram first = new LatencyHistogram();
+        first.addPercentiles("99,30|95,20|90,15", 333, 40D);
+        LatencyHistogram second = new LatencyHistogram();
+        second.addPercentiles("90,10|99,25", 667, 35D);
+        merged.merge(first);
+        merged.merge(second);
+        assertEquals(1000, merged.count());
+        assertEquals(1000, LatencyHistogram.decode(merged.encode()).count());
+    }
+
+    @Test
+    void malformedPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertFalse(histogram.addPercentiles("99,30|95", 100, 50D));
+        assertFalse(histogram.addPercentiles("99,abc", 100, 50D));
+        assertFalse(histogram.addPercentiles("99|95,20", 100, 50D));
+        assertEquals(0, histogram.count());
+        assertNull(histogram.quantile(0.5));
+    }
+
+    @Test
+    void nonFiniteAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertFalse(histogram.add(Double.POSITIVE_INFINITY, 1));
+        assertFalse(histogram.add(Double.NaN, 1));
+        assertFalse(histogram.addPercentiles("90,15|99,Infinity", 100, 50D));
+        assertFalse(histogram.addPercentiles("NaN,15", 100, 50D));
+        assertEquals(0, histogram.count());
+        // 超大值按上限记录,不会按下标扩展出巨大的数组
+        assertTrue(histogram.add(Double.MAX_VALUE, 1));
+        assertTrue(histogram.add(1e300, 1));
+        assertTrue(histogram.add(Double.MIN_VALUE, 1));
+        assertEquals(3, histogram.count());
+        assertTrue(histogram.encode().length < 64);
+        assertEquals(86_400_000D, histogram.quantile(1), 86_400_000D * 0.01);
+        // 最大响应时间为Infinity时按最高百分位记录
+        LatencyHistogram tail = new LatencyHistogram();
+        assertTrue(tail.addPercentiles("90,15|99,30", 100, Double.POSITIVE_INFINITY));
+        assertEquals(30, tail.quantile(1), 30 * 0.01);
+    }
+}
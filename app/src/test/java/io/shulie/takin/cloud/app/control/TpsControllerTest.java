@@ -0,0 +1,53 @@
+package io.shulie.takin.cloud.app.control;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * TPS闭环控制的分配测试
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class TpsControllerTest {
+    @Test
+    void unchangedWhenAllReachAssigned() {
+        assertNull(TpsController.redistribute(new long[] {100, 100}, new double[] {99, 101}, 0.5, 0.05, 0.2));
+    }
+
+    @Test
+    void moveLoadAwayFromSaturatedExample() {
+        long[] assigned = {100, 100};
+        long[] result = TpsController.redistribute(assigned, new double[] {60, 100}, 0.5, 0.05, 0.2);
+        assertNotNull(result);
+        assertEquals(200, Arrays.stream(result).sum());
+        assertTrue(result[0] < assigned[0]);
+        assertTrue(result[1] > assigned[1]);
+        // 阻尼:不会一次移动到目标(60)
+        assertTrue(result[0] > 60);
+    }
+
+    @Test
+    void keepTotalAndMinimum() {
+        long[] result = TpsController.redistribute(new long[] {3, 3, 3}, new double[] {0, 3, 3}, 1, 0.05, 0.2);
+        assertNotNull(result);
+        assertEquals(9, Arrays.stream(result).sum());
+        assertTrue(Arrays.stream(result).allMatch(t -> t >= 1));
+    }
+
+    @Test
+    void splitThreadsByTps() {
+        assertArrayEquals(new long[] {75, 25}, TpsController.split(100, new long[] {150, 50}));
+        long[] threads = TpsController.split(10, new long[] {1, 1, 1});
+        assertEquals(10, Arrays.stream(threads).sum());
+        assertTrue(Arrays.stream(threads).allMatch(t -> t >= 3));
+        assertArrayEquals(new long[] {0, 0}, TpsController.split(0, new long[] {10, 10}));
+        assertArrayEquals(new long[] {1, 0}, TpsController.split(1, new long[] {10, 10}));
+    }
+}
@@ -0,0 +1,53 @@
+package io.shulie.takin.cloud.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 行协议编码测试
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+class PointCodecTest {
+    private static final PointCodec<MetricsInfo> CODEC = PointCodec.of(MetricsInfo.class);
+
+    @Test
+    void encodeLine() {
+        MetricsInfo metrics = new MetricsInfo();
+        metrics.setTransaction("a b,c=d");
+        metrics.setPodNo("1");
+        metrics.setCount(3);
+        metrics.setSumRt(1.5);
+        metrics.setTestName("say \"hi\"");
+        StringBuilder out = new StringBuilder();
+        CODEC.encode(out, PointCodec.escapeMeasurement("m 1"), 1L, 2L, metrics);
+        assertEquals("m\\ 1,transaction=a\\ b\\,c\\=d,pod_no=1 test_name=\"say \\\"hi\\\"\",count=3i,sum_rt=1.5,create_time=2i 1\n", out.toString());
+    }
+
+    @Test
+    void skipEmptyTags() {
+        MetricsInfo metrics = new MetricsInfo();
+        metrics.setTransaction("");
+        metrics.setPodNo("");
+        metrics.setCount(3);
+        StringBuilder out = new StringBuilder();
+        CODEC.encode(out, "m", 1L, 2L, metrics);
+        assertEquals("m count=3i,create_time=2i 1\n", out.toString());
+    }
+
+    @Test
+    void skipNonFiniteDoubles() {
+        MetricsInfo metrics = new MetricsInfo();
+        metrics.setPodNo("1");
+        metrics.setRt(Double.NaN);
+        metrics.setMaxRt(Double.POSITIVE_INFINITY);
+        metrics.setMinRt(Double.NEGATIVE_INFINITY);
+        metrics.setSumRt(1.5);
+        StringBuilder out = new StringBuilder();
+        CODEC.encode(out, "m", 1L, 2L, metrics);
+        assertEquals("m,pod_no=1 sum_rt=1.5,create_time=2i 1\n", out.toString());
+    }
+}
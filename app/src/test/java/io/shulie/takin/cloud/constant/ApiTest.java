@@ -12,6 +12,9 @@ class ApiTest {
     void print() {
         System.out.println(Api.EMPTY_INSTANCE.getCommon().health());
         System.out.println(Api.EMPTY_INSTANCE.getCommon().version());
+        System.out.println(Api.EMPTY_INSTANCE.getCommon().callback());
+        System.out.println(Api.EMPTY_INSTANCE.getCommon().callbackDead());
+        System.out.println(Api.EMPTY_INSTANCE.getCommon().callbackReplay());
         System.out.println(Api.EMPTY_INSTANCE.getTicket().update());
         System.out.println(Api.EMPTY_INSTANCE.getTicket().generate());
         System.out.println(Api.EMPTY_INSTANCE.getWatchman().list());
@@ -31,6 +34,9 @@ class ApiTest {
 
         System.out.println(Api.EMPTY_INSTANCE.getJob().getPressure().start());
         System.out.println(Api.EMPTY_INSTANCE.getJob().getPressure().stop());
+        System.out.println(Api.EMPTY_INSTANCE.getJob().getPressure().metricsRealtime());
+        System.out.println(Api.EMPTY_INSTANCE.getJob().getPressure().metricsPercentile());
+        System.out.println(Api.EMPTY_INSTANCE.getJob().getPressure().metricsPods());
 
         System.out.println(Api.EMPTY_INSTANCE.getJob().getExpand().getScript().build());
         System.out.println(Api.EMPTY_INSTANCE.getJob().getExpand().getPressure().getConfig());
@@ -45,7 +51,10 @@ class ApiTest {
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getScript().verificationReport());
 
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getCommand().ack());
+        System.out.println(Api.EMPTY_INSTANCE.getNotify().getCommand().ackBatch());
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getCommand().pop());
+        System.out.println(Api.EMPTY_INSTANCE.getNotify().getCommand().popWait());
+        System.out.println(Api.EMPTY_INSTANCE.getNotify().getCommand().popBatch());
 
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getWatchman().normal());
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getWatchman().upload());
@@ -69,6 +78,7 @@ class ApiTest {
 
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getPressure().getMetrics().upload());
         System.out.println(Api.EMPTY_INSTANCE.getNotify().getPressure().getMetrics().oldUpload());
+        System.out.println(Api.EMPTY_INSTANCE.getNotify().getPressure().getMetrics().pipeline());
 
     }
 }
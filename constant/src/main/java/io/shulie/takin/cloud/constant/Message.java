@@ -23,8 +23,10 @@ public class Message {
     public static final String CAN_NOT_CONVERT_MEMORY = "无法解析的内存值:{}";
     public static final String UNKOWN_COMMAND_TYPE = "错误的命令类型:{}";
     public static final String EMPTY_METRICS_LIST = "空的指标数据集合";
+    public static final String METRICS_PIPELINE_BUSY = "指标数据处理繁忙,请稍后重试";
     public static final String RESOURCE_SHORTAGE = "资源不足";
     public static final String UNKNOWN = "unknown";
     public static final String SUCCESS = "success";
+    public static final String DATA = "data";
 
 }
@@ -0,0 +1,52 @@
+package io.shulie.takin.cloud.constant;
+
+/**
+ * 指标数据上报格式常量
+ * <p>二进制格式(所有整数均为varint,有符号数先做zigzag):</p>
+ * <pre>
+ * 魔数(2字节) 版本(1字节)
+ * 字段数 {字段名长度 字段名(UTF-8) 字段类型(1字节)}...
+ * 字典条数 {长度 字符串(UTF-8)}...
+ * 记录数 {记录长度 字段存在标记 字段值...}...
+ * </pre>
+ * <p>字段值按字段定义的顺序写出,只写存在标记中对应位为1的字段</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+public class MetricsFormatConstants {
+    private MetricsFormatConstants() {}
+
+    /**
+     * 二进制格式的Content-Type
+     */
+    public static final String CONTENT_TYPE_BINARY = "application/x-takin-metrics";
+    /**
+     * gzip压缩的Content-Encoding
+     */
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+    /**
+     * 魔数
+     */
+    public static final int MAGIC = 0x544D;
+    /**
+     * 版本
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * 字段类型 - 字典字符串(值为字典下标)
+     */
+    public static final int TYPE_DICTIONARY = 1;
+    /**
+     * 字段类型 - 字符串(长度 + UTF-8)
+     */
+    public static final int TYPE_STRING = 2;
+    /**
+     * 字段类型 - 整数(zigzag varint)
+     */
+    public static final int TYPE_LONG = 3;
+    /**
+     * 字段类型 - 浮点数(8字节,大端序)
+     */
+    public static final int TYPE_DOUBLE = 4;
+}
@@ -25,6 +25,30 @@ public class Common {
             CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "health", "checkup"), StrPool.SLASH);
     }
 
+    /**
+     * 回调分发状态
+     */
+    public String callback() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "callback"), StrPool.SLASH);
+    }
+
+    /**
+     * 回调死信列表
+     */
+    public String callbackDead() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "callback", "dead"), StrPool.SLASH);
+    }
+
+    /**
+     * 回调死信重放
+     */
+    public String callbackReplay() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "callback", "replay"), StrPool.SLASH);
+    }
+
     /**
      * 版本信息
      */
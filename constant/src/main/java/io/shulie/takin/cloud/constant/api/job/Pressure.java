@@ -30,4 +30,28 @@ public class Pressure {
         return CharSequenceUtil.addPrefixIfNot(
             CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "stop"), StrPool.SLASH);
     }
+
+    /**
+     * 集群维度的实时指标
+     */
+    public String metricsRealtime() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "metrics", "realtime"), StrPool.SLASH);
+    }
+
+    /**
+     * 集群维度的响应时间分位值
+     */
+    public String metricsPercentile() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "metrics", "percentile"), StrPool.SLASH);
+    }
+
+    /**
+     * 每个时间窗口的施压实例数
+     */
+    public String metricsPods() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "metrics", "pods"), StrPool.SLASH);
+    }
 }
@@ -23,6 +23,14 @@ public class Command {
             CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "ack"), StrPool.SLASH);
     }
 
+    /**
+     * ACK-批量
+     */
+    public String ackBatch() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "ack", "batch"), StrPool.SLASH);
+    }
+
     /**
      * POP一条命令
      * <p>自动ACK</p>
@@ -31,4 +39,22 @@ public class Command {
         return CharSequenceUtil.addPrefixIfNot(
             CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "pop"), StrPool.SLASH);
     }
+
+    /**
+     * POP一条命令-长轮询
+     * <p>没有命令时挂起,直到有新命令或超时</p>
+     */
+    public String popWait() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "pop", "wait"), StrPool.SLASH);
+    }
+
+    /**
+     * POP多条命令
+     * <p>多种类型按创建顺序,自动ACK</p>
+     */
+    public String popBatch() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "pop", "batch"), StrPool.SLASH);
+    }
 }
@@ -30,4 +30,12 @@ public class Metrics {
         return CharSequenceUtil.addPrefixIfNot(
             CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "upload_old"), StrPool.SLASH);
     }
+
+    /**
+     * 处理管道状态
+     */
+    public String pipeline() {
+        return CharSequenceUtil.addPrefixIfNot(
+            CharSequenceUtil.join(StrPool.SLASH, this.getModule(), "pipeline"), StrPool.SLASH);
+    }
 }
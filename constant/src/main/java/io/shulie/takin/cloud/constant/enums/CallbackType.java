@@ -22,28 +22,33 @@ public enum CallbackType {
      * 消除警告
      */
     // 资源实例相关
-    RESOURCE_EXAMPLE_HEARTBEAT(100, "资源实例(Pod)心跳"),
-    RESOURCE_EXAMPLE_START(101, "资源实例启动"),
-    RESOURCE_EXAMPLE_STOP(102, "资源实例停止"),
-    RESOURCE_EXAMPLE_ERROR(103, "资源实例异常"),
+    RESOURCE_EXAMPLE_HEARTBEAT(100, "资源实例(Pod)心跳", true),
+    RESOURCE_EXAMPLE_START(101, "资源实例启动", false),
+    RESOURCE_EXAMPLE_STOP(102, "资源实例停止", false),
+    RESOURCE_EXAMPLE_ERROR(103, "资源实例异常", false),
     // 施压任务实例相关
-    PRESSURE_EXAMPLE_HEARTBEAT(200, "施压任务实例心跳"),
-    PRESSURE_EXAMPLE_START(201, "施压任务实例启动"),
-    PRESSURE_EXAMPLE_STOP(202, "施压任务实例停止"),
-    PRESSURE_EXAMPLE_ERROR(203, "施压任务实例异常"),
-    PRESSURE_EXAMPLE_SUCCESSFUL(204, "施压任务实例正常停止"),
+    PRESSURE_EXAMPLE_HEARTBEAT(200, "施压任务实例心跳", true),
+    PRESSURE_EXAMPLE_START(201, "施压任务实例启动", false),
+    PRESSURE_EXAMPLE_STOP(202, "施压任务实例停止", false),
+    PRESSURE_EXAMPLE_ERROR(203, "施压任务实例异常", false),
+    PRESSURE_EXAMPLE_SUCCESSFUL(204, "施压任务实例正常停止", false),
     // 过程数据[sla/csv用量]
-    SLA(301, "触发SLA"),
-    CALIBRATION(302, "数据校准任务"),
-    FILE_USAGE(303, "文件用量"),
+    SLA(301, "触发SLA", false),
+    CALIBRATION(302, "数据校准任务", false),
+    FILE_USAGE(303, "文件用量", false),
     // 文件资源
-    FILE_RESOURCE_PROGRESS(400, "文件资源进度"),
-    SCRIPT_RESULT(500, "脚本校验结果"),
+    FILE_RESOURCE_PROGRESS(400, "文件资源进度", true),
+    SCRIPT_RESULT(500, "脚本校验结果", false),
     // 格式化用
     ;
     @JsonValue
     private final int code;
     private final String description;
+    /**
+     * 是否可被取代
+     * <p>同一主体的新回调创建后,未送达的旧回调不再发送</p>
+     */
+    private final boolean supersedable;
 
     private static final Map<Integer, CallbackType> EXAMPLE_MAP = new HashMap<>(8);
 
@@ -55,4 +60,14 @@ public enum CallbackType {
     public static CallbackType of(Integer code) {
         return EXAMPLE_MAP.get(code);
     }
+
+    /**
+     * 合并键
+     *
+     * @param subjectId 主体主键(如施压任务实例主键)
+     * @return 类型:主体主键<br/>不可被取代的类型返回null
+     */
+    public String coalesceKey(Object subjectId) {
+        return supersedable && subjectId != null ? code + ":" + subjectId : null;
+    }
 }
@@ -0,0 +1,49 @@
+package io.shulie.takin.cloud.constant.enums;
+
+import java.util.Map;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import lombok.Getter;
+import lombok.AllArgsConstructor;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * SLA触发后的动作
+ * <p>(通知、停止、限流)</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Getter
+@AllArgsConstructor
+public enum SlaAction {
+    /**
+     * 消除警告
+     */
+    NOTIFY(0, "只回调通知"),
+    STOP(1, "停止施压任务"),
+    THROTTLE(2, "降低TPS"),
+    // 格式化用
+    ;
+    @Getter
+    @JsonValue
+    private final Integer code;
+    private final String description;
+
+    @Override
+    public String toString() {return code + ":" + description;}
+
+    private static final Map<Integer, SlaAction> EXAMPLE_MAP = new HashMap<>(4);
+
+    static {
+        Arrays.stream(values()).forEach(t -> EXAMPLE_MAP.put(t.getCode(), t));
+    }
+
+    @JsonCreator
+    public static SlaAction of(Integer code) {
+        return EXAMPLE_MAP.get(code);
+    }
+
+}
@@ -6,10 +6,17 @@ create table if not exists t_callback
     id             bigint auto_increment comment '主键' primary key,
     type           int        default -1                not null comment '类型',
     url            varchar(1000)                        not null comment '回调路径',
-    context        blob                                 not null comment '回调内容',
+    context        blob                                 not null comment '回调内容(较长时GZIP压缩)',
     create_time    timestamp  default CURRENT_TIMESTAMP not null comment '创建时间',
     completed      tinyint(1) default 0                 not null comment '是否完成',
-    threshold_time timestamp                            null comment '阈值时间'
+    threshold_time timestamp                            null comment '阈值时间(下次发送的时间)',
+    attempts       int        default 0                 not null comment '已发送次数',
+    backoff        bigint                               null comment '上次的退避时长(毫秒)',
+    dead           tinyint(1) default 0                 not null comment '是否已进入死信',
+    coalesce_key   varchar(255)                         null comment '合并键(类型:主体主键)',
+    obsolete       tinyint(1) default 0                 not null comment '是否已被取代',
+    lease_owner    varchar(64)                          null comment '租约持有者(节点标识#认领序号)',
+    lease_expire   timestamp                            null comment '租约到期时间'
 ) comment '回调表';
 
 create table if not exists t_callback_log
@@ -18,9 +25,9 @@ create table if not exists t_callback_log
     callback_id   bigint                               not null comment '回调主键',
     type          int        default -1                not null comment '类型',
     request_url   varchar(1000)                        not null comment '请求路径',
-    request_data  blob                                 not null comment '请求数据',
+    request_data  blob                                 null comment '请求数据(不再记录,以回调表为准)',
     request_time  timestamp  default CURRENT_TIMESTAMP not null comment '请求时间',
-    response_data blob                                 null comment '响应数据',
+    response_data blob                                 null comment '响应数据(较长时GZIP压缩)',
     response_time datetime                             null comment '响应时间',
     completed     tinyint(1) default 0                 not null comment '是否完成'
 ) comment '回调日志';
@@ -104,6 +111,7 @@ create table if not exists t_pressure
     start_option            varchar(1024) null comment '启动选项',
     callback_url            varchar(1000) not null comment '状态回调接口路径',
     resource_example_number int           not null comment '资源实例数量',
+    config_version          bigint        default 0 not null comment '线程组配置版本',
     constraint t_pressure_t_resource_id_fk foreign key (resource_id) references t_resource (id)
 ) comment '任务';
 
@@ -188,13 +196,19 @@ create table if not exists t_resource_example_event
 
 create table if not exists t_sla
 (
-    id             bigint auto_increment comment '任务实例' primary key,
-    pressure_id    bigint       not null comment '任务主键',
-    ref            varchar(255) not null comment '关键词',
-    attach         varchar(255) null comment '附加数据',
-    formula_target int          null comment '算式目标(RT、TPS、SA、成功率)',
-    formula_symbol int          null comment '算式符号(>=、>、=、<=、<)',
-    formula_number double       not null comment '算式数值(用户输入)'
+    id               bigint auto_increment comment '任务实例' primary key,
+    pressure_id      bigint       not null comment '任务主键',
+    ref              varchar(255) not null comment '关键词',
+    attach           varchar(255) null comment '附加数据',
+    formula_target   int          null comment '算式目标(RT、TPS、SA、成功率)',
+    formula_symbol   int          null comment '算式符号(>=、>、=、<=、<)',
+    formula_number   double       not null comment '算式数值(用户输入)',
+    window_size      int          null comment '判断的窗口数(M)',
+    breach_count     int          null comment '触发的窗口数(N)',
+    average_seconds  int          null comment '平均值的时长(秒)',
+    cooldown_seconds int          null comment '触发后的冷却时长(秒)',
+    action           int          null comment '触发后的动作(通知、停止、限流)',
+    action_number    double       null comment '动作参数(限流时为保留当前TPS的百分比)'
 ) comment 'Service Level Agreement(服务等级协议)';
 
 create table if not exists t_sla_event
@@ -247,6 +261,7 @@ create index t_watchman_event_type_index on t_watchman_event (type);
 -- 外键索引 - watchman_id
 create index t_script_watchman_id_index on t_script (watchman_id);
 create index t_command_watchman_id_index on t_command (watchman_id);
+create index t_command_ack_time_index on t_command (ack_time);
 create index t_file_example_watchman_id_index on t_file_example (watchman_id);
 create index t_watchman_event_watchman_id_index on t_watchman_event (watchman_id);
 -- 外键索引 - pressure
@@ -264,6 +279,10 @@ create index t_resource_example_resource_id_index on t_resource_example (resourc
 create index t_pressure_example_resource_example_id_index on t_pressure_example (resource_example_id);
 create index t_resource_example_event_resource_example_id_index on t_resource_example_event (resource_example_id);
 -- 外键索引 - 其它
+create index t_callback_coalesce_key_index on t_callback (coalesce_key);
+create index t_callback_lease_owner_index on t_callback (lease_owner);
+create index t_callback_dead_index on t_callback (dead);
+create index t_callback_create_time_index on t_callback (create_time);
 create index t_file_example_file_id_index on t_file_example (file_id);
 create index t_callback_log_t_callback_id_index on t_callback_log (callback_id);
 create index t_calibration_log_calibration_id_index on t_calibration_log (calibration_id);
@@ -8,6 +8,9 @@ import lombok.experimental.Accessors;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.TableField;
+
+import io.shulie.takin.cloud.data.handler.GzipBytesTypeHandler;
 
 /**
  * 数据库实体隐射 - 回调
@@ -15,7 +18,7 @@ import com.baomidou.mybatisplus.annotation.TableName;
  * @author <a href="mailto:472546172@qq.com">张天赐</a>
  */
 @Data
-@TableName("t_callback")
+@TableName(value = "t_callback", autoResultMap = true)
 @Accessors(chain = true)
 public class CallbackEntity {
     /**
@@ -34,6 +37,7 @@ public class CallbackEntity {
     /**
      * 回调内容
      */
+    @TableField(typeHandler = GzipBytesTypeHandler.class)
     private byte[] context;
     /**
      * 创建时间
@@ -41,10 +45,43 @@ public class CallbackEntity {
     private Date createTime;
     /**
      * 阈值时间
+     * <p>下次发送的时间</p>
      */
     private Date thresholdTime;
+    /**
+     * 已发送次数
+     */
+    private Integer attempts;
+    /**
+     * 上次的退避时长(毫秒)
+     */
+    private Long backoff;
+    /**
+     * 是否已进入死信
+     * <p>超过最大发送次数后不再发送,可以手动重放</p>
+     */
+    private Boolean dead;
     /**
      * 是否完成
      */
     private Boolean completed;
+    /**
+     * 合并键
+     * <p>(类型:主体主键),为空时不合并</p>
+     */
+    private String coalesceKey;
+    /**
+     * 是否已被同一合并键的新回调取代
+     */
+    private Boolean obsolete;
+    /**
+     * 租约持有者
+     * <p>(节点标识#认领序号)</p>
+     */
+    private String leaseOwner;
+    /**
+     * 租约到期时间
+     * <p>到期前其他节点不会认领</p>
+     */
+    private Date leaseExpire;
 }
@@ -8,6 +8,9 @@ import lombok.experimental.Accessors;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.TableField;
+
+import io.shulie.takin.cloud.data.handler.GzipBytesTypeHandler;
 
 /**
  * 数据库实体隐射 - 回调日志
@@ -16,7 +19,7 @@ import com.baomidou.mybatisplus.annotation.TableName;
  */
 @Data
 @Accessors(chain = true)
-@TableName("t_callback_log")
+@TableName(value = "t_callback_log", autoResultMap = true)
 public class CallbackLogEntity {
     /**
      * 数据主键
@@ -37,6 +40,7 @@ public class CallbackLogEntity {
     private String requestUrl;
     /**
      * 请求数据
+     * <p>不再记录,请求内容以回调表为准</p>
      */
     private byte[] requestData;
     /**
@@ -46,6 +50,7 @@ public class CallbackLogEntity {
     /**
      * 响应数据
      */
+    @TableField(typeHandler = GzipBytesTypeHandler.class)
     private byte[] responseData;
     /**
      * 响应时间
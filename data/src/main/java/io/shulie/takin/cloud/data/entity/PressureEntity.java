@@ -53,5 +53,10 @@ public class PressureEntity {
      * 启动选项
      */
     private String startOption;
+    /**
+     * 线程组配置版本
+     * <p>每次下发线程组配置时递增</p>
+     */
+    private Long configVersion;
 
 }
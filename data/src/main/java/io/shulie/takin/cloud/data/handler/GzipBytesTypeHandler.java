@@ -0,0 +1,92 @@
+package io.shulie.takin.cloud.data.handler;
+
+import java.sql.ResultSet;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+import org.apache.ibatis.type.BaseTypeHandler;
+
+/**
+ * 压缩存储的二进制字段
+ * <p>写入时GZIP压缩,读取时按GZIP魔数判断是否需要解压,兼容未压缩的历史数据</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@MappedTypes(byte[].class)
+public class GzipBytesTypeHandler extends BaseTypeHandler<byte[]> {
+    /**
+     * 小于该长度时不压缩
+     */
+    private static final int MIN_LENGTH = 128;
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, byte[] parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, compress(parameter));
+    }
+
+    @Override
+    public byte[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decompress(rs.getBytes(columnName));
+    }
+
+    @Override
+    public byte[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decompress(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public byte[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decompress(cs.getBytes(columnIndex));
+    }
+
+    /**
+     * 压缩
+     *
+     * @param data 原始数据
+     * @return 压缩后的数据<br/>数据较短或压缩后没有变小时返回原始数据
+     */
+    public static byte[] compress(byte[] data) {
+        if (data == null || data.length < MIN_LENGTH) {return data;}
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.size() < data.length ? out.toByteArray() : data;
+    }
+
+    /**
+     * 解压
+     *
+     * @param data 数据库中的数据
+     * @return 原始数据<br/>不是GZIP格式时原样返回
+     */
+    public static byte[] decompress(byte[] data) {
+        if (!isGzip(data)) {return data;}
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = gzip.read(buffer)) > 0) {out.write(buffer, 0, length);}
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isGzip(byte[] data) {
+        return data != null && data.length > 2
+            && data[0] == (byte)(GZIPInputStream.GZIP_MAGIC & 0xFF)
+            && data[1] == (byte)((GZIPInputStream.GZIP_MAGIC >> 8) & 0xFF);
+    }
+}
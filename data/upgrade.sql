@@ -0,0 +1,48 @@
+-- 已有数据库的升级语句(新建数据库直接执行init.sql即可),按顺序执行
+
+-- SLA - 持续触发规则
+alter table t_sla
+    add window_size      int    null comment '判断的窗口数(M)',
+    add breach_count     int    null comment '触发的窗口数(N)',
+    add average_seconds  int    null comment '平均值的时长(秒)',
+    add cooldown_seconds int    null comment '触发后的冷却时长(秒)';
+
+-- SLA - 触发后的动作
+alter table t_sla
+    add action           int    null comment '触发后的动作(通知、停止、限流)',
+    add action_number    double null comment '动作参数(限流时为保留当前TPS的百分比)';
+
+-- 回调 - 合并同一主体的回调
+alter table t_callback
+    add coalesce_key varchar(255)         null comment '合并键(类型:主体主键)',
+    add obsolete     tinyint(1) default 0 not null comment '是否已被取代';
+create index t_callback_coalesce_key_index on t_callback (coalesce_key);
+
+-- 回调 - 租约
+alter table t_callback
+    add lease_owner  varchar(64)          null comment '租约持有者(节点标识#认领序号)',
+    add lease_expire timestamp            null comment '租约到期时间';
+create index t_callback_lease_owner_index on t_callback (lease_owner);
+
+-- 回调 - 退避与死信
+alter table t_callback
+    modify threshold_time timestamp null comment '阈值时间(下次发送的时间)',
+    add attempts     int        default 0 not null comment '已发送次数',
+    add backoff      bigint               null comment '上次的退避时长(毫秒)',
+    add dead         tinyint(1) default 0 not null comment '是否已进入死信';
+create index t_callback_dead_index on t_callback (dead);
+
+-- 回调 - 压缩与清理,回调日志不再记录请求数据
+alter table t_callback
+    modify context blob not null comment '回调内容(较长时GZIP压缩)';
+alter table t_callback_log
+    modify request_data blob null comment '请求数据(不再记录,以回调表为准)',
+    modify response_data blob null comment '响应数据(较长时GZIP压缩)';
+create index t_callback_create_time_index on t_callback (create_time);
+
+-- 命令 - 未确认命令索引
+create index t_command_ack_time_index on t_command (ack_time);
+
+-- 任务 - 线程组配置版本
+alter table t_pressure
+    add config_version bigint default 0 not null comment '线程组配置版本';
@@ -68,5 +68,10 @@ public class Sla extends Base<List<SlaInfo>> {
          * <p>(实际变化的值)</p>
          */
         private Double number;
+        /**
+         * 已执行的动作
+         * <p>(通知、停止、限流)</p>
+         */
+        private Integer action;
     }
 }
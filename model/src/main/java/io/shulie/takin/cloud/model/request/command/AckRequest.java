@@ -0,0 +1,29 @@
+package io.shulie.takin.cloud.model.request.command;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 命令确认的请求
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+public class AckRequest {
+    /**
+     * 命令主键
+     */
+    @Schema(description = "命令主键")
+    @NotNull(message = "命令主键不能为空")
+    private Long id;
+    /**
+     * 指令确认内容
+     */
+    @Schema(description = "指令确认内容")
+    private String content;
+}
@@ -12,6 +12,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.shulie.takin.cloud.constant.enums.PressureType;
 import io.shulie.takin.cloud.constant.enums.FormulaSymbol;
 import io.shulie.takin.cloud.constant.enums.FormulaTarget;
+import io.shulie.takin.cloud.constant.enums.SlaAction;
 import io.shulie.takin.cloud.constant.enums.ThreadGroupType;
 
 /**
@@ -129,6 +130,35 @@ public class StartRequest {
          * <p>(用户输入)</p>
          */
         private Double formulaNumber;
+        /**
+         * 判断的窗口数(M)
+         * <p>最近M个窗口中有N个窗口触发时才触发,为空时只判断当前窗口</p>
+         */
+        private Integer windowSize;
+        /**
+         * 触发的窗口数(N)
+         * <p>为空时等于判断的窗口数</p>
+         */
+        private Integer breachCount;
+        /**
+         * 平均值的时长(秒)
+         * <p>不为空时判断这段时间内的平均值,忽略窗口数配置</p>
+         */
+        private Integer averageSeconds;
+        /**
+         * 触发后的冷却时长(秒)
+         */
+        private Integer cooldownSeconds;
+        /**
+         * 触发后的动作
+         * <p>(通知、停止、限流),为空时只回调通知</p>
+         */
+        private SlaAction action;
+        /**
+         * 动作参数
+         * <p>限流时为保留当前TPS的百分比,为空时保留50%</p>
+         */
+        private Double actionNumber;
     }
 
     @Data
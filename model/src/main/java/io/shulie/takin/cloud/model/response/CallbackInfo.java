@@ -0,0 +1,54 @@
+package io.shulie.takin.cloud.model.response;
+
+import java.util.Date;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 回调信息
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+@Schema(description = "回调信息")
+public class CallbackInfo {
+    /**
+     * 回调主键
+     */
+    @Schema(description = "回调主键")
+    private Long id;
+    /**
+     * 回调类型
+     */
+    @Schema(description = "回调类型")
+    private Integer type;
+    /**
+     * 回调路径
+     */
+    @Schema(description = "回调路径")
+    private String url;
+    /**
+     * 回调内容
+     */
+    @Schema(description = "回调内容")
+    private String content;
+    /**
+     * 创建时间
+     */
+    @Schema(description = "创建时间")
+    private Date createTime;
+    /**
+     * 最后一次发送失败后的阈值时间
+     */
+    @Schema(description = "阈值时间")
+    private Date thresholdTime;
+    /**
+     * 已发送次数
+     */
+    @Schema(description = "已发送次数")
+    private Integer attempts;
+}
@@ -0,0 +1,45 @@
+package io.shulie.takin.cloud.model.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 集群维度的响应时间分位值
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+@Schema(description = "集群维度的响应时间分位值")
+public class MetricsPercentile {
+    /**
+     * 关键词
+     */
+    @Schema(description = "关键词(为空表示全部)")
+    private String transaction;
+    /**
+     * 开始时间
+     */
+    @Schema(description = "开始时间")
+    private Long startTime;
+    /**
+     * 结束时间
+     */
+    @Schema(description = "结束时间")
+    private Long endTime;
+    /**
+     * 请求总数
+     */
+    @Schema(description = "请求总数")
+    private Long count;
+    @Schema(description = "50分位响应时间")
+    private Double p50;
+    @Schema(description = "90分位响应时间")
+    private Double p90;
+    @Schema(description = "99分位响应时间")
+    private Double p99;
+    @Schema(description = "99.9分位响应时间")
+    private Double p999;
+}
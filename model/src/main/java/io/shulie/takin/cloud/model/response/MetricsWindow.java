@@ -0,0 +1,92 @@
+package io.shulie.takin.cloud.model.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 集群维度的指标窗口
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+@Schema(description = "集群维度的指标窗口")
+public class MetricsWindow {
+    /**
+     * 窗口时间
+     */
+    @Schema(description = "窗口时间")
+    private Long time;
+    /**
+     * 关键词
+     */
+    @Schema(description = "关键词")
+    private String transaction;
+    /**
+     * 业务活动名称
+     */
+    @Schema(description = "业务活动名称")
+    private String testName;
+    /**
+     * 请求总数
+     */
+    @Schema(description = "请求总数")
+    private Long count;
+    /**
+     * 失败请求总数
+     */
+    @Schema(description = "失败请求总数")
+    private Long failCount;
+    /**
+     * SA总数
+     */
+    @Schema(description = "SA总数")
+    private Long saCount;
+    /**
+     * TPS
+     */
+    @Schema(description = "TPS")
+    private Double tps;
+    /**
+     * 平均响应时间
+     */
+    @Schema(description = "平均响应时间")
+    private Double avgRt;
+    /**
+     * 最大响应时间
+     */
+    @Schema(description = "最大响应时间")
+    private Double maxRt;
+    /**
+     * 最小响应时间
+     */
+    @Schema(description = "最小响应时间")
+    private Double minRt;
+    /**
+     * 请求数据大小
+     */
+    @Schema(description = "请求数据大小")
+    private Long sentBytes;
+    /**
+     * 响应数据大小
+     */
+    @Schema(description = "响应数据大小")
+    private Long receivedBytes;
+    /**
+     * 活跃线程数
+     */
+    @Schema(description = "活跃线程数")
+    private Long activeThreads;
+    /**
+     * 合并的上报次数
+     */
+    @Schema(description = "合并的上报次数")
+    private Integer samples;
+    /**
+     * 窗口是否已关闭
+     */
+    @Schema(description = "窗口是否已关闭")
+    private Boolean closed;
+}
@@ -0,0 +1,27 @@
+package io.shulie.takin.cloud.model.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 时间窗口内上报数据的施压实例数
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+@Schema(description = "时间窗口内上报数据的施压实例数")
+public class PodCount {
+    /**
+     * 窗口时间
+     */
+    @Schema(description = "窗口时间")
+    private Long time;
+    /**
+     * 施压实例数
+     */
+    @Schema(description = "施压实例数")
+    private Long count;
+}
@@ -0,0 +1,41 @@
+package io.shulie.takin.cloud.model.response.command;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * 弹出的命令
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@Data
+@Accessors(chain = true)
+@Schema(description = "弹出的命令")
+public class CommandItem {
+    /**
+     * 命令主键
+     */
+    @Schema(description = "命令主键")
+    private Long id;
+    /**
+     * 命令类型
+     */
+    @Schema(description = "命令类型")
+    private Integer type;
+    /**
+     * 创建时间
+     */
+    @Schema(description = "创建时间")
+    private Long createTime;
+    /**
+     * 命令内容
+     * <p>数据库中的JSON原样输出,不经过解析</p>
+     */
+    @JsonRawValue
+    @Schema(description = "命令内容")
+    private String content;
+}
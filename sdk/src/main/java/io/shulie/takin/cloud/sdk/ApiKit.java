@@ -1,5 +1,8 @@
 package io.shulie.takin.cloud.sdk;
 
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
 import java.util.Objects;
 
 import cn.hutool.json.JSONUtil;
@@ -8,11 +11,13 @@ import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.exceptions.ValidateException;
 
 import io.shulie.takin.cloud.constant.Api;
+import io.shulie.takin.cloud.constant.MetricsFormatConstants;
 import io.shulie.takin.cloud.sdk.api.ApiRequest;
 import io.shulie.takin.cloud.sdk.api.ApiResponse;
 import io.shulie.takin.cloud.model.response.ApiResult;
 import io.shulie.takin.cloud.constant.enums.CommandType;
 import io.shulie.takin.cloud.model.response.command.CommandContent;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
 
 /**
  * Api套件
@@ -67,4 +72,25 @@ public class ApiKit {
             else {throw new ValidateException("验签失败", e);}
         }
     }
+
+    /**
+     * 上报指标数据
+     * <p>使用gzip压缩的二进制格式</p>
+     *
+     * @param pressureId        施压任务主键
+     * @param pressureExampleId 施压任务实例主键
+     * @param metricsList       指标数据
+     * @throws ValidateException 接口出错
+     */
+    public void uploadMetrics(Long pressureId, Long pressureExampleId, List<MetricsInfo> metricsList) throws ValidateException {
+        Map<String, Object> query = new HashMap<>(2);
+        query.put("pressureId", pressureId);
+        query.put("pressureExampleId", pressureExampleId);
+        byte[] body = MetricsEncoder.gzip(MetricsEncoder.encode(metricsList));
+        try (ApiResponse response = ApiRequest.post(sign, baseUrl, api.getNotify().getPressure().getMetrics().upload(), query)
+            .body(body, MetricsFormatConstants.CONTENT_TYPE_BINARY, MetricsFormatConstants.CONTENT_ENCODING_GZIP).execute()) {
+            ApiResult<Object> apiResult = JSONUtil.toBean(response.body(), new TypeReference<ApiResult<Object>>() {}, false);
+            if (!apiResult.isSuccess()) {throw new ValidateException(apiResult.getMsg());}
+        }
+    }
 }
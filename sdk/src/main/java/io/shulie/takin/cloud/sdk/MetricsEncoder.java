@@ -0,0 +1,169 @@
+package io.shulie.takin.cloud.sdk;
+
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import io.shulie.takin.cloud.constant.MetricsFormatConstants;
+import io.shulie.takin.cloud.model.request.job.pressure.MetricsInfo;
+
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_LONG;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_DOUBLE;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_STRING;
+import static io.shulie.takin.cloud.constant.MetricsFormatConstants.TYPE_DICTIONARY;
+
+/**
+ * 指标数据的二进制编码
+ * <p>格式见{@link MetricsFormatConstants}</p>
+ * <p>业务活动等重复出现的字符串写入字典,计数类字段使用varint</p>
+ *
+ * @author <a href="mailto:472546172@qq.com">张天赐</a>
+ */
+@SuppressWarnings("unused")
+public class MetricsEncoder {
+    private MetricsEncoder() {}
+
+    /**
+     * 字段定义
+     * <p>字段名与{@link MetricsInfo}的属性名一致</p>
+     */
+    private static final String[] FIELD_NAME = {
+        "type", "transaction", "testName", "podNo", "percentData",
+        "time", "timestamp", "count", "failCount", "sentBytes", "receivedBytes", "saCount", "activeThreads",
+        "rt", "sumRt", "maxRt", "minRt"};
+    private static final int[] FIELD_TYPE = {
+        TYPE_DICTIONARY, TYPE_DICTIONARY, TYPE_DICTIONARY, TYPE_DICTIONARY, TYPE_STRING,
+        TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG,
+        TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE};
+
+    /**
+     * 编码
+     *
+     * @param metricsList 指标数据
+     * @return 二进制数据
+     */
+    public static byte[] encode(List<MetricsInfo> metricsList) {
+        // 字典
+        Map<String, Integer> dictionary = new HashMap<>(16);
+        List<String> dictionaryList = new ArrayList<>();
+        // 记录
+        ByteArrayOutputStream recordList = new ByteArrayOutputStream(metricsList.size() * 64);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+        int recordCount = 0;
+        for (MetricsInfo metrics : metricsList) {
+            if (metrics == null) {continue;}
+            Object[] value = values(metrics);
+            long mask = 0;
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] != null) {mask |= 1L << i;}
+            }
+            record.reset();
+            writeVarint(record, mask);
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] == null) {continue;}
+                switch (FIELD_TYPE[i]) {
+                    case TYPE_DICTIONARY:
+                        String text = (String)value[i];
+                        Integer index = dictionary.get(text);
+                        if (index == null) {
+                            index = dictionaryList.size();
+                            dictionary.put(text, index);
+                            dictionaryList.add(text);
+                        }
+                        writeVarint(record, index);
+                        break;
+                    case TYPE_STRING:
+                        writeString(record, (String)value[i]);
+                        break;
+                    case TYPE_LONG:
+                        writeVarint(record, zigzag(((Number)value[i]).longValue()));
+                        break;
+                    default:
+                        writeDouble(record, ((Number)value[i]).doubleValue());
+                        break;
+                }
+            }
+            writeVarint(recordList, record.size());
+            writeTo(record, recordList);
+            recordCount++;
+        }
+        // 组装
+        ByteArrayOutputStream out = new ByteArrayOutputStream(recordList.size() + 256);
+        out.write(MetricsFormatConstants.MAGIC >>> 8);
+        out.write(MetricsFormatConstants.MAGIC & 0xFF);
+        out.write(MetricsFormatConstants.VERSION);
+        writeVarint(out, FIELD_NAME.length);
+        for (int i = 0; i < FIELD_NAME.length; i++) {
+            writeString(out, FIELD_NAME[i]);
+            out.write(FIELD_TYPE[i]);
+        }
+        writeVarint(out, dictionaryList.size());
+        dictionaryList.forEach(t -> writeString(out, t));
+        writeVarint(out, recordCount);
+        writeTo(recordList, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * gzip压缩
+     *
+     * @param data 数据
+     * @return 压缩后的数据
+     */
+    public static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Object[] values(MetricsInfo metrics) {
+        return new Object[] {
+            metrics.getType(), metrics.getTransaction(), metrics.getTestName(), metrics.getPodNo(), metrics.getPercentData(),
+            metrics.getTime(), metrics.getTimestamp(), metrics.getCount(), metrics.getFailCount(), metrics.getSentBytes(),
+            metrics.getReceivedBytes(), metrics.getSaCount(), metrics.getActiveThreads(),
+            metrics.getRt(), metrics.getSumRt(), metrics.getMaxRt(), metrics.getMinRt()};
+    }
+
+    private static void writeTo(ByteArrayOutputStream from, ByteArrayOutputStream to) {
+        try {
+            from.writeTo(to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int)(bits >>> shift) & 0xFF);
+        }
+    }
+}
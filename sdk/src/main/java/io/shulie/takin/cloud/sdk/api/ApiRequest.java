@@ -5,6 +5,7 @@ import java.util.Map;
 import lombok.Getter;
 
 import cn.hutool.http.Method;
+import cn.hutool.http.Header;
 import cn.hutool.http.HttpUtil;
 import cn.hutool.http.HttpRequest;
 import cn.hutool.http.HttpResponse;
@@ -48,6 +49,11 @@ public class ApiRequest {
         return new ApiRequest(watchmanSign, urlBuilder.toString(), Method.POST);
     }
 
+    public static ApiRequest post(String watchmanSign, String host, String url, Map<String, Object> query) {
+        UrlBuilder urlBuilder = UrlBuilder.ofHttp(host).addPath(url).setQuery(new UrlQuery(query));
+        return new ApiRequest(watchmanSign, urlBuilder.toString(), Method.POST);
+    }
+
     private ApiRequest(String watchmanSign, String url, Method method) {
         this.sign = watchmanSign;
         this.httpRequest = HttpUtil.createRequest(method, url);
@@ -89,6 +95,20 @@ public class ApiRequest {
         return this;
     }
 
+    /**
+     * 设置请求体
+     *
+     * @param body            请求体
+     * @param contentType     Content-Type
+     * @param contentEncoding Content-Encoding(为空则不设置)
+     * @return -
+     */
+    public ApiRequest body(byte[] body, String contentType, String contentEncoding) {
+        this.httpRequest.body(body).contentType(contentType);
+        if (contentEncoding != null) {this.httpRequest.header(Header.CONTENT_ENCODING, contentEncoding);}
+        return this;
+    }
+
     /**
      * 在请求头中附加ticket
      */